@@ -0,0 +1,120 @@
+package com.db.benchmark;
+
+import com.db.config.JacksonConfig;
+import com.db.model.Trade;
+import com.db.model.TradeHistory;
+import com.db.repository.TradeRepository;
+import com.db.service.TradeHistoryWriter;
+import com.db.service.TradeMetrics;
+import com.db.service.TradeOutboxService;
+import com.db.service.TradeService;
+import com.db.service.TradeTracer;
+import com.db.service.TradeVersionCache;
+import com.db.stream.TradeProducer;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.mongo.MongoDataAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.mongo.MongoRepositoriesAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.autoconfigure.kafka.KafkaAutoConfiguration;
+import org.springframework.boot.autoconfigure.mongo.MongoAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The persistence half of the application on an in-memory H2 database: TradeService with its repositories,
+ * outbox and version cache, without Kafka, MongoDB or the scheduled jobs. History records are built as in
+ * production and then handed to a writer that only counts them, so Mongo latency does not drown out the
+ * work done on the ingest path.
+ *
+ * <p>With {@code -jvmArgsAppend -Dbenchmark.postgres.url=jdbc:postgresql://...} in jmh.args the benchmarks run
+ * against that PostgreSQL database instead, migrated by Flyway and so partitioned by maturity date as in
+ * production. Point it at a scratch database, the benchmarks leave their trades behind;
+ * benchmark.postgres.username and benchmark.postgres.password default to postgres and an empty password.
+ */
+@SpringBootConfiguration
+@EnableAutoConfiguration(exclude = {KafkaAutoConfiguration.class, MongoAutoConfiguration.class,
+        MongoDataAutoConfiguration.class, MongoRepositoriesAutoConfiguration.class})
+@EnableJpaRepositories(basePackageClasses = TradeRepository.class)
+@EntityScan(basePackageClasses = Trade.class)
+@Import({JacksonConfig.class, TradeService.class, TradeOutboxService.class, TradeVersionCache.class, TradeMetrics.class,
+        TradeTracer.class})
+public class BenchmarkContext {
+
+    // Passed as command line arguments so they take precedence over the Postgres settings in application.yml
+    public static ConfigurableApplicationContext start(String database, String... properties) {
+        String postgresUrl = System.getProperty("benchmark.postgres.url");
+        List<String> args = new ArrayList<>(postgresUrl != null ? List.of(
+                "--spring.datasource.url=" + postgresUrl,
+                "--spring.datasource.username=" + System.getProperty("benchmark.postgres.username", "postgres"),
+                "--spring.datasource.password=" + System.getProperty("benchmark.postgres.password", ""))
+                : List.of(
+                "--spring.datasource.url=jdbc:h2:mem:" + database + "",
+                "--spring.datasource.driver-class-name=org.h2.Driver",
+                "--spring.datasource.username=sa",
+                "--spring.datasource.password=",
+                "--spring.jpa.hibernate.ddl-auto=create-drop",
+                "--spring.flyway.enabled=false",
+                "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect"));
+        args.add("--spring.jpa.show-sql=false");
+        args.add("--logging.level.root=WARN");
+        for (String property : properties) {
+            args.add("--" + property);
+        }
+        return new SpringApplicationBuilder(BenchmarkContext.class)
+                .web(WebApplicationType.NONE)
+                .logStartupInfo(false)
+                .run(args.toArray(String[]::new));
+    }
+
+    // Only publishTradeEvent sends to Kafka and no benchmark here calls it
+    @Bean
+    public TradeProducer tradeProducer() {
+        return new TradeProducer(null);
+    }
+
+    @Bean
+    public CountingHistoryWriter tradeHistoryWriter() {
+        return new CountingHistoryWriter();
+    }
+
+    public static class CountingHistoryWriter extends TradeHistoryWriter {
+
+        private final LongAdder written = new LongAdder();
+
+        CountingHistoryWriter() {
+            super(null, null, null, CircuitBreakerRegistry.ofDefaults(), 1, 1,
+                    Duration.ZERO, Duration.ZERO, Duration.ZERO, false);
+        }
+
+        @Override
+        public void write(TradeHistory history) {
+            written.increment();
+        }
+
+        @Override
+        public void writeAll(List<TradeHistory> histories) {
+            written.add(histories.size());
+        }
+
+        // The drainer never starts, there is no Mongo to drain to
+        @Override
+        public boolean isAutoStartup() {
+            return false;
+        }
+
+        public long getWritten() {
+            return written.sum();
+        }
+    }
+}
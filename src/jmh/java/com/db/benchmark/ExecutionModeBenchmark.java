@@ -0,0 +1,118 @@
+package com.db.benchmark;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Requests per second on platform threads, sized like Tomcat's default pool, against one virtual thread per
+ * request. A request blocks on I/O outside the database for io-millis, like the history write or a Kafka
+ * send, then upserts a trade through the database bulkhead and a Hikari pool of the same size. db-latency
+ * keeps the connection for that much longer, standing in for the network round-trip to Postgres; with it
+ * the pool becomes the bottleneck and both modes should converge on pool-size / db-latency.
+ * Needs a Java 21+ runtime for the virtual mode.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class ExecutionModeBenchmark {
+
+    private static final int REQUESTS = 2000;
+    private static final int POOL_SIZE = 10;
+    private static final int TOMCAT_THREADS = 200;
+    private static final String UPSERT_SQL = "MERGE INTO trades KEY (trade_id) VALUES (?, ?)";
+
+    @Param({"platform", "virtual"})
+    public String threads;
+
+    @Param({"2"})
+    public int ioMillis;
+
+    @Param({"0", "500"})
+    public int dbLatencyMicros;
+
+    private HikariDataSource dataSource;
+    private Bulkhead bulkhead;
+    private ExecutorService platformPool;
+    private Executor executor;
+    private UUID[] tradeIds;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:mem:execution-mode;DB_CLOSE_DELAY=-1");
+        dataSource.setMaximumPoolSize(POOL_SIZE);
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS trades (trade_id UUID PRIMARY KEY, version INT)");
+        }
+        bulkhead = Bulkhead.of("database", BulkheadConfig.custom()
+                .maxConcurrentCalls(POOL_SIZE)
+                .maxWaitDuration(Duration.ofSeconds(30))
+                .build());
+
+        if ("virtual".equals(threads)) {
+            executor = new VirtualThreadTaskExecutor("request-");
+        } else {
+            platformPool = Executors.newFixedThreadPool(TOMCAT_THREADS);
+            executor = platformPool;
+        }
+
+        // A hot set of trades amended over and over, as in production
+        tradeIds = new UUID[10_000];
+        for (int i = 0; i < tradeIds.length; i++) tradeIds[i] = UUID.randomUUID();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (platformPool != null) platformPool.shutdownNow();
+        dataSource.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(REQUESTS)
+    public void handleRequests() {
+        CompletableFuture<?>[] requests = new CompletableFuture[REQUESTS];
+        for (int i = 0; i < REQUESTS; i++) {
+            requests[i] = CompletableFuture.runAsync(this::handleRequest, executor);
+        }
+        CompletableFuture.allOf(requests).join();
+    }
+
+    private void handleRequest() {
+        try {
+            Thread.sleep(Duration.ofMillis(ioMillis));
+            bulkhead.acquirePermission();
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement ps = connection.prepareStatement(UPSERT_SQL)) {
+                ps.setObject(1, tradeIds[ThreadLocalRandom.current().nextInt(tradeIds.length)]);
+                ps.setInt(2, ThreadLocalRandom.current().nextInt());
+                ps.executeUpdate();
+                if (dbLatencyMicros > 0) Thread.sleep(Duration.ofNanos(dbLatencyMicros * 1_000L));
+            } finally {
+                bulkhead.onComplete();
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
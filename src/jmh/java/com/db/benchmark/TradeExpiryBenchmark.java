@@ -0,0 +1,86 @@
+package com.db.benchmark;
+
+import com.db.model.Trade;
+import com.db.repository.TradeRepository;
+import com.db.service.TradeService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One full run of the nightly expiry job against H2 with every trade matured, so each run expires all rows
+ * chunk by chunk and builds their history records. The trades are flagged unexpired again before every run.
+ * Compare the per-row cost between sizes to spot anything worse than linear. H2 cannot walk the primary key
+ * for the locking chunk read and sorts the whole remaining range for every chunk, so on H2 the job is
+ * quadratic in rows and a single 1M run takes over an hour, so it is left out of the defaults. Run it on purpose
+ * with {@code -Djmh.args="TradeExpiryBenchmark -p rows=1000000"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class TradeExpiryBenchmark {
+
+    private static final int INSERT_BATCH = 10_000;
+
+    @Param({"10000", "100000"})
+    public int rows;
+
+    private ConfigurableApplicationContext context;
+    private TradeService tradeService;
+    private JdbcTemplate jdbcTemplate;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start("trade-expiry");
+        tradeService = context.getBean(TradeService.class);
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+        TradeRepository tradeRepository = context.getBean(TradeRepository.class);
+
+        LocalDate matured = LocalDate.now().minusDays(1);
+        List<Trade> batch = new ArrayList<>(INSERT_BATCH);
+        for (int i = 0; i < rows; i++) {
+            batch.add(Trade.builder()
+                    .tradeId(UUID.randomUUID())
+                    .version(1)
+                    .counterPartyId("CP-" + (i % 100))
+                    .bookId("B" + (i % 10))
+                    .maturityDate(matured)
+                    .createdDate(matured.minusYears(1))
+                    .expired(false)
+                    .build());
+            if (batch.size() == INSERT_BATCH) {
+                tradeRepository.batchInsert(batch);
+                batch.clear();
+            }
+        }
+        tradeRepository.batchInsert(batch);
+    }
+
+    @Setup(Level.Iteration)
+    public void unexpire() {
+        jdbcTemplate.update("UPDATE trades SET expired = false");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int markExpiredTrades() {
+        int expired = tradeService.markExpiredTrades();
+        if (expired != rows) {
+            throw new IllegalStateException("Expired " + expired + " of " + rows + " trades");
+        }
+        return expired;
+    }
+}
@@ -0,0 +1,98 @@
+package com.db.benchmark;
+
+import com.db.config.JacksonConfig;
+import com.db.dto.TradeDto;
+import com.db.stream.TradeDeserializer;
+import com.db.stream.TradeSerializer;
+import com.db.stream.TradeWireFormat;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost per Kafka message of the trade serde paths. The string* benchmarks are the original path, a String
+ * (de)serializer plus a plain ObjectMapper; run with {@code -prof gc} and compare gc.alloc.rate.norm to see
+ * the bytes allocated per message.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TradeSerdeBenchmark {
+
+    private static final String TOPIC = "trades";
+
+    private ObjectMapper plainMapper;
+    private StringSerializer stringSerializer;
+    private StringDeserializer stringDeserializer;
+    private TradeSerializer jsonSerializer;
+    private TradeSerializer binarySerializer;
+    private TradeDeserializer deserializer;
+
+    private TradeDto trade;
+    private byte[] json;
+    private byte[] binary;
+
+    @Setup
+    public void setUp() {
+        plainMapper = new ObjectMapper().registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        stringSerializer = new StringSerializer();
+        stringDeserializer = new StringDeserializer();
+
+        JacksonConfig config = new JacksonConfig();
+        ObjectMapper mapper = config.objectMapper();
+        jsonSerializer = new TradeSerializer(config.tradeDtoWriter(mapper), TradeWireFormat.JSON);
+        binarySerializer = new TradeSerializer(config.tradeDtoWriter(mapper), TradeWireFormat.BINARY);
+        deserializer = new TradeDeserializer(config.tradeDtoReader(mapper));
+
+        trade = TradeDto.builder()
+                .tradeId(UUID.randomUUID())
+                .version(3)
+                .counterPartyId("CP-1")
+                .bookId("B1")
+                .maturityDate(LocalDate.now().plusDays(30))
+                .build();
+        json = jsonSerializer.serialize(TOPIC, trade);
+        binary = binarySerializer.serialize(TOPIC, trade);
+    }
+
+    @Benchmark
+    public byte[] stringJsonSerialize() throws Exception {
+        return stringSerializer.serialize(TOPIC, plainMapper.writeValueAsString(trade));
+    }
+
+    @Benchmark
+    public byte[] bytesJsonSerialize() {
+        return jsonSerializer.serialize(TOPIC, trade);
+    }
+
+    @Benchmark
+    public byte[] binarySerialize() {
+        return binarySerializer.serialize(TOPIC, trade);
+    }
+
+    @Benchmark
+    public TradeDto stringJsonDeserialize() throws Exception {
+        return plainMapper.readValue(stringDeserializer.deserialize(TOPIC, json), TradeDto.class);
+    }
+
+    @Benchmark
+    public TradeDto bytesJsonDeserialize() {
+        return deserializer.deserialize(TOPIC, json);
+    }
+
+    @Benchmark
+    public TradeDto binaryDeserialize() {
+        return deserializer.deserialize(TOPIC, binary);
+    }
+}
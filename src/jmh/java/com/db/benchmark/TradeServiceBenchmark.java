@@ -0,0 +1,154 @@
+package com.db.benchmark;
+
+import com.db.dto.TradeDto;
+import com.db.dto.TradeResult;
+import com.db.model.Trade;
+import com.db.service.TradeService;
+import com.db.service.TradeVersionCache;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one trade on the ingest path against H2: the version-guarded upsert, the outbox insert, the version
+ * cache and the history record, all through the transactional and bulkhead proxies. insertTrade writes a new
+ * trade every call, amendTrade bumps the version of a trade from a hot set as repeated amendments do.
+ * insertTrades and amendTrades do the same through the batch path, amendTrades with the trades dropped from the
+ * version cache first, as when they were last written by another node, so the batch looks them up.
+ * buildHistory* measure only the history records handed to the writer after commit.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TradeServiceBenchmark {
+
+    private static final int HOT_TRADES = 10_000;
+    private static final int HISTORY_BATCH = 500;
+    private static final int SAVE_BATCH = 100;
+
+    private ConfigurableApplicationContext context;
+    private TradeService tradeService;
+    private TradeVersionCache tradeVersionCache;
+    private JdbcTemplate jdbcTemplate;
+
+    private LocalDate maturityDate;
+    private UUID[] hotTradeIds;
+    private int nextHot;
+    // Every amendment carries a version above all earlier ones, so none is rejected as stale
+    private int nextVersion;
+    private Trade trade;
+    private List<Trade> trades;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start("trade-service");
+        tradeService = context.getBean(TradeService.class);
+        tradeVersionCache = context.getBean(TradeVersionCache.class);
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+        maturityDate = LocalDate.now().plusYears(1);
+
+        hotTradeIds = new UUID[HOT_TRADES];
+        for (int i = 0; i < HOT_TRADES; i++) {
+            hotTradeIds[i] = UUID.randomUUID();
+            tradeService.saveTrade(dto(hotTradeIds[i], 1));
+        }
+        nextVersion = 2;
+
+        trade = toTrade(dto(UUID.randomUUID(), 1));
+        trades = new ArrayList<>(HISTORY_BATCH);
+        for (int i = 0; i < HISTORY_BATCH; i++) {
+            trades.add(toTrade(dto(UUID.randomUUID(), 1)));
+        }
+    }
+
+    // Nothing relays the outbox here, keep it from growing across iterations
+    @TearDown(Level.Iteration)
+    public void clearOutbox() {
+        jdbcTemplate.update("DELETE FROM trade_outbox");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Trade insertTrade() {
+        return tradeService.saveTrade(dto(UUID.randomUUID(), 1));
+    }
+
+    @Benchmark
+    public Trade amendTrade() {
+        UUID tradeId = hotTradeIds[nextHot];
+        nextHot = (nextHot + 1) % HOT_TRADES;
+        return tradeService.saveTrade(dto(tradeId, nextVersion++));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAVE_BATCH)
+    public List<TradeResult> insertTrades() {
+        List<TradeDto> dtos = new ArrayList<>(SAVE_BATCH);
+        for (int i = 0; i < SAVE_BATCH; i++) {
+            dtos.add(dto(UUID.randomUUID(), 1));
+        }
+        return tradeService.saveTrades(dtos);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAVE_BATCH)
+    public List<TradeResult> amendTrades() {
+        List<TradeDto> dtos = new ArrayList<>(SAVE_BATCH);
+        List<UUID> tradeIds = new ArrayList<>(SAVE_BATCH);
+        for (int i = 0; i < SAVE_BATCH; i++) {
+            UUID tradeId = hotTradeIds[nextHot];
+            nextHot = (nextHot + 1) % HOT_TRADES;
+            dtos.add(dto(tradeId, nextVersion));
+            tradeIds.add(tradeId);
+        }
+        nextVersion++;
+        tradeVersionCache.invalidateAll(tradeIds);
+        return tradeService.saveTrades(dtos);
+    }
+
+    @Benchmark
+    public void buildHistory() {
+        tradeService.saveTradeHistory(trade);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(HISTORY_BATCH)
+    public void buildHistories() {
+        tradeService.saveTradeHistories(trades);
+    }
+
+    private TradeDto dto(UUID tradeId, int version) {
+        return TradeDto.builder()
+                .tradeId(tradeId)
+                .version(version)
+                .counterPartyId("CP-1")
+                .bookId("B1")
+                .maturityDate(maturityDate)
+                .build();
+    }
+
+    private static Trade toTrade(TradeDto dto) {
+        return Trade.builder()
+                .tradeId(dto.getTradeId())
+                .version(dto.getVersion())
+                .counterPartyId(dto.getCounterPartyId())
+                .bookId(dto.getBookId())
+                .maturityDate(dto.getMaturityDate())
+                .createdDate(LocalDate.now())
+                .expired(false)
+                .build();
+    }
+}
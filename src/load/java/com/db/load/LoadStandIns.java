@@ -0,0 +1,113 @@
+package com.db.load;
+
+import com.db.dto.TradeDto;
+import com.db.dto.TradeResult;
+import com.db.exception.InvalidTradeException;
+import com.db.model.TradeHistory;
+import com.db.repository.TradeHistoryRepository;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * What the load harness puts around the application: a MongoDB stand-in that takes mongo-latency per bulk
+ * write and keeps nothing, and probes on TradeService that time each persist call and complete the end to
+ * end measurement of trades sent through Kafka.
+ */
+@Configuration
+public class LoadStandIns {
+
+    @Bean
+    public StageLatencies stageLatencies() {
+        return new StageLatencies();
+    }
+
+    // Stub-only mocks do not remember their invocations, so the batches passed to them are not retained
+    @Bean
+    public MongoTemplate mongoTemplate(StageLatencies latencies,
+                                       @Value("${load.mongo-latency:2ms}") Duration mongoLatency) {
+        BulkOperations bulk = mock(BulkOperations.class, withSettings().stubOnly().defaultAnswer(RETURNS_SELF));
+        doAnswer(invocation -> {
+            long start = System.nanoTime();
+            Thread.sleep(mongoLatency);
+            latencies.record("mongo.bulk-write", start);
+            return null;
+        }).when(bulk).execute();
+
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class, withSettings().stubOnly());
+        when(mongoTemplate.bulkOps(any(BulkOperations.BulkMode.class), eq(TradeHistory.class))).thenReturn(bulk);
+        return mongoTemplate;
+    }
+
+    @Bean
+    public TradeHistoryRepository tradeHistoryRepository() {
+        return mock(TradeHistoryRepository.class, withSettings().stubOnly());
+    }
+
+    @Bean
+    public PersistProbe persistProbe(StageLatencies latencies) {
+        return new PersistProbe(latencies);
+    }
+
+    // Outermost advice, so the bulkhead wait and the commit are part of the measured call
+    @Aspect
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public static class PersistProbe {
+
+        private final StageLatencies latencies;
+
+        PersistProbe(StageLatencies latencies) {
+            this.latencies = latencies;
+        }
+
+        @Around("execution(* com.db.service.TradeService.saveTrade(..))")
+        public Object saveTrade(ProceedingJoinPoint call) throws Throwable {
+            TradeDto dto = (TradeDto) call.getArgs()[0];
+            long start = System.nanoTime();
+            try {
+                Object trade = call.proceed();
+                latencies.record("db.save-trade", start);
+                finish(dto, true);
+                return trade;
+            } catch (InvalidTradeException e) {
+                finish(dto, false);
+                throw e;
+            }
+        }
+
+        @Around("execution(* com.db.service.TradeService.saveTrades(..))")
+        @SuppressWarnings("unchecked")
+        public Object saveTrades(ProceedingJoinPoint call) throws Throwable {
+            List<TradeDto> dtos = (List<TradeDto>) call.getArgs()[0];
+            long start = System.nanoTime();
+            List<TradeResult> results = (List<TradeResult>) call.proceed();
+            latencies.record("db.save-trades", start);
+            for (int i = 0; i < results.size(); i++) {
+                finish(dtos.get(i), results.get(i).isAccepted());
+            }
+            return results;
+        }
+
+        private void finish(TradeDto dto, boolean accepted) {
+            Long sent = latencies.finish(TradeLoadGenerator.key(dto));
+            if (sent == null) return;
+            if (accepted) {
+                latencies.record("kafka.end-to-end", sent);
+            }
+            latencies.count(TradeLoadGenerator.outcome("kafka", dto, accepted));
+        }
+    }
+}
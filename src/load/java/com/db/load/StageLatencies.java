@@ -0,0 +1,67 @@
+package com.db.load;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histograms per stage of the trade path, recorded in microseconds with three significant digits,
+ * and plain counters for outcomes that have no latency of their own.
+ */
+public class StageLatencies {
+
+    private final Map<String, Histogram> histograms = new ConcurrentSkipListMap<>();
+    private final Map<String, LongAdder> counters = new ConcurrentSkipListMap<>();
+    private final Map<String, Long> pending = new ConcurrentHashMap<>();
+
+    public void record(String stage, long startNanos) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+        histograms.computeIfAbsent(stage, name -> new ConcurrentHistogram(3)).recordValue(Math.max(micros, 0));
+    }
+
+    public void count(String counter) {
+        counters.computeIfAbsent(counter, name -> new LongAdder()).increment();
+    }
+
+    // Remembers when an event entered the pipeline so a later stage can measure end to end latency
+    public void start(String key, long startNanos) {
+        pending.put(key, startNanos);
+    }
+
+    public Long finish(String key) {
+        return pending.remove(key);
+    }
+
+    // Drops what was recorded so far, used once the warmup is over
+    public void reset() {
+        histograms.clear();
+        counters.clear();
+    }
+
+    public int getPending() {
+        return pending.size();
+    }
+
+    public void report(PrintStream out, long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        out.printf("%n%-26s %10s %10s %10s %10s %10s %10s%n", "stage", "count", "per sec", "p50 ms", "p99 ms",
+                "p999 ms", "max ms");
+        histograms.forEach((stage, histogram) -> out.printf("%-26s %10d %10.1f %10.2f %10.2f %10.2f %10.2f%n",
+                stage,
+                histogram.getTotalCount(),
+                histogram.getTotalCount() / seconds,
+                histogram.getValueAtPercentile(50) / 1000.0,
+                histogram.getValueAtPercentile(99) / 1000.0,
+                histogram.getValueAtPercentile(99.9) / 1000.0,
+                histogram.getMaxValue() / 1000.0));
+        out.printf("%n%-26s %10s%n", "outcome", "count");
+        counters.forEach((counter, count) -> out.printf("%-26s %10d%n", counter, count.sum()));
+        out.printf("%-26s %10d%n", "unfinished", pending.size());
+    }
+}
@@ -0,0 +1,273 @@
+package com.db.load;
+
+import com.db.TradeStoreApplication;
+import com.db.dto.TradeDto;
+import com.db.service.TradeService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.data.mongo.MongoDataAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.mongo.MongoRepositoriesAutoConfiguration;
+import org.springframework.boot.autoconfigure.mongo.MongoAutoConfiguration;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.SimpleCommandLinePropertySource;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.test.EmbeddedKafkaKraftBroker;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives the whole application, REST and Kafka in, database upsert, history out, at a fixed rate and reports
+ * throughput and p50/p99/p999 latency per stage. Kafka is an embedded broker, the database H2 unless
+ * spring.datasource.url points elsewhere, and MongoDB the stand-in from {@link LoadStandIns}.
+ *
+ * <p>Runs through {@code mvn -Pload verify -Dload.args="..."}; every argument is also an application property,
+ * so {@code --app.kafka.consumer.mode=batch} works as well as the load.* options:
+ * <ul>
+ *     <li>load.rate: trades sent per second, default 1000</li>
+ *     <li>load.duration and load.warmup: measured run and the discarded run before it, default 60s and 15s</li>
+ *     <li>load.amend-ratio and load.stale-ratio: share of amendments to the hot set and of versions below the
+ *     current one, the rest are new trades, default 0.5 and 0.05</li>
+ *     <li>load.rest-ratio: share sent to POST /api/trades instead of the trades topic, default 0.5</li>
+ *     <li>load.hot-trades: trades created up front and amended during the run, default 10000</li>
+ *     <li>load.mongo-latency: time the stand-in takes per history bulk write, default 2ms</li>
+ * </ul>
+ * Latency is taken from when a trade was due to be sent rather than when it was, so a generator that falls
+ * behind shows up as latency instead of hiding it.
+ */
+public class TradeLoadGenerator {
+
+    private static final String[] TOPICS = {"trades", "trades-dlt", "trade-events"};
+    private static final int SEED_BATCH = 500;
+
+    private final StageLatencies latencies;
+    private final TradeService tradeService;
+    private final KafkaTemplate<String, TradeDto> kafkaTemplate;
+    private final ObjectMapper objectMapper;
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+    private final URI tradesUri;
+    private final String topic;
+
+    private final int rate;
+    private final double amendRatio;
+    private final double staleRatio;
+    private final double restRatio;
+    private final UUID[] hotTrades;
+    private final AtomicIntegerArray versions;
+    private final AtomicInteger staleVersion = new AtomicInteger();
+    private final LocalDate maturityDate = LocalDate.now().plusYears(1);
+
+    @SuppressWarnings("unchecked")
+    TradeLoadGenerator(ConfigurableApplicationContext context) {
+        Environment env = context.getEnvironment();
+        this.latencies = context.getBean(StageLatencies.class);
+        this.tradeService = context.getBean(TradeService.class);
+        this.kafkaTemplate = context.getBean("tradeKafkaTemplate", KafkaTemplate.class);
+        this.objectMapper = context.getBean(ObjectMapper.class);
+        this.tradesUri = URI.create("http://localhost:" + env.getProperty("local.server.port") + "/api/trades");
+        this.topic = env.getProperty("app.kafka.topic", "trades");
+        this.rate = env.getProperty("load.rate", Integer.class, 1000);
+        this.amendRatio = env.getProperty("load.amend-ratio", Double.class, 0.5);
+        this.staleRatio = env.getProperty("load.stale-ratio", Double.class, 0.05);
+        this.restRatio = env.getProperty("load.rest-ratio", Double.class, 0.5);
+        int hotCount = env.getProperty("load.hot-trades", Integer.class, 10_000);
+        this.hotTrades = new UUID[hotCount];
+        this.versions = new AtomicIntegerArray(hotCount);
+    }
+
+    public static void main(String[] args) throws Exception {
+        SimpleCommandLinePropertySource options = new SimpleCommandLinePropertySource(args);
+        int partitions = Integer.parseInt(option(options, "app.kafka.partitions", "3"));
+        EmbeddedKafkaKraftBroker broker = new EmbeddedKafkaKraftBroker(1, partitions, TOPICS);
+        broker.afterPropertiesSet();
+
+        List<String> appArgs = new ArrayList<>(List.of(args));
+        appArgs.add("--spring.kafka.bootstrap-servers=" + broker.getBrokersAsString());
+        appArgs.add("--spring.autoconfigure.exclude=" + String.join(",", MongoAutoConfiguration.class.getName(),
+                MongoDataAutoConfiguration.class.getName(), MongoRepositoriesAutoConfiguration.class.getName()));
+        appArgs.add("--app.history.journal.dir=" + Files.createTempDirectory("trade-load-journal"));
+        defaultTo(appArgs, options, "server.port", "0");
+        defaultTo(appArgs, options, "spring.jpa.show-sql", "false");
+        defaultTo(appArgs, options, "logging.level.com.db", "WARN");
+        defaultTo(appArgs, options, "logging.level.org.apache.kafka", "WARN");
+        // Stale trades are dead-lettered by design, TradeConsumer already logs each one
+        defaultTo(appArgs, options, "logging.level.org.springframework.kafka.retrytopic", "OFF");
+        if (!options.containsProperty("spring.datasource.url")) {
+            appArgs.add("--spring.datasource.url=jdbc:h2:mem:load;DB_CLOSE_DELAY=-1");
+            appArgs.add("--spring.datasource.driver-class-name=org.h2.Driver");
+            appArgs.add("--spring.datasource.username=sa");
+            appArgs.add("--spring.datasource.password=");
+            appArgs.add("--spring.jpa.hibernate.ddl-auto=create-drop");
+            appArgs.add("--spring.flyway.enabled=false");
+            appArgs.add("--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect");
+        }
+
+        // Devtools would restart the application in another class loader, leaving the generator outside it
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        ConfigurableApplicationContext context = new SpringApplication(TradeStoreApplication.class, LoadStandIns.class)
+                .run(appArgs.toArray(String[]::new));
+        int status = 0;
+        try {
+            Environment env = context.getEnvironment();
+            Duration warmup = env.getProperty("load.warmup", Duration.class, Duration.ofSeconds(15));
+            Duration duration = env.getProperty("load.duration", Duration.class, Duration.ofSeconds(60));
+            Duration drainTimeout = env.getProperty("load.drain-timeout", Duration.class, Duration.ofSeconds(60));
+
+            TradeLoadGenerator generator = new TradeLoadGenerator(context);
+            generator.seed();
+            System.out.printf("Warming up for %s at %d trades/s%n", warmup, generator.rate);
+            generator.run(warmup);
+            generator.drain(drainTimeout);
+            generator.latencies.reset();
+
+            System.out.printf("Measuring for %s at %d trades/s%n", duration, generator.rate);
+            long start = System.nanoTime();
+            generator.run(duration);
+            generator.drain(drainTimeout);
+            generator.latencies.report(System.out, System.nanoTime() - start);
+        } catch (Exception e) {
+            e.printStackTrace();
+            status = 1;
+        } finally {
+            context.close();
+            broker.destroy();
+        }
+        // Client threads of the embedded broker are not all daemons
+        System.exit(status);
+    }
+
+    // Creates the hot set in bulk, outside any measurement
+    void seed() {
+        List<TradeDto> batch = new ArrayList<>(SEED_BATCH);
+        for (int i = 0; i < hotTrades.length; i++) {
+            hotTrades[i] = UUID.randomUUID();
+            versions.set(i, 1);
+            batch.add(trade(hotTrades[i], 1));
+            if (batch.size() == SEED_BATCH || i == hotTrades.length - 1) {
+                tradeService.saveTrades(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    // Open loop: the n-th trade is due at start + n / rate whether or not the earlier ones completed
+    void run(Duration duration) {
+        long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        long start = System.nanoTime();
+        long end = start + duration.toNanos();
+        for (long due = start; due < end; due += interval) {
+            long wait = due - System.nanoTime();
+            if (wait > 0) LockSupport.parkNanos(wait);
+            send(next(), due);
+        }
+    }
+
+    void drain(Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (latencies.getPending() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(100);
+        }
+    }
+
+    private TradeDto next() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        double kind = random.nextDouble();
+        if (kind < staleRatio) {
+            // Below every version ever written and distinct per send, so no two stale trades share a key
+            return trade(hotTrades[random.nextInt(hotTrades.length)], -staleVersion.getAndIncrement());
+        }
+        if (kind < staleRatio + amendRatio) {
+            int i = random.nextInt(hotTrades.length);
+            return trade(hotTrades[i], versions.incrementAndGet(i));
+        }
+        return trade(UUID.randomUUID(), 1);
+    }
+
+    private void send(TradeDto dto, long due) {
+        if (ThreadLocalRandom.current().nextDouble() < restRatio) {
+            sendRest(dto, due);
+        } else {
+            sendKafka(dto, due);
+        }
+    }
+
+    private void sendKafka(TradeDto dto, long due) {
+        latencies.start(key(dto), due);
+        kafkaTemplate.send(topic, dto.getTradeId().toString(), dto).whenComplete((result, e) -> {
+            if (e == null) {
+                latencies.record("kafka.send", due);
+            } else {
+                latencies.finish(key(dto));
+                latencies.count("kafka.send-failed");
+            }
+        });
+    }
+
+    private void sendRest(TradeDto dto, long due) {
+        HttpRequest request;
+        try {
+            request = HttpRequest.newBuilder(tradesUri)
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(dto)))
+                    .build();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        // Kept apart from the Kafka keys, which the persist probe completes
+        String key = "rest:" + key(dto);
+        latencies.start(key, due);
+        httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, e) -> {
+            latencies.finish(key);
+            if (e != null || response.statusCode() >= 500) {
+                latencies.count("rest.error");
+                return;
+            }
+            latencies.record("rest.request", due);
+            latencies.count(outcome("rest", dto, response.statusCode() == 201));
+        });
+    }
+
+    private TradeDto trade(UUID tradeId, int version) {
+        return TradeDto.builder()
+                .tradeId(tradeId)
+                .version(version)
+                .counterPartyId("CP-" + (tradeId.hashCode() & 63))
+                .bookId("B" + (tradeId.hashCode() & 7))
+                .maturityDate(maturityDate)
+                .build();
+    }
+
+    static String key(TradeDto dto) {
+        return dto.getTradeId() + ":" + dto.getVersion();
+    }
+
+    // Stale trades are expected to be rejected, any other rejection means amendments overtook each other
+    static String outcome(String transport, TradeDto dto, boolean accepted) {
+        String kind = dto.getVersion() < 1 ? "stale" : dto.getVersion() == 1 ? "new" : "amend";
+        return transport + "." + kind + (accepted ? ".accepted" : ".rejected");
+    }
+
+    private static String option(SimpleCommandLinePropertySource options, String name, String defaultValue) {
+        String value = options.getProperty(name);
+        return value == null ? defaultValue : value;
+    }
+
+    private static void defaultTo(List<String> args, SimpleCommandLinePropertySource options, String name,
+                                  String value) {
+        if (!options.containsProperty(name)) args.add("--" + name + "=" + value);
+    }
+}
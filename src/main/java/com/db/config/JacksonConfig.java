@@ -1,8 +1,14 @@
 package com.db.config;
 
+import com.db.dto.TradeDto;
+import com.db.dto.TradeEvent;
+import com.db.model.Trade;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
@@ -15,8 +21,37 @@ public class JacksonConfig {
     public ObjectMapper objectMapper() {
         ObjectMapper mapper = new ObjectMapper();
         mapper.registerModule(new JavaTimeModule()); // Handle LocalDate correctly
+        mapper.registerModule(new BlackbirdModule()); // Generated accessors instead of reflection for getters/setters
         mapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS); // Serialize dates as ISO-8601 strings (e.g., "2025-10-31")
 
         return mapper;
     }
-}
\ No newline at end of file
+
+    // Readers and writers bound to one type resolve their (de)serializer once instead of on every call
+
+    @Bean
+    public ObjectReader tradeDtoReader(ObjectMapper objectMapper) {
+        return objectMapper.readerFor(TradeDto.class);
+    }
+
+    @Bean
+    public ObjectWriter tradeDtoWriter(ObjectMapper objectMapper) {
+        return objectMapper.writerFor(TradeDto.class);
+    }
+
+    @Bean
+    public ObjectReader tradeEventReader(ObjectMapper objectMapper) {
+        return objectMapper.readerFor(TradeEvent.class);
+    }
+
+    @Bean
+    public ObjectWriter tradeEventWriter(ObjectMapper objectMapper) {
+        return objectMapper.writerFor(TradeEvent.class);
+    }
+
+    // Used for streamed output, where the response buffer decides when to flush rather than every trade
+    @Bean
+    public ObjectWriter tradeWriter(ObjectMapper objectMapper) {
+        return objectMapper.writerFor(Trade.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+}
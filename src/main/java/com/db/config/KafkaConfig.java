@@ -13,11 +13,23 @@ public class KafkaConfig {
 
     @Value("${app.kafka.topic:trades}")
     private String tradeTopic;
+    @Value("${app.outbox.topic:trade-events}")
+    private String eventTopic;
+    @Value("${app.kafka.partitions:3}")
+    private int partitions;
 
     @Bean
     public NewTopic tradeTopic() {
         return TopicBuilder.name(tradeTopic)
-                .partitions(3)
+                .partitions(partitions)
+                .replicas(1)
+                .build();
+    }
+
+    @Bean
+    public NewTopic tradeEventTopic() {
+        return TopicBuilder.name(eventTopic)
+                .partitions(partitions)
                 .replicas(1)
                 .build();
     }
@@ -1,15 +1,31 @@
 package com.db.config;
 
+import com.db.dto.TradeDto;
+import com.db.dto.TradeEvent;
+import com.db.stream.KeyOrderedExecutor;
+import com.db.stream.TradeDeduplicator;
+import com.db.stream.TradeDeserializer;
+import com.db.stream.TradeExposureListener;
+import com.fasterxml.jackson.databind.ObjectReader;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Properties;
 
 @Configuration
 public class KafkaConsumerConfig {
@@ -20,16 +36,104 @@ public class KafkaConsumerConfig {
     private String groupId;
     @Value("${spring.kafka.consumer.auto-offset-reset}")
     private String autoOffsetReset;
+    @Value("${app.kafka.consumer.max-poll-records:500}")
+    private int maxPollRecords;
+    @Value("${app.kafka.consumer.parallelism:0}")
+    private int parallelism;
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
 
+    // Values are decoded straight from bytes in whichever wire format the producer used; records that
+    // cannot be decoded reach the listener as null values instead of failing the whole poll
     @Bean
-    public ConsumerFactory<String, String> consumerFactory() {
+    public ConsumerFactory<String, TradeDto> consumerFactory(ObjectReader tradeDtoReader) {
+        return new DefaultKafkaConsumerFactory<>(consumerProps(), new StringDeserializer(),
+                new ErrorHandlingDeserializer<>(new TradeDeserializer(tradeDtoReader)));
+    }
+
+    // The JSON events the outbox relay publishes to the trade-events topic
+    @Bean
+    public ConsumerFactory<String, TradeEvent> tradeEventConsumerFactory(ObjectReader tradeEventReader) {
+        Deserializer<TradeEvent> events = (topic, data) -> {
+            if (data == null) return null;
+            try {
+                return tradeEventReader.readValue(data);
+            } catch (IOException e) {
+                throw new SerializationException("Failed to deserialize trade event JSON", e);
+            }
+        };
+        return new DefaultKafkaConsumerFactory<>(consumerProps(), new StringDeserializer(),
+                new ErrorHandlingDeserializer<>(events));
+    }
+
+    private Map<String, Object> consumerProps() {
         Map<String, Object> props = new HashMap<>();
         props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         props.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
         props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, autoOffsetReset);
-        // Add deserializers if they aren't auto-configured
-        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
-        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
-        return new DefaultKafkaConsumerFactory<>(props);
+        return props;
+    }
+
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, TradeDto> kafkaListenerContainerFactory(
+            ConsumerFactory<String, TradeDto> consumerFactory, TradeDeduplicator tradeDeduplicator) {
+        ConcurrentKafkaListenerContainerFactory<String, TradeDto> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory);
+        // Dedup filters follow partition ownership
+        factory.getContainerProperties().setConsumerRebalanceListener(tradeDeduplicator);
+        configureListenerThreads(factory);
+        return factory;
+    }
+
+    // Hands the whole poll to the listener so it can be persisted in bulk
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, TradeDto> batchKafkaListenerContainerFactory(
+            ConsumerFactory<String, TradeDto> consumerFactory, TradeDeduplicator tradeDeduplicator) {
+        ConcurrentKafkaListenerContainerFactory<String, TradeDto> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory);
+        factory.getContainerProperties().setConsumerRebalanceListener(tradeDeduplicator);
+        factory.setBatchListener(true);
+
+        Properties overrides = new Properties();
+        overrides.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, String.valueOf(maxPollRecords));
+        factory.getContainerProperties().setKafkaConsumerProperties(overrides);
+        configureListenerThreads(factory);
+        return factory;
+    }
+
+    // Trade events for the in-memory exposures, every node reads them all from the end of the topic
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, TradeEvent> exposureListenerContainerFactory(
+            ConsumerFactory<String, TradeEvent> tradeEventConsumerFactory,
+            // Lazy since the listener endpoint on the same bean needs this factory first
+            @Lazy TradeExposureListener tradeExposureListener) {
+        ConcurrentKafkaListenerContainerFactory<String, TradeEvent> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(tradeEventConsumerFactory);
+        factory.getContainerProperties().setConsumerRebalanceListener(tradeExposureListener);
+        factory.setBatchListener(true);
+
+        Properties overrides = new Properties();
+        overrides.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "latest");
+        overrides.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, String.valueOf(maxPollRecords));
+        factory.getContainerProperties().setKafkaConsumerProperties(overrides);
+        return factory;
+    }
+
+    // Consumer threads are virtual when spring.threads.virtual.enabled is set, the database bulkhead
+    // still bounds how many of them reach the connection pool at once
+    private void configureListenerThreads(ConcurrentKafkaListenerContainerFactory<?, ?> factory) {
+        if (!virtualThreads) return;
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("trade-listener-");
+        executor.setVirtualThreads(true);
+        factory.getContainerProperties().setListenerTaskExecutor(executor);
+    }
+
+    // Worker lanes for the parallel consumer mode, defaults to one lane per core
+    @Bean
+    public KeyOrderedExecutor tradeKeyOrderedExecutor() {
+        if (virtualThreads) {
+            return new KeyOrderedExecutor(parallelism, new VirtualThreadTaskExecutor("trade-lane-").getVirtualThreadFactory());
+        }
+        return new KeyOrderedExecutor(parallelism);
     }
 }
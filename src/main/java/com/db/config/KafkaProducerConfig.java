@@ -1,6 +1,11 @@
 package com.db.config;
 
+import com.db.dto.TradeDto;
+import com.db.stream.TradeSerializer;
+import com.db.stream.TradeWireFormat;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
 import org.apache.kafka.common.serialization.StringSerializer;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
@@ -8,6 +13,7 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.core.DefaultKafkaProducerFactory;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.support.serializer.DelegatingByTypeSerializer;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -17,19 +23,53 @@ public class KafkaProducerConfig {
 
     @Value("${spring.kafka.bootstrap-servers}")
     private String bootstrapServers;
+    @Value("${app.kafka.wire-format:json}")
+    private TradeWireFormat wireFormat;
 
     @Bean
     public ProducerFactory<String, String> producerFactory() {
-        Map<String, Object> configProps = new HashMap<>();
-        // Use the injected value instead of hardcoding
-        configProps.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        Map<String, Object> configProps = producerProps();
         configProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
         configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
         return new DefaultKafkaProducerFactory<>(configProps);
     }
 
+    // Raw String payloads, used by the outbox relay
     @Bean
     public KafkaTemplate<String, String> kafkaTemplate() {
         return new KafkaTemplate<>(producerFactory());
     }
-}
\ No newline at end of file
+
+    @Bean
+    public ProducerFactory<String, TradeDto> tradeProducerFactory(ObjectWriter tradeDtoWriter) {
+        return new DefaultKafkaProducerFactory<>(producerProps(),
+                new StringSerializer(), new TradeSerializer(tradeDtoWriter, wireFormat));
+    }
+
+    // Trades in the configured wire format
+    @Bean
+    public KafkaTemplate<String, TradeDto> tradeKafkaTemplate(ProducerFactory<String, TradeDto> tradeProducerFactory) {
+        return new KafkaTemplate<>(tradeProducerFactory);
+    }
+
+    // Forwards failed trades to the retry and dead-letter topics, records that could not be decoded
+    // are forwarded as the raw bytes they arrived with
+    @Bean
+    public KafkaTemplate<String, Object> tradeRetryKafkaTemplate(ObjectWriter tradeDtoWriter) {
+        DelegatingByTypeSerializer valueSerializer = new DelegatingByTypeSerializer(Map.of(
+                byte[].class, new ByteArraySerializer(),
+                TradeDto.class, new TradeSerializer(tradeDtoWriter, wireFormat)));
+        return new KafkaTemplate<>(new DefaultKafkaProducerFactory<>(producerProps(),
+                new StringSerializer(), valueSerializer));
+    }
+
+    private Map<String, Object> producerProps() {
+        Map<String, Object> configProps = new HashMap<>();
+        // Use the injected value instead of hardcoding
+        configProps.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        // Retried sends cannot overtake each other, the outbox relay relies on this for per-key order
+        configProps.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        configProps.put(ProducerConfig.ACKS_CONFIG, "all");
+        return configProps;
+    }
+}
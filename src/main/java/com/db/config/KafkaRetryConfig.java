@@ -0,0 +1,23 @@
+package com.db.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.retrytopic.RetryTopicConfigurationSupport;
+
+/**
+ * Infrastructure for the non-blocking retry topics declared on TradeConsumer. Retry and dead-letter containers
+ * inherit the main listener's auto-startup, which is off unless the record consumer mode is selected; they are
+ * started regardless because the batch and parallel listeners forward their failed records to the same topics.
+ */
+@Configuration
+public class KafkaRetryConfig extends RetryTopicConfigurationSupport {
+
+    @Override
+    protected void configureCustomizers(CustomizersConfigurer customizersConfigurer) {
+        customizersConfigurer.customizeListenerContainer(container -> {
+            String mainListenerId = container.getMainListenerId();
+            if (mainListenerId != null && !mainListenerId.equals(container.getListenerId())) {
+                container.setAutoStartup(true);
+            }
+        });
+    }
+}
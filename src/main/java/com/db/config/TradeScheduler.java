@@ -1,21 +1,91 @@
 package com.db.config;
 
+import com.db.service.JobLeaseService;
+import com.db.service.TradeArchiveService;
+import com.db.service.TradePartitionService;
 import com.db.service.TradeService;
 import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.util.UUID;
+
 @Component
 @EnableScheduling
 @RequiredArgsConstructor
 public class TradeScheduler {
 
+    static final String EXPIRY_JOB = "expire-trades";
+    static final String PARTITION_JOB = "maintain-trade-partitions";
+    static final String ARCHIVE_JOB = "archive-trades";
+
     private final TradeService tradeService;
+    private final JobLeaseService jobLeaseService;
+    private final TradePartitionService tradePartitionService;
+    private final TradeArchiveService tradeArchiveService;
+    private static final Logger log = LoggerFactory.getLogger(TradeScheduler.class);
+
+    // Number of tradeId ranges the expiry job is split into, each claimed by whichever node leases it first
+    @Value("${app.scheduler.expiry-ranges:1}")
+    private int expiryRanges = 1;
 
     // Run every day at midnight
     @Scheduled(cron = "0 0 0 * * ?")
     public void checkExpiredTrades() {
-        tradeService.markExpiredTrades();
+        for (int range = 0; range < expiryRanges; range++) {
+            String lease = expiryRanges == 1 ? EXPIRY_JOB : EXPIRY_JOB + "-" + range;
+            if (!jobLeaseService.tryAcquire(lease)) {
+                log.debug("Skipping {}, leased by another node", lease);
+                continue;
+            }
+            try {
+                tradeService.markExpiredTrades(lowerBound(range), upperBound(range));
+            } finally {
+                jobLeaseService.release(lease);
+            }
+        }
+    }
+
+    // Runs after the expiry job, so partitions it has just fully expired can be detached the same night
+    @Scheduled(cron = "0 30 0 * * ?")
+    public void maintainPartitions() {
+        if (!jobLeaseService.tryAcquire(PARTITION_JOB)) {
+            log.debug("Skipping {}, leased by another node", PARTITION_JOB);
+            return;
+        }
+        try {
+            tradePartitionService.maintainPartitions();
+        } finally {
+            jobLeaseService.release(PARTITION_JOB);
+        }
+    }
+
+    // Runs after the expiry job, in chunks throttled by app.archive.pause
+    @Scheduled(cron = "0 0 1 * * ?")
+    public void archiveTrades() {
+        if (!jobLeaseService.tryAcquire(ARCHIVE_JOB)) {
+            log.debug("Skipping {}, leased by another node", ARCHIVE_JOB);
+            return;
+        }
+        try {
+            tradeArchiveService.archiveExpiredTrades();
+        } finally {
+            jobLeaseService.release(ARCHIVE_JOB);
+        }
+    }
+
+    // Ranges split the most significant 64 bits evenly and are lower-exclusive, upper-inclusive
+    private UUID lowerBound(int range) {
+        return range == 0 ? TradeService.MIN_TRADE_ID : upperBound(range - 1);
+    }
+
+    private UUID upperBound(int range) {
+        if (range == expiryRanges - 1) return TradeService.MAX_TRADE_ID;
+        long step = Long.divideUnsigned(-1L, expiryRanges);
+        return new UUID(step * (range + 1), 0L);
     }
 }
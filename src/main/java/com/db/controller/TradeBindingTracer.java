@@ -0,0 +1,44 @@
+package com.db.controller;
+
+import com.db.dto.TradeDto;
+import com.db.service.TradeTracer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.RequestBodyAdviceAdapter;
+
+import java.lang.reflect.Type;
+
+/**
+ * Begins the trace of a trade posted to {@link TradeController#saveTrade} before its body is read, so JSON
+ * binding is timed as the first stage of the REST entry point.
+ */
+@ControllerAdvice(assignableTypes = TradeController.class)
+@RequiredArgsConstructor
+public class TradeBindingTracer extends RequestBodyAdviceAdapter {
+
+    private final TradeTracer tradeTracer;
+
+    @Override
+    public boolean supports(MethodParameter methodParameter, Type targetType,
+                            Class<? extends HttpMessageConverter<?>> converterType) {
+        return targetType == TradeDto.class;
+    }
+
+    @Override
+    public HttpInputMessage beforeBodyRead(HttpInputMessage inputMessage, MethodParameter parameter, Type targetType,
+                                           Class<? extends HttpMessageConverter<?>> converterType) {
+        tradeTracer.begin(TradeTracer.REST, 1);
+        return inputMessage;
+    }
+
+    @Override
+    public Object afterBodyRead(Object body, HttpInputMessage inputMessage, MethodParameter parameter,
+                                Type targetType, Class<? extends HttpMessageConverter<?>> converterType) {
+        tradeTracer.stage(TradeTracer.Stage.BIND, tradeTracer.began());
+        tradeTracer.identify((TradeDto) body);
+        return body;
+    }
+}
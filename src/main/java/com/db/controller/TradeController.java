@@ -1,15 +1,37 @@
 package com.db.controller;
 
 import com.db.dto.TradeDto;
+import com.db.dto.TradeExposure;
+import com.db.dto.TradeView;
 import com.db.model.Trade;
+import com.db.service.TradeBatchService;
+import com.db.service.TradeExposureStore;
 import com.db.service.TradeService;
+import com.db.service.TradeTracer;
+import com.db.stream.TradeDltReplayer;
 import com.db.stream.TradeProducer;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
 
 @RestController
 @RequestMapping("/api/trades")
@@ -18,16 +40,121 @@ public class TradeController {
 
     private final TradeService tradeService;
     private final TradeProducer tradeProducer;
+    private final TradeBatchService tradeBatchService;
+    private final TradeDltReplayer tradeDltReplayer;
+    private final TradeTracer tradeTracer;
+    private final TradeExposureStore tradeExposureStore;
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter tradeWriter;
 
+    @Value("${app.query.max-page-size:1000}")
+    private int maxPageSize;
+
+    // The trace was begun by TradeBindingTracer before the body was read
     @PostMapping
     public ResponseEntity<Trade> saveTrade(@RequestBody TradeDto dto) {
-        Trade trade = tradeService.saveTrade(dto);
-        return ResponseEntity.status(HttpStatus.CREATED).body(trade);
+        int accepted = 0;
+        try {
+            Trade trade = tradeService.saveTrade(dto);
+            accepted = 1;
+            return ResponseEntity.status(HttpStatus.CREATED).body(trade);
+        } finally {
+            tradeTracer.end(accepted);
+        }
+    }
+
+    // Accepts a JSON array or NDJSON stream of trades, results are streamed back in the same format
+    @PostMapping(value = "/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<StreamingResponseBody> saveTrades(HttpServletRequest request) throws IOException {
+        boolean ndjson = MediaType.APPLICATION_NDJSON.isCompatibleWith(MediaType.parseMediaType(request.getContentType()));
+        InputStream body = request.getInputStream();
+        StreamingResponseBody results = out -> tradeBatchService.ingest(body, out, ndjson);
+        return ResponseEntity.ok()
+                .contentType(ndjson ? MediaType.APPLICATION_NDJSON : MediaType.APPLICATION_JSON)
+                .body(results);
     }
 
+    // Keyset pagination, the X-Next-Cursor header carries the value to pass as "after" for the next page
     @GetMapping
-    public ResponseEntity<List<Trade>> getAllTrades() {
-        return ResponseEntity.ok(tradeService.getAllTrades());
+    public ResponseEntity<List<Trade>> getTrades(@RequestParam(required = false) UUID after,
+                                                 @RequestParam(defaultValue = "100") int limit) {
+        int pageSize = pageSize(limit);
+        List<Trade> trades = tradeService.getTrades(after, pageSize);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (trades.size() == pageSize) {
+            response.header("X-Next-Cursor", trades.get(trades.size() - 1).getTradeId().toString());
+        }
+        return response.body(trades);
+    }
+
+    @GetMapping("/{tradeId}")
+    public ResponseEntity<TradeView> getTrade(@PathVariable UUID tradeId) {
+        return ResponseEntity.of(tradeService.getTrade(tradeId));
+    }
+
+    // Trades of one book and counterparty, paged by tradeId like GET /api/trades
+    @GetMapping("/search")
+    public ResponseEntity<List<TradeView>> findTrades(@RequestParam String bookId,
+                                                      @RequestParam String counterPartyId,
+                                                      @RequestParam(required = false) UUID after,
+                                                      @RequestParam(defaultValue = "100") int limit) {
+        int pageSize = pageSize(limit);
+        List<TradeView> trades = tradeService.findTrades(bookId, counterPartyId, after, pageSize);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (trades.size() == pageSize) {
+            response.header("X-Next-Cursor", trades.get(trades.size() - 1).tradeId().toString());
+        }
+        return response.body(trades);
+    }
+
+    // Unexpired trades maturing in [from, to], the next page starts after X-Next-Maturity and X-Next-Cursor,
+    // passed back as afterMaturity and after
+    @GetMapping("/maturing")
+    public ResponseEntity<List<TradeView>> findMaturingTrades(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate afterMaturity,
+            @RequestParam(required = false) UUID after,
+            @RequestParam(defaultValue = "100") int limit) {
+        int pageSize = pageSize(limit);
+        List<TradeView> trades = tradeService.findMaturingTrades(from, to, afterMaturity, after, pageSize);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (trades.size() == pageSize) {
+            TradeView last = trades.get(trades.size() - 1);
+            response.header("X-Next-Maturity", last.maturityDate().toString());
+            response.header("X-Next-Cursor", last.tradeId().toString());
+        }
+        return response.body(trades);
+    }
+
+    // Live and soon maturing trade counts of one book and counterparty, served from memory
+    @GetMapping("/exposure")
+    public ResponseEntity<TradeExposure> getExposure(@RequestParam String bookId, @RequestParam String counterPartyId) {
+        if (!tradeExposureStore.isReady()) {
+            // Not rebuilt from the database yet, which waits for the trade-events listener to join Kafka
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "5").build();
+        }
+        return ResponseEntity.ok(tradeExposureStore.getExposure(bookId, counterPartyId));
+    }
+
+    // Streams every trade as NDJSON straight from a database cursor
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamTrades() {
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                generator.setRootValueSeparator(null);
+                tradeService.streamTrades(trade -> {
+                    try {
+                        tradeWriter.writeValue(generator, trade);
+                        generator.writeRaw('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
     }
 
     @PostMapping("/publish")
@@ -36,4 +163,15 @@ public class TradeController {
         return ResponseEntity.ok("Trade published to Kafka successfully");
     }
 
+    // Sends up to limit dead-lettered trades back to the trade topic for another round of processing
+    @PostMapping("/dlt/replay")
+    public ResponseEntity<TradeDltReplayer.Result> replayDeadLetters(@RequestParam(defaultValue = "1000") int limit)
+            throws ExecutionException, InterruptedException, TimeoutException {
+        return ResponseEntity.ok(tradeDltReplayer.replay(Math.max(0, limit)));
+    }
+
+    private int pageSize(int limit) {
+        return Math.max(1, Math.min(limit, maxPageSize));
+    }
+
 }
@@ -0,0 +1,21 @@
+package com.db.dto;
+
+import java.time.LocalDate;
+import java.util.UUID;
+
+/**
+ * A change to a stored trade, as published on the trade-events topic: the trade as it was saved, or as it
+ * was when the expiry job marked it expired. The trade fields carry the same names as in {@link TradeDto}.
+ */
+public record TradeEvent(Type type,
+                         UUID tradeId,
+                         int version,
+                         String counterPartyId,
+                         String bookId,
+                         LocalDate maturityDate) {
+
+    public enum Type {
+        SAVED,
+        EXPIRED
+    }
+}
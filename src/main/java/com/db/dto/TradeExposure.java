@@ -0,0 +1,14 @@
+package com.db.dto;
+
+import java.time.LocalDate;
+
+/**
+ * Live trades of one book and counterparty: all of them, and those maturing between today and
+ * {@code maturingBy} inclusive.
+ */
+public record TradeExposure(String bookId,
+                            String counterPartyId,
+                            long activeTrades,
+                            long maturingTrades,
+                            LocalDate maturingBy) {
+}
@@ -0,0 +1,26 @@
+package com.db.dto;
+
+import lombok.*;
+
+import java.util.UUID;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class TradeResult {
+
+    private UUID tradeId;
+    private int version;
+    private boolean accepted;
+    private String message;
+
+    public static TradeResult accepted(UUID tradeId, int version) {
+        return new TradeResult(tradeId, version, true, null);
+    }
+
+    public static TradeResult rejected(UUID tradeId, int version, String message) {
+        return new TradeResult(tradeId, version, false, message);
+    }
+}
@@ -0,0 +1,17 @@
+package com.db.dto;
+
+import java.time.LocalDate;
+import java.util.UUID;
+
+/**
+ * Read-only projection of a stored trade returned by the query API. Built straight from the query result, so
+ * it is never attached to the persistence context.
+ */
+public record TradeView(UUID tradeId,
+                        int version,
+                        String counterPartyId,
+                        String bookId,
+                        LocalDate maturityDate,
+                        LocalDate createdDate,
+                        boolean expired) {
+}
@@ -0,0 +1,28 @@
+package com.db.model;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.*;
+
+import java.time.LocalDate;
+import java.util.UUID;
+
+// A trade moved out of the trades table once it had been expired longer than the archive retention
+@Entity
+@Table(name = "trades_archive")
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class ArchivedTrade {
+    @Id
+    private UUID tradeId;
+    private int version;
+    private String counterPartyId;
+    private String bookId;
+    private LocalDate maturityDate;
+    private LocalDate createdDate;
+    private LocalDate archivedDate;
+}
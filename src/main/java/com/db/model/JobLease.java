@@ -0,0 +1,23 @@
+package com.db.model;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.*;
+
+import java.time.Instant;
+
+@Entity
+@Table(name = "job_leases")
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class JobLease {
+    @Id
+    private String name;
+    private String owner;
+    private Instant lockedAt;
+    private Instant lockedUntil;
+}
@@ -2,6 +2,7 @@ package com.db.model;
 
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.Table;
 import lombok.*;
 
@@ -9,7 +10,10 @@ import java.time.LocalDate;
 import java.util.UUID;
 
 @Entity
-@Table(name = "trades")
+// The migrations in db/migration create these on PostgreSQL as covering indexes, the maturity one partial on live trades
+@Table(name = "trades", indexes = {
+        @Index(name = "idx_trades_book_counterparty", columnList = "book_id, counter_party_id, trade_id"),
+        @Index(name = "idx_trades_live_maturity", columnList = "maturity_date, trade_id")})
 @Getter
 @Setter
 @AllArgsConstructor
@@ -0,0 +1,26 @@
+package com.db.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.Instant;
+
+@Entity
+@Table(name = "trade_outbox", indexes = @Index(name = "idx_trade_outbox_unsent", columnList = "sent_at, id"))
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class TradeOutbox {
+    // Assigned in commit order per trade, since writers of the same trade serialise on its row lock
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    private String topic;
+    private String messageKey;
+    @Column(length = 4000)
+    private String payload;
+    private Instant createdAt;
+    private Instant sentAt;
+}
@@ -0,0 +1,31 @@
+package com.db.repository;
+
+import com.db.dto.TradeView;
+import com.db.model.ArchivedTrade;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface ArchivedTradeRepository extends JpaRepository<ArchivedTrade, UUID> {
+
+    // Archived trades are always expired
+    @Query("select new com.db.dto.TradeView(a.tradeId, a.version, a.counterPartyId, a.bookId, a.maturityDate, " +
+            "a.createdDate, true) from ArchivedTrade a where a.tradeId = :tradeId")
+    Optional<TradeView> findViewById(@Param("tradeId") UUID tradeId);
+
+    // Copies the given trades that are still expired and matured before the cutoff, in one statement
+    @Modifying
+    @Query("insert into ArchivedTrade (tradeId, version, counterPartyId, bookId, maturityDate, createdDate, " +
+            "archivedDate) select t.tradeId, t.version, t.counterPartyId, t.bookId, t.maturityDate, t.createdDate, " +
+            ":today from Trade t where t.tradeId in :ids and t.expired = true and t.maturityDate < :cutoff")
+    int archive(@Param("ids") Collection<UUID> ids, @Param("cutoff") LocalDate cutoff,
+                @Param("today") LocalDate today);
+}
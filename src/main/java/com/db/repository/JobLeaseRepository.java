@@ -0,0 +1,32 @@
+package com.db.repository;
+
+import com.db.model.JobLease;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+
+@Repository
+public interface JobLeaseRepository extends JpaRepository<JobLease, String> {
+
+    // Takes over an existing lease only once it has run out
+    @Modifying
+    @Query("update JobLease l set l.owner = :owner, l.lockedAt = :now, l.lockedUntil = :until " +
+            "where l.name = :name and l.lockedUntil <= :now")
+    int acquire(@Param("name") String name, @Param("owner") String owner,
+                @Param("now") Instant now, @Param("until") Instant until);
+
+    // Plain insert so a concurrent holder makes it fail on the primary key instead of being overwritten
+    @Modifying
+    @Query(value = "insert into job_leases (name, owner, locked_at, locked_until) values (:name, :owner, :now, :until)",
+            nativeQuery = true)
+    int insert(@Param("name") String name, @Param("owner") String owner,
+               @Param("now") Instant now, @Param("until") Instant until);
+
+    @Modifying
+    @Query("update JobLease l set l.lockedUntil = :until where l.name = :name and l.owner = :owner")
+    int release(@Param("name") String name, @Param("owner") String owner, @Param("until") Instant until);
+}
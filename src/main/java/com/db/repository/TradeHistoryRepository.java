@@ -7,5 +7,5 @@ import org.springframework.stereotype.Repository;
 import java.util.UUID;
 
 @Repository
-public interface TradeHistoryRepository extends MongoRepository<TradeHistory, UUID> {
+public interface TradeHistoryRepository extends MongoRepository<TradeHistory, UUID>, TradeHistoryRepositoryCustom {
 }
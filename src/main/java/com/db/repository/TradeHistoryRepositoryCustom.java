@@ -0,0 +1,11 @@
+package com.db.repository;
+
+import com.db.model.TradeHistory;
+
+import java.util.List;
+
+public interface TradeHistoryRepositoryCustom {
+
+    // Unordered bulk upsert keyed on the history id, writing the same records twice leaves one copy of each
+    void upsertAll(List<TradeHistory> histories);
+}
@@ -0,0 +1,28 @@
+package com.db.repository;
+
+import com.db.model.TradeHistory;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.List;
+
+@RequiredArgsConstructor
+public class TradeHistoryRepositoryCustomImpl implements TradeHistoryRepositoryCustom {
+
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public void upsertAll(List<TradeHistory> histories) {
+        if (histories.isEmpty()) return;
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, TradeHistory.class);
+        for (TradeHistory history : histories) {
+            bulk.replaceOne(Query.query(Criteria.where("_id").is(history.getId())), history,
+                    FindAndReplaceOptions.options().upsert());
+        }
+        bulk.execute();
+    }
+}
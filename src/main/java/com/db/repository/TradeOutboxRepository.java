@@ -0,0 +1,32 @@
+package com.db.repository;
+
+import com.db.model.TradeOutbox;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface TradeOutboxRepository extends JpaRepository<TradeOutbox, Long>, TradeOutboxRepositoryCustom {
+
+    // Oldest unsent messages, locked so relays on other nodes wait for this batch instead of sending out of order
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select o from TradeOutbox o where o.sentAt is null order by o.id")
+    List<TradeOutbox> findUnsent(Limit limit);
+
+    @Modifying(clearAutomatically = true)
+    @Query("update TradeOutbox o set o.sentAt = :sentAt where o.id in :ids")
+    int markSent(@Param("ids") Collection<Long> ids, @Param("sentAt") Instant sentAt);
+
+    @Modifying
+    @Query("delete from TradeOutbox o where o.sentAt < :before")
+    int deleteSentBefore(@Param("before") Instant before);
+}
@@ -0,0 +1,11 @@
+package com.db.repository;
+
+import com.db.model.TradeOutbox;
+
+import java.util.Collection;
+
+public interface TradeOutboxRepositoryCustom {
+
+    // Inserts all messages using a single JDBC batch, ids are assigned by the database
+    void append(Collection<TradeOutbox> messages);
+}
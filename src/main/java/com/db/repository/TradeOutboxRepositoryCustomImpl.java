@@ -0,0 +1,28 @@
+package com.db.repository;
+
+import com.db.model.TradeOutbox;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.util.Collection;
+
+@RequiredArgsConstructor
+public class TradeOutboxRepositoryCustomImpl implements TradeOutboxRepositoryCustom {
+
+    private static final String INSERT_SQL =
+            "INSERT INTO trade_outbox (topic, message_key, payload, created_at) VALUES (?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void append(Collection<TradeOutbox> messages) {
+        if (messages.isEmpty()) return;
+        jdbcTemplate.batchUpdate(INSERT_SQL, messages, messages.size(), (ps, message) -> {
+            ps.setString(1, message.getTopic());
+            ps.setString(2, message.getMessageKey());
+            ps.setString(3, message.getPayload());
+            ps.setTimestamp(4, Timestamp.from(message.getCreatedAt()));
+        });
+    }
+}
@@ -1,16 +1,83 @@
 package com.db.repository;
 
+import com.db.dto.TradeView;
 import com.db.model.Trade;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
 @Repository
-public interface TradeRepository extends JpaRepository<Trade, UUID> {
+public interface TradeRepository extends JpaRepository<Trade, UUID>, TradeRepositoryCustom {
+
+    String SELECT_VIEW = "select new com.db.dto.TradeView(t.tradeId, t.version, t.counterPartyId, t.bookId, " +
+            "t.maturityDate, t.createdDate, t.expired) from Trade t ";
+
     List<Trade> findByBookIdAndCounterPartyId(String bookId, String counterPartyId);
     List<Trade> findByExpiredFalseAndMaturityDateBefore(LocalDate date);
+    // Only reads the partitions of the given maturity dates, finding the trades stored under one of them
+    List<Trade> findByTradeIdInAndMaturityDateIn(Collection<UUID> tradeIds, Collection<LocalDate> maturityDates);
+
+    // Next chunk of trades to expire within the (after, upTo] tradeId range, locked until the chunk commits
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select t from Trade t where t.expired = false and t.maturityDate < :date " +
+            "and t.tradeId > :after and t.tradeId <= :upTo order by t.tradeId")
+    List<Trade> findExpiryChunk(@Param("date") LocalDate date, @Param("after") UUID after,
+                                @Param("upTo") UUID upTo, Limit limit);
+
+    // The maturity bound lets PostgreSQL prune the update to the partitions that can hold matured trades
+    @Modifying(clearAutomatically = true)
+    @Query("update Trade t set t.expired = true where t.tradeId in :ids and t.maturityDate < :date " +
+            "and t.expired = false")
+    int markExpired(@Param("ids") Collection<UUID> ids, @Param("date") LocalDate date);
+
+    // Next chunk of expired trades that matured before the cutoff, ordered by tradeId after the cursor
+    @Query("select t.tradeId from Trade t where t.expired = true and t.maturityDate < :cutoff " +
+            "and t.tradeId > :after order by t.tradeId")
+    List<UUID> findArchivable(@Param("cutoff") LocalDate cutoff, @Param("after") UUID after, Limit limit);
+
+    // Removes the given trades once their archive copy holds the same version, so a trade expired or amended
+    // after it was copied stays live
+    @Modifying(clearAutomatically = true)
+    @Query("delete from Trade t where t.tradeId in :ids and t.maturityDate < :cutoff and t.expired = true " +
+            "and exists (select 1 from ArchivedTrade a where a.tradeId = t.tradeId and a.version = t.version)")
+    int deleteArchived(@Param("ids") Collection<UUID> ids, @Param("cutoff") LocalDate cutoff);
+
+    // Keyset pagination ordered by tradeId
+    List<Trade> findByOrderByTradeIdAsc(Limit limit);
+    List<Trade> findByTradeIdGreaterThanOrderByTradeIdAsc(UUID after, Limit limit);
+
+    // Read-only projections for the query API, each served by the primary key or one of the query indexes
+    @Query(SELECT_VIEW + "where t.tradeId = :tradeId")
+    Optional<TradeView> findViewById(@Param("tradeId") UUID tradeId);
+
+    @Query(SELECT_VIEW + "where t.bookId = :bookId and t.counterPartyId = :counterPartyId and t.tradeId > :after " +
+            "order by t.tradeId")
+    List<TradeView> findViewsByBookAndCounterParty(@Param("bookId") String bookId,
+                                                   @Param("counterPartyId") String counterPartyId,
+                                                   @Param("after") UUID after, Limit limit);
+
+    // Live trades in the (after, upTo] tradeId range, for rebuilding the in-memory exposures range by range
+    @Query(SELECT_VIEW + "where t.expired = false and t.tradeId > :after and t.tradeId <= :upTo order by t.tradeId")
+    List<TradeView> findLiveViews(@Param("after") UUID after, @Param("upTo") UUID upTo, Limit limit);
+
+    // Live trades maturing in [from, to], keyset paged by (maturityDate, tradeId) after the given pair
+    // afterMaturity is repeated as a plain lower bound so the index scan starts at the cursor, not at from
+    @Query(SELECT_VIEW + "where t.expired = false and t.maturityDate >= :from and t.maturityDate <= :to " +
+            "and t.maturityDate >= :afterMaturity " +
+            "and (t.maturityDate > :afterMaturity or (t.maturityDate = :afterMaturity and t.tradeId > :after)) " +
+            "order by t.maturityDate, t.tradeId")
+    List<TradeView> findLiveViewsByMaturity(@Param("from") LocalDate from, @Param("to") LocalDate to,
+                                            @Param("afterMaturity") LocalDate afterMaturity,
+                                            @Param("after") UUID after, Limit limit);
 }
@@ -0,0 +1,58 @@
+package com.db.repository;
+
+import com.db.model.Trade;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * JDBC backed bulk operations for {@link Trade} that bypass the persistence context.
+ */
+public interface TradeRepositoryCustom {
+
+    /**
+     * Inserts the trade or amends the stored one in a single statement, guarded by {@code version >= stored version},
+     * or by the archived version once the trade has been archived. Returns the stored createdDate when the write
+     * was applied, or empty when a higher version already exists.
+     */
+    Optional<LocalDate> upsert(Trade trade);
+
+    /**
+     * Serialises writers of the given trades until the surrounding transaction ends. On PostgreSQL the trades
+     * table is partitioned by maturity date and cannot keep tradeId unique on its own, so batch writers take
+     * these locks before looking up and writing the trades; elsewhere this does nothing.
+     */
+    void lockTrades(Collection<UUID> tradeIds);
+
+    // Inserts all trades using a single JDBC batch
+    void batchInsert(Collection<Trade> trades);
+
+    /**
+     * Updates all trades using a JDBC batch limited to the partition of each trade's maturity date, then a second
+     * batch over every partition for those that changed maturity date. Rows holding a higher version are left
+     * untouched and report 0.
+     */
+    int[] batchUpdate(Collection<Trade> trades);
+
+    // Reads every trade in tradeId order through a forward-only cursor, fetching fetchSize rows per round-trip
+    void streamAll(int fetchSize, Consumer<Trade> consumer);
+
+    // True when trades is partitioned by maturity date, which only the PostgreSQL migrations set up
+    boolean isPartitioned();
+
+    // Creates the monthly partitions up to the month of through, returns how many were added
+    int createPartitions(LocalDate through);
+
+    /**
+     * Partitions whose maturity range ends on or before {@code before} and that hold no trade, every one having
+     * been archived, plus any left pending by an interrupted detach.
+     */
+    List<String> findDetachablePartitions(LocalDate before);
+
+    // Detaches the partition without blocking queries on trades, it is kept as a standalone table
+    void detachPartition(String partition);
+}
@@ -0,0 +1,209 @@
+package com.db.repository;
+
+import com.db.model.Trade;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+@RequiredArgsConstructor
+public class TradeRepositoryCustomImpl implements TradeRepositoryCustom {
+
+    private static final String INSERT_SQL =
+            "INSERT INTO trades (trade_id, version, counter_party_id, book_id, maturity_date, created_date, expired) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String UPDATE_SQL =
+            "UPDATE trades SET version = ?, counter_party_id = ?, book_id = ?, maturity_date = ?, expired = ? " +
+            "WHERE trade_id = ? AND version <= ?";
+
+    // Same update limited to the partition of the new maturity date, where an amendment keeping it finds the row
+    private static final String ROUTED_UPDATE_SQL = UPDATE_SQL + " AND maturity_date = ?";
+
+    // PostgreSQL: the function from the V6 migration locks the tradeId, then amends or inserts the trade in any
+    // partition, so concurrent writers cannot lose updates or store the trade twice
+    private static final String POSTGRES_UPSERT_SQL = "SELECT upsert_trade(?, ?, ?, ?, ?, ?)";
+
+    // Same lock keys as upsert_trade, taken in key order so two batches cannot deadlock on each other
+    private static final String POSTGRES_LOCK_SQL =
+            "SELECT count(pg_advisory_xact_lock(k)) FROM (SELECT DISTINCT hashtextextended(id::text, 0) AS k " +
+            "FROM unnest(?) AS id ORDER BY k) keys";
+
+    // Standard MERGE wrapped in a delta table for H2 and other databases without ON CONFLICT; like upsert_trade it
+    // does not insert a version below the archived copy of a trade the archive job has removed
+    private static final String MERGE_UPSERT_SQL =
+            "SELECT created_date FROM FINAL TABLE (MERGE INTO trades t " +
+            "USING (VALUES (CAST(? AS UUID), CAST(? AS INTEGER), CAST(? AS VARCHAR), CAST(? AS VARCHAR), " +
+            "CAST(? AS DATE), CAST(? AS DATE))) " +
+            "AS s (trade_id, version, counter_party_id, book_id, maturity_date, created_date) " +
+            "ON t.trade_id = s.trade_id " +
+            "WHEN MATCHED AND t.version <= s.version THEN UPDATE SET version = s.version, " +
+            "counter_party_id = s.counter_party_id, book_id = s.book_id, maturity_date = s.maturity_date, expired = false " +
+            "WHEN NOT MATCHED AND NOT EXISTS (SELECT 1 FROM trades_archive a " +
+            "WHERE a.trade_id = s.trade_id AND a.version > s.version) " +
+            "THEN INSERT (trade_id, version, counter_party_id, book_id, maturity_date, created_date, expired) " +
+            "VALUES (s.trade_id, s.version, s.counter_party_id, s.book_id, s.maturity_date, s.created_date, false))";
+
+    private static final String STREAM_SQL =
+            "SELECT trade_id, version, counter_party_id, book_id, maturity_date, created_date, expired " +
+            "FROM trades ORDER BY trade_id";
+
+    private static final String PARTITIONED_SQL =
+            "SELECT EXISTS (SELECT 1 FROM pg_partitioned_table WHERE partrelid = to_regclass('trades'))";
+
+    private static final String DETACHABLE_SQL =
+            "SELECT partition_name, detach_pending FROM trade_partitions() " +
+            "WHERE detach_pending OR upper_bound <= ? ORDER BY upper_bound";
+
+    private static final RowMapper<Trade> TRADE_ROW_MAPPER = (rs, rowNum) -> Trade.builder()
+            .tradeId(rs.getObject("trade_id", UUID.class))
+            .version(rs.getInt("version"))
+            .counterPartyId(rs.getString("counter_party_id"))
+            .bookId(rs.getString("book_id"))
+            .maturityDate(rs.getObject("maturity_date", LocalDate.class))
+            .createdDate(rs.getObject("created_date", LocalDate.class))
+            .expired(rs.getBoolean("expired"))
+            .build();
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private volatile Boolean postgres;
+
+    @Override
+    public Optional<LocalDate> upsert(Trade trade) {
+        List<LocalDate> createdDates = jdbcTemplate.query(isPostgres() ? POSTGRES_UPSERT_SQL : MERGE_UPSERT_SQL, ps -> {
+            ps.setObject(1, trade.getTradeId());
+            ps.setInt(2, trade.getVersion());
+            ps.setString(3, trade.getCounterPartyId());
+            ps.setString(4, trade.getBookId());
+            ps.setObject(5, trade.getMaturityDate());
+            ps.setObject(6, trade.getCreatedDate());
+        }, (rs, rowNum) -> rs.getObject(1, LocalDate.class));
+        // No row from MERGE or a null from upsert_trade when a higher version is stored
+        return createdDates.stream().filter(Objects::nonNull).findFirst();
+    }
+
+    @Override
+    public void lockTrades(Collection<UUID> tradeIds) {
+        if (tradeIds.isEmpty() || !isPostgres()) return;
+        jdbcTemplate.query(POSTGRES_LOCK_SQL,
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("uuid", tradeIds.toArray())), rs -> null);
+    }
+
+    @Override
+    public void batchInsert(Collection<Trade> trades) {
+        if (trades.isEmpty()) return;
+        jdbcTemplate.batchUpdate(INSERT_SQL, trades, trades.size(), (ps, trade) -> {
+            ps.setObject(1, trade.getTradeId());
+            ps.setInt(2, trade.getVersion());
+            ps.setString(3, trade.getCounterPartyId());
+            ps.setString(4, trade.getBookId());
+            ps.setObject(5, trade.getMaturityDate());
+            ps.setObject(6, trade.getCreatedDate());
+            ps.setBoolean(7, trade.isExpired());
+        });
+    }
+
+    @Override
+    public int[] batchUpdate(Collection<Trade> trades) {
+        if (trades.isEmpty()) return new int[0];
+        List<Trade> batch = List.copyOf(trades);
+        int[] counts = update(batch, true);
+        // Trades whose maturity date changed, or that are stale, are looked for again in every partition
+        List<Integer> missed = new ArrayList<>();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0) missed.add(i);
+        }
+        if (!missed.isEmpty()) {
+            int[] retried = update(missed.stream().map(batch::get).toList(), false);
+            for (int i = 0; i < retried.length; i++) {
+                counts[missed.get(i)] = retried[i];
+            }
+        }
+        return counts;
+    }
+
+    private int[] update(List<Trade> trades, boolean routed) {
+        int[][] counts = jdbcTemplate.batchUpdate(routed ? ROUTED_UPDATE_SQL : UPDATE_SQL, trades, trades.size(), (ps, trade) -> {
+            ps.setInt(1, trade.getVersion());
+            ps.setString(2, trade.getCounterPartyId());
+            ps.setString(3, trade.getBookId());
+            ps.setObject(4, trade.getMaturityDate());
+            ps.setBoolean(5, trade.isExpired());
+            ps.setObject(6, trade.getTradeId());
+            ps.setInt(7, trade.getVersion());
+            if (routed) ps.setObject(8, trade.getMaturityDate());
+        });
+        return counts[0];
+    }
+
+    @Override
+    public void streamAll(int fetchSize, Consumer<Trade> consumer) {
+        // PostgreSQL only honours the fetch size inside a transaction, callers must provide one
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(STREAM_SQL, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            return ps;
+        }, (RowCallbackHandler) rs -> consumer.accept(TRADE_ROW_MAPPER.mapRow(rs, rs.getRow())));
+    }
+
+    @Override
+    public boolean isPartitioned() {
+        return isPostgres() && Boolean.TRUE.equals(jdbcTemplate.queryForObject(PARTITIONED_SQL, Boolean.class));
+    }
+
+    @Override
+    public int createPartitions(LocalDate through) {
+        Integer created = jdbcTemplate.queryForObject("SELECT ensure_trade_partitions(?)", Integer.class, through);
+        return created == null ? 0 : created;
+    }
+
+    @Override
+    public List<String> findDetachablePartitions(LocalDate before) {
+        List<String> partitions = new ArrayList<>();
+        List<String> ended = new ArrayList<>();
+        jdbcTemplate.query(DETACHABLE_SQL, (RowCallbackHandler) rs ->
+                (rs.getBoolean("detach_pending") ? partitions : ended).add(rs.getString("partition_name")), before);
+        for (String partition : ended) {
+            // Any row left, live or expired but not archived yet, would no longer be found once detached
+            Boolean rows = jdbcTemplate.queryForObject(
+                    "SELECT EXISTS (SELECT 1 FROM " + quote(partition) + ")", Boolean.class);
+            if (!Boolean.TRUE.equals(rows)) partitions.add(partition);
+        }
+        return partitions;
+    }
+
+    @Override
+    public void detachPartition(String partition) {
+        boolean pending = Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT detach_pending FROM trade_partitions() WHERE partition_name = ?", Boolean.class, partition));
+        // CONCURRENTLY cannot run in a transaction, callers run outside one
+        jdbcTemplate.execute("ALTER TABLE trades DETACH PARTITION " + quote(partition)
+                + (pending ? " FINALIZE" : " CONCURRENTLY"));
+    }
+
+    private static String quote(String identifier) {
+        return '"' + identifier.replace("\"", "\"\"") + '"';
+    }
+
+    private boolean isPostgres() {
+        if (postgres == null) {
+            String product = jdbcTemplate.execute((ConnectionCallback<String>) con ->
+                    con.getMetaData().getDatabaseProductName());
+            postgres = "PostgreSQL".equalsIgnoreCase(product);
+        }
+        return postgres;
+    }
+}
@@ -0,0 +1,70 @@
+package com.db.service;
+
+import com.db.repository.JobLeaseRepository;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cluster-wide leases backed by the job_leases table, so only one node runs a given scheduled job at a time.
+ * A lease held by a node that died is taken over once it runs out after lock-at-most-for.
+ */
+@Service
+@RequiredArgsConstructor
+public class JobLeaseService {
+
+    private final JobLeaseRepository jobLeaseRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Map<String, Instant> held = new ConcurrentHashMap<>();
+    private static final Logger log = LoggerFactory.getLogger(JobLeaseService.class);
+
+    @Value("${app.scheduler.node-id:#{T(java.lang.management.ManagementFactory).getRuntimeMXBean().getName()}}")
+    private String nodeId;
+    // Upper bound on how long a lease survives a node that stopped without releasing it
+    @Value("${app.scheduler.lock-at-most-for:1h}")
+    private Duration lockAtMostFor;
+    // Keeps a finished job leased for a while so nodes whose clocks fire slightly later skip it
+    @Value("${app.scheduler.lock-at-least-for:5m}")
+    private Duration lockAtLeastFor;
+
+    public boolean tryAcquire(String name) {
+        Instant now = Instant.now();
+        Instant until = now.plus(lockAtMostFor);
+
+        boolean acquired = Boolean.TRUE.equals(transactionTemplate.execute(status ->
+                jobLeaseRepository.acquire(name, nodeId, now, until) > 0));
+        if (!acquired) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> jobLeaseRepository.insert(name, nodeId, now, until));
+                acquired = true;
+            } catch (DataIntegrityViolationException e) {
+                // Another node holds the lease
+            }
+        }
+
+        if (acquired) {
+            held.put(name, now);
+            log.info("Node {} acquired lease {}", nodeId, name);
+        }
+        return acquired;
+    }
+
+    public void release(String name) {
+        Instant acquiredAt = held.remove(name);
+        if (acquiredAt == null) return;
+
+        Instant now = Instant.now();
+        Instant minimum = acquiredAt.plus(lockAtLeastFor);
+        Instant until = minimum.isAfter(now) ? minimum : now;
+        transactionTemplate.executeWithoutResult(status -> jobLeaseRepository.release(name, nodeId, until));
+    }
+}
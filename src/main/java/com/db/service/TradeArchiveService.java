@@ -0,0 +1,95 @@
+package com.db.service;
+
+import com.db.repository.ArchivedTradeRepository;
+import com.db.repository.TradeRepository;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Moves trades that have been expired longer than the retention out of the trades table into trades_archive,
+ * where {@link TradeService#getTrade} still finds them. A trade expires the day after it matures, so the
+ * retention is counted from its maturity date.
+ */
+@Service
+@RequiredArgsConstructor
+public class TradeArchiveService {
+
+    private final TradeRepository tradeRepository;
+    private final ArchivedTradeRepository archivedTradeRepository;
+    private final TradeVersionCache tradeVersionCache;
+    private final TradeMetrics tradeMetrics;
+    private final TransactionTemplate transactionTemplate;
+    private static final Logger log = LoggerFactory.getLogger(TradeArchiveService.class);
+
+    @Value("${app.archive.retention:90d}")
+    private Duration retention = Duration.ofDays(90);
+    @Value("${app.archive.chunk-size:1000}")
+    private int chunkSize = 1000;
+    // Pause between chunks, leaving the database to the ingest path while a large backlog is archived
+    @Value("${app.archive.pause:100ms}")
+    private Duration pause = Duration.ofMillis(100);
+
+    /**
+     * Archives the eligible trades in chunks ordered by tradeId, each copied and deleted in its own short
+     * transaction. A chunk only removes trades whose archived copy holds their current version, so one amended
+     * or revived meanwhile stays live, and an interrupted run resumes on the next invocation. Returns the number
+     * of trades archived.
+     */
+    public int archiveExpiredTrades() {
+        long runStart = System.nanoTime();
+        LocalDate today = LocalDate.now();
+        LocalDate cutoff = today.minusDays(retention.toDays());
+        UUID next = TradeService.MIN_TRADE_ID;
+        int total = 0;
+
+        while (true) {
+            long start = System.nanoTime();
+            List<UUID> ids = tradeRepository.findArchivable(cutoff, next, Limit.of(chunkSize));
+            if (ids.isEmpty()) break;
+
+            Integer archived = transactionTemplate.execute(status -> archiveChunk(ids, cutoff, today));
+            // The batch writers would otherwise take a cached version for a stored row and report the update stale
+            tradeVersionCache.invalidateAll(ids);
+            total += archived == null ? 0 : archived;
+            next = ids.get(ids.size() - 1);
+            log.info("Archived chunk of {} trades in {} ms", archived, (System.nanoTime() - start) / 1_000_000);
+
+            if (ids.size() < chunkSize || !throttle()) break;
+        }
+
+        tradeMetrics.recordArchive(System.nanoTime() - runStart, total);
+        log.info("Archived {} trades matured before {}", total, cutoff);
+        return total;
+    }
+
+    private int archiveChunk(List<UUID> ids, LocalDate cutoff, LocalDate today) {
+        // Same locks as the writers take, so none of these trades is amended between the copy and the delete
+        tradeRepository.lockTrades(ids);
+        // A trade archived before and written again since only keeps its latest copy
+        archivedTradeRepository.deleteAllByIdInBatch(ids);
+        archivedTradeRepository.archive(ids, cutoff, today);
+        return tradeRepository.deleteArchived(ids, cutoff);
+    }
+
+    // False when the thread was interrupted, the remaining trades are left to the next run
+    private boolean throttle() {
+        if (pause.isZero()) return true;
+        try {
+            Thread.sleep(pause);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.db.service;
+
+import com.db.dto.TradeDto;
+import com.db.dto.TradeResult;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Streams a JSON array or NDJSON payload of trades into the store in fixed-size chunks.
+ * Only one chunk is held in memory at a time and results are written out as each chunk completes.
+ */
+@Service
+@RequiredArgsConstructor
+public class TradeBatchService {
+
+    private final TradeService tradeService;
+    private final ObjectMapper objectMapper;
+    private final ObjectReader tradeDtoReader;
+    private static final Logger log = LoggerFactory.getLogger(TradeBatchService.class);
+
+    @Value("${app.batch.chunk-size:500}")
+    private int chunkSize;
+
+    /**
+     * Reads trades from {@code in} and writes one {@link TradeResult} per item to {@code out}, in input order.
+     * Results are written as a JSON array, or one per line when {@code ndjson} is set.
+     */
+    public void ingest(InputStream in, OutputStream out, boolean ndjson) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(in);
+             JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            if (ndjson) {
+                generator.setRootValueSeparator(null);
+            } else {
+                generator.writeStartArray();
+            }
+
+            // Items of the current chunk, a pre-filled slot marks an item already rejected while parsing
+            List<TradeDto> chunk = new ArrayList<>(chunkSize);
+            List<TradeResult> slots = new ArrayList<>(chunkSize);
+            int total = 0;
+            try {
+                JsonToken token = parser.nextToken();
+                if (token == JsonToken.START_ARRAY) token = parser.nextToken();
+
+                while (token != null && token != JsonToken.END_ARRAY) {
+                    JsonNode node = parser.readValueAsTree();
+                    slots.add(read(node, chunk));
+                    if (slots.size() >= chunkSize) {
+                        total += flush(chunk, slots, generator, ndjson);
+                    }
+                    token = parser.nextToken();
+                }
+            } catch (JsonProcessingException e) {
+                // Syntax errors cannot be recovered from in a stream, report them and stop reading
+                slots.add(TradeResult.rejected(null, 0, "Malformed JSON at line "
+                        + e.getLocation().getLineNr() + ": " + e.getOriginalMessage()));
+            }
+            total += flush(chunk, slots, generator, ndjson);
+
+            if (!ndjson) {
+                generator.writeEndArray();
+            }
+            log.info("Ingested batch of {} trades", total);
+        }
+    }
+
+    private TradeResult read(JsonNode node, List<TradeDto> chunk) {
+        if (!node.isObject()) {
+            return TradeResult.rejected(null, 0, "Malformed trade: expected a JSON object");
+        }
+        try {
+            chunk.add(tradeDtoReader.treeToValue(node, TradeDto.class));
+            return null;
+        } catch (JsonProcessingException e) {
+            // Well formed JSON that does not map onto a trade, reject it without stopping the stream
+            return TradeResult.rejected(null, 0, "Malformed trade: " + e.getOriginalMessage());
+        }
+    }
+
+    private int flush(List<TradeDto> chunk, List<TradeResult> slots, JsonGenerator generator, boolean ndjson)
+            throws IOException {
+        Iterator<TradeResult> persisted = persist(chunk).iterator();
+        for (TradeResult slot : slots) {
+            generator.writeObject(slot != null ? slot : persisted.next());
+            if (ndjson) {
+                generator.writeRaw('\n');
+            }
+        }
+        generator.flush();
+
+        int count = slots.size();
+        chunk.clear();
+        slots.clear();
+        return count;
+    }
+
+    private List<TradeResult> persist(List<TradeDto> chunk) {
+        if (chunk.isEmpty()) return List.of();
+        try {
+            return tradeService.saveTrades(chunk);
+        } catch (Exception e) {
+            log.error("Failed to persist chunk of {} trades", chunk.size(), e);
+            List<TradeResult> results = new ArrayList<>(chunk.size());
+            for (TradeDto dto : chunk) {
+                results.add(TradeResult.rejected(dto.getTradeId(), dto.getVersion(),
+                        "Failed to persist trade: " + e.getMessage()));
+            }
+            return results;
+        }
+    }
+}
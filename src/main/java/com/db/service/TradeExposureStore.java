@@ -0,0 +1,224 @@
+package com.db.service;
+
+import com.db.dto.TradeExposure;
+import com.db.dto.TradeView;
+import com.db.model.Trade;
+import com.db.repository.TradeRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live trade counts per book and counterparty, kept in memory so {@link #getExposure} never touches the
+ * database. {@link com.db.stream.TradeExposureListener} feeds it every trade event of the cluster, writes and
+ * expiries from every node, so the counts cover all trades once the events have been relayed. The bookId,
+ * counterPartyId, version and maturity date of every live trade are kept alongside, so an amendment moving a
+ * trade to another book or maturity takes it off its old counts. Each trade is updated atomically on its own
+ * entry and the counts are adders; a version never goes down, so redelivered events are ignored.
+ *
+ * <p>The counts are rebuilt from the database once the listener knows where it starts reading, reading
+ * app.exposure.rebuild-ranges tradeId ranges in parallel. Events received meanwhile take precedence over what
+ * the rebuild read, and until it completes {@link #isReady()} is false.
+ */
+@Component
+public class TradeExposureStore implements MeterBinder {
+
+    public record Key(String bookId, String counterPartyId) {
+    }
+
+    // A trade counted under key and maturityDate, or with a null key one expired while the rebuild was running
+    private record Position(int version, Key key, LocalDate maturityDate) {
+        boolean expired() {
+            return key == null;
+        }
+    }
+
+    private static class Exposure {
+        final LongAdder active = new LongAdder();
+        final ConcurrentHashMap<LocalDate, LongAdder> byMaturity = new ConcurrentHashMap<>();
+    }
+
+    private final TradeRepository tradeRepository;
+    private final Duration maturingWithin;
+    private final int rebuildRanges;
+    private final int pageSize;
+    private final ConcurrentHashMap<UUID, Position> positions = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Key, Exposure> exposures = new ConcurrentHashMap<>();
+    private volatile boolean ready;
+    private static final Logger log = LoggerFactory.getLogger(TradeExposureStore.class);
+
+    public TradeExposureStore(TradeRepository tradeRepository,
+                              @Value("${app.exposure.maturing-within:30d}") Duration maturingWithin,
+                              @Value("${app.exposure.rebuild-ranges:4}") int rebuildRanges,
+                              @Value("${app.exposure.rebuild-page-size:1000}") int pageSize) {
+        this.tradeRepository = tradeRepository;
+        this.maturingWithin = maturingWithin;
+        this.rebuildRanges = Math.max(1, rebuildRanges);
+        this.pageSize = pageSize;
+    }
+
+    // False until the startup rebuild has completed, counts read before then may be missing trades
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Counts of the live trades of one book and counterparty. Costs one lookup per day of app.exposure
+     * .maturing-within, however many trades are stored.
+     */
+    public TradeExposure getExposure(String bookId, String counterPartyId) {
+        LocalDate today = LocalDate.now();
+        LocalDate maturingBy = today.plusDays(maturingWithin.toDays());
+        Exposure exposure = exposures.get(new Key(bookId, counterPartyId));
+        if (exposure == null) return new TradeExposure(bookId, counterPartyId, 0, 0, maturingBy);
+
+        long maturing = 0;
+        for (LocalDate date = today; !date.isAfter(maturingBy); date = date.plusDays(1)) {
+            LongAdder count = exposure.byMaturity.get(date);
+            if (count != null) maturing += count.sum();
+        }
+        return new TradeExposure(bookId, counterPartyId, exposure.active.sum(), maturing, maturingBy);
+    }
+
+    // Call with a committed trade; an older version than the one counted is ignored
+    public void apply(Trade trade) {
+        Position next = new Position(trade.getVersion(), new Key(trade.getBookId(), trade.getCounterPartyId()),
+                trade.getMaturityDate());
+        positions.compute(trade.getTradeId(), (tradeId, current) -> {
+            if (current != null && current.version() > next.version()) return current;
+            // Counted under the new key before leaving the old one, so a total never dips meanwhile
+            count(next, 1);
+            if (current != null && !current.expired()) count(current, -1);
+            return next;
+        });
+    }
+
+    public void applyAll(Collection<Trade> trades) {
+        trades.forEach(this::apply);
+    }
+
+    /**
+     * Call once the expiry of the trade is committed. Ignored when the trade has been amended since it was read
+     * for expiry, since amendments always mature in the future.
+     */
+    public void expire(Trade trade) {
+        positions.compute(trade.getTradeId(), (tradeId, current) -> {
+            if (current == null) {
+                // Kept while the rebuild runs, so it does not count the trade from a read taken before expiry
+                return ready ? null : new Position(trade.getVersion(), null, trade.getMaturityDate());
+            }
+            if (current.expired() || current.version() > trade.getVersion()
+                    || !current.maturityDate().equals(trade.getMaturityDate())) {
+                return current;
+            }
+            count(current, -1);
+            return ready ? null : new Position(current.version(), null, current.maturityDate());
+        });
+    }
+
+    public void expireAll(Collection<Trade> trades) {
+        trades.forEach(this::expire);
+    }
+
+    /**
+     * Loads every live trade from the database, splitting the tradeId space into ranges read in parallel.
+     * Trades already counted from an event are left as they are, since that event is at least as recent.
+     */
+    public void rebuild() {
+        long start = System.nanoTime();
+        List<Future<Integer>> loads = new ArrayList<>(rebuildRanges);
+        try (ExecutorService executor = Executors.newFixedThreadPool(rebuildRanges, rebuildThreads())) {
+            for (int range = 0; range < rebuildRanges; range++) {
+                UUID after = lowerBound(range);
+                UUID upTo = upperBound(range);
+                loads.add(executor.submit(() -> load(after, upTo)));
+            }
+            int total = 0;
+            for (Future<Integer> load : loads) {
+                total += load.get();
+            }
+            ready = true;
+            positions.values().removeIf(Position::expired);
+            log.info("Rebuilt exposures of {} live trades in {} ms", total, (System.nanoTime() - start) / 1_000_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            loads.forEach(load -> load.cancel(true));
+            log.error("Failed to rebuild trade exposures, GET /api/trades/exposure stays unavailable", e.getCause());
+        }
+    }
+
+    private int load(UUID after, UUID upTo) {
+        int loaded = 0;
+        UUID cursor = after;
+        while (true) {
+            List<TradeView> page = tradeRepository.findLiveViews(cursor, upTo, Limit.of(pageSize));
+            for (TradeView view : page) {
+                Position position = new Position(view.version(), new Key(view.bookId(), view.counterPartyId()),
+                        view.maturityDate());
+                positions.computeIfAbsent(view.tradeId(), tradeId -> {
+                    count(position, 1);
+                    return position;
+                });
+            }
+            loaded += page.size();
+            if (page.size() < pageSize) return loaded;
+            cursor = page.get(page.size() - 1).tradeId();
+        }
+    }
+
+    private void count(Position position, int delta) {
+        Exposure exposure = exposures.computeIfAbsent(position.key(), key -> new Exposure());
+        exposure.active.add(delta);
+        if (position.maturityDate() != null) {
+            exposure.byMaturity.computeIfAbsent(position.maturityDate(), date -> new LongAdder()).add(delta);
+        }
+    }
+
+    // Ranges split the most significant 64 bits evenly and are lower-exclusive, upper-inclusive
+    private UUID lowerBound(int range) {
+        return range == 0 ? TradeService.MIN_TRADE_ID : upperBound(range - 1);
+    }
+
+    private UUID upperBound(int range) {
+        if (range == rebuildRanges - 1) return TradeService.MAX_TRADE_ID;
+        long step = Long.divideUnsigned(-1L, rebuildRanges);
+        return new UUID(step * (range + 1), 0L);
+    }
+
+    private static ThreadFactory rebuildThreads() {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, "exposure-rebuild-" + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("trade.exposure.trades", positions, ConcurrentHashMap::size)
+                .description("Live trades counted in the in-memory exposures")
+                .register(registry);
+    }
+}
@@ -0,0 +1,29 @@
+package com.db.service;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * One bulk insert of history records into MongoDB by {@link TradeHistoryWriter}, on its drain thread or on a
+ * caller's thread once the queue is saturated.
+ */
+@Name("com.db.TradeHistoryFlush")
+@Label("Trade History Flush")
+@Category({"Trade Store", "History"})
+@Description("A bulk insert of trade history records into MongoDB")
+@StackTrace(false)
+@Threshold("20 ms")
+class TradeHistoryFlushEvent extends Event {
+
+    @Label("Records")
+    int records;
+
+    @Label("Spilled")
+    @Description("The insert failed and the records went to the journal")
+    boolean spilled;
+}
@@ -0,0 +1,189 @@
+package com.db.service;
+
+import com.db.model.TradeHistory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Local spill file for trade history that could not be written to MongoDB. Records are appended to
+ * memory-mapped segment files as a length prefix followed by the JSON document, so an append is a copy into
+ * the page cache and survives the process dying. Nothing is fsynced unless sync is enabled. A segment that
+ * fills up is sealed and a new one started; replay seals the active segment, hands every sealed segment to
+ * the caller in batches and deletes each one once all of its records were accepted.
+ */
+@Component
+public class TradeHistoryJournal implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(TradeHistoryJournal.class);
+    private static final String PREFIX = "history-";
+    private static final String SUFFIX = ".journal";
+    private static final int LENGTH_BYTES = Integer.BYTES;
+
+    private final ObjectReader reader;
+    private final ObjectWriter writer;
+    private final Path directory;
+    private final int segmentSize;
+    private final boolean sync;
+
+    private long nextSegment;
+    private Path activePath;
+    private FileChannel activeChannel;
+    private MappedByteBuffer active;
+    private volatile long pending;
+
+    public TradeHistoryJournal(ObjectMapper objectMapper,
+                               @Value("${app.history.journal.dir:./data/history-journal}") Path directory,
+                               @Value("${app.history.journal.segment-size:64MB}") DataSize segmentSize,
+                               @Value("${app.history.journal.sync:false}") boolean sync) throws IOException {
+        this.reader = objectMapper.readerFor(TradeHistory.class);
+        this.writer = objectMapper.writerFor(TradeHistory.class);
+        this.directory = directory;
+        this.segmentSize = Math.toIntExact(segmentSize.toBytes());
+        this.sync = sync;
+
+        Files.createDirectories(directory);
+        // Segments left by a previous run are replayed like any other sealed segment
+        for (Path segment : segments()) {
+            nextSegment = Math.max(nextSegment, sequenceOf(segment) + 1);
+            pending += read(segment, Integer.MAX_VALUE, batch -> { });
+        }
+        if (pending > 0) {
+            log.warn("Found {} journaled trade history records from a previous run", pending);
+        }
+    }
+
+    public synchronized void append(List<TradeHistory> histories) throws IOException {
+        for (TradeHistory history : histories) {
+            byte[] bytes = writer.writeValueAsBytes(history);
+            if (LENGTH_BYTES + bytes.length > segmentSize) {
+                throw new IOException("Trade history record of " + bytes.length + " bytes exceeds the segment size");
+            }
+            if (active == null || active.remaining() < LENGTH_BYTES + bytes.length) {
+                roll();
+            }
+            // Body before length, a reader stops at the first zero length so it never sees a partial record
+            int start = active.position();
+            active.position(start + LENGTH_BYTES);
+            active.put(bytes);
+            active.putInt(start, bytes.length);
+            pending++;
+        }
+        if (sync) active.force();
+    }
+
+    /**
+     * Passes every journaled record to the sink in batches of at most batchSize and deletes each segment
+     * once it was fully replayed. Stops at the first batch the sink throws on, leaving that segment and the
+     * later ones in place; the sink must therefore tolerate seeing records again.
+     */
+    public int replay(int batchSize, Consumer<List<TradeHistory>> sink) throws IOException {
+        List<Path> sealed;
+        synchronized (this) {
+            seal();
+            sealed = segments();
+        }
+        int replayed = 0;
+        for (Path segment : sealed) {
+            int count = read(segment, batchSize, sink);
+            Files.delete(segment);
+            synchronized (this) {
+                pending -= count;
+            }
+            replayed += count;
+        }
+        return replayed;
+    }
+
+    public long getPending() {
+        return pending;
+    }
+
+    private int read(Path segment, int batchSize, Consumer<List<TradeHistory>> sink) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        int count = 0;
+        List<TradeHistory> batch = new ArrayList<>(Math.min(batchSize, 1024));
+        while (buffer.remaining() >= LENGTH_BYTES) {
+            int length = buffer.getInt();
+            // Zero marks the unwritten tail of the segment
+            if (length <= 0 || length > buffer.remaining()) break;
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            batch.add(reader.readValue(bytes));
+            count++;
+            if (batch.size() == batchSize) {
+                sink.accept(batch);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (!batch.isEmpty()) sink.accept(batch);
+        return count;
+    }
+
+    private void roll() throws IOException {
+        seal();
+        activePath = directory.resolve(String.format("%s%020d%s", PREFIX, nextSegment++, SUFFIX));
+        activeChannel = FileChannel.open(activePath,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        active = activeChannel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+    }
+
+    private void seal() throws IOException {
+        if (active == null) return;
+        active.force();
+        activeChannel.close();
+        active = null;
+        activeChannel = null;
+        activePath = null;
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> {
+                        String name = file.getFileName().toString();
+                        return name.startsWith(PREFIX) && name.endsWith(SUFFIX) && !file.equals(activePath);
+                    })
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private static long sequenceOf(Path segment) {
+        String name = segment.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    @Override
+    public synchronized void destroy() {
+        try {
+            seal();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
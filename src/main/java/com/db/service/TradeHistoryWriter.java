@@ -0,0 +1,257 @@
+package com.db.service;
+
+import com.db.model.TradeHistory;
+import com.db.repository.TradeHistoryRepository;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes trade history to MongoDB off the ingest path. Records go through a bounded queue that a single
+ * thread drains into unordered bulk inserts, flushing once batch-size records are queued or flush-interval
+ * has passed since the first one. When the queue is full the caller waits up to enqueue-timeout and then
+ * writes its record itself, which slows producers down instead of dropping history. Batches Mongo rejects,
+ * including every batch while the mongodb circuit is open, are spilled to the {@link TradeHistoryJournal} and
+ * upserted back by id once the circuit is closed again.
+ */
+@Service
+public class TradeHistoryWriter implements SmartLifecycle, MeterBinder {
+
+    private final MongoTemplate mongoTemplate;
+    private final TradeHistoryRepository tradeHistoryRepository;
+    private final TradeHistoryJournal journal;
+    private final CircuitBreaker circuitBreaker;
+    private final BlockingQueue<TradeHistory> queue;
+    private final int batchSize;
+    private final Duration flushInterval;
+    private final Duration enqueueTimeout;
+    private final Duration replayInterval;
+    private final boolean virtualThreads;
+    private static final Logger log = LoggerFactory.getLogger(TradeHistoryWriter.class);
+    private static final long IDLE_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong overflowed = new AtomicLong();
+    private final AtomicLong journaled = new AtomicLong();
+    private final AtomicLong replayed = new AtomicLong();
+    private volatile long nextReplayAt;
+    private volatile Timer flushTimer;
+
+    private volatile boolean running;
+    private Thread drainer;
+
+    public TradeHistoryWriter(MongoTemplate mongoTemplate,
+                              TradeHistoryRepository tradeHistoryRepository,
+                              TradeHistoryJournal journal,
+                              CircuitBreakerRegistry circuitBreakerRegistry,
+                              @Value("${app.history.queue-capacity:10000}") int queueCapacity,
+                              @Value("${app.history.batch-size:500}") int batchSize,
+                              @Value("${app.history.flush-interval:200ms}") Duration flushInterval,
+                              @Value("${app.history.enqueue-timeout:100ms}") Duration enqueueTimeout,
+                              @Value("${app.history.journal.replay-interval:30s}") Duration replayInterval,
+                              @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this.mongoTemplate = mongoTemplate;
+        this.tradeHistoryRepository = tradeHistoryRepository;
+        this.journal = journal;
+        this.circuitBreaker = circuitBreakerRegistry.circuitBreaker("mongodb");
+        // Replay as soon as Mongo is back rather than waiting out the retry interval
+        this.circuitBreaker.getEventPublisher().onStateTransition(event -> {
+            if (event.getStateTransition().getToState() == CircuitBreaker.State.CLOSED) {
+                nextReplayAt = System.nanoTime();
+            }
+        });
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        this.enqueueTimeout = enqueueTimeout;
+        this.replayInterval = replayInterval;
+        this.virtualThreads = virtualThreads;
+        this.nextReplayAt = System.nanoTime();
+    }
+
+    public void write(TradeHistory history) {
+        try {
+            if (running && queue.offer(history, enqueueTimeout.toNanos(), TimeUnit.NANOSECONDS)) return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Queue is saturated or the writer is stopped, write on the caller's thread so ingestion slows down
+        // to what Mongo can take
+        overflowed.incrementAndGet();
+        flush(List.of(history));
+    }
+
+    public void writeAll(List<TradeHistory> histories) {
+        for (TradeHistory history : histories) {
+            write(history);
+        }
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    private void drain() {
+        while (running || !queue.isEmpty()) {
+            replayJournal();
+            List<TradeHistory> batch = new ArrayList<>(batchSize);
+            try {
+                TradeHistory first = queue.poll(IDLE_POLL_NANOS, TimeUnit.NANOSECONDS);
+                if (first == null) continue;
+                batch.add(first);
+
+                // Keep filling until the batch is full, the flush interval is up or the writer is stopping
+                long deadline = System.nanoTime() + flushInterval.toNanos();
+                while (batch.size() < batchSize) {
+                    if (queue.drainTo(batch, batchSize - batch.size()) > 0) continue;
+                    if (!running) break;
+                    long wait = Math.min(deadline - System.nanoTime(), IDLE_POLL_NANOS);
+                    if (wait <= 0) break;
+                    TradeHistory next = queue.poll(wait, TimeUnit.NANOSECONDS);
+                    if (next != null) batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                // stop() gave up waiting, write what was already taken and leave
+                Thread.currentThread().interrupt();
+            }
+
+            if (!batch.isEmpty()) {
+                flush(batch);
+            }
+            if (Thread.currentThread().isInterrupted()) break;
+        }
+    }
+
+    private void flush(List<TradeHistory> batch) {
+        long start = System.nanoTime();
+        TradeHistoryFlushEvent event = new TradeHistoryFlushEvent();
+        event.begin();
+        try {
+            circuitBreaker.executeRunnable(() -> mongoTemplate
+                    .bulkOps(BulkOperations.BulkMode.UNORDERED, TradeHistory.class)
+                    .insert(batch)
+                    .execute());
+            written.addAndGet(batch.size());
+        } catch (Exception e) {
+            failed.addAndGet(batch.size());
+            event.spilled = true;
+            log.warn("Failed to save {} trade history records, spilling to journal: {}", batch.size(), e.toString());
+            spill(batch);
+        } finally {
+            Timer timer = flushTimer;
+            if (timer != null) timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            event.records = batch.size();
+            event.commit();
+        }
+    }
+
+    private void spill(List<TradeHistory> batch) {
+        try {
+            journal.append(batch);
+            journaled.addAndGet(batch.size());
+            nextReplayAt = System.nanoTime() + replayInterval.toNanos();
+        } catch (Exception e) {
+            log.error("Failed to journal {} trade history records", batch.size(), e);
+        }
+    }
+
+    // Runs on the drainer thread only, so replayed and live batches never race for the same segment
+    private void replayJournal() {
+        if (journal.getPending() == 0
+                || circuitBreaker.getState() != CircuitBreaker.State.CLOSED
+                || System.nanoTime() - nextReplayAt < 0) {
+            return;
+        }
+        try {
+            int count = journal.replay(batchSize, batch ->
+                    circuitBreaker.executeRunnable(() -> tradeHistoryRepository.upsertAll(batch)));
+            replayed.addAndGet(count);
+            log.info("Replayed {} journaled trade history records", count);
+        } catch (Exception e) {
+            nextReplayAt = System.nanoTime() + replayInterval.toNanos();
+            log.warn("Trade history journal replay failed, {} records still pending: {}",
+                    journal.getPending(), e.toString());
+        }
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        if (virtualThreads) {
+            drainer = new VirtualThreadTaskExecutor("trade-history-writer").getVirtualThreadFactory().newThread(this::drain);
+        } else {
+            drainer = new Thread(this::drain, "trade-history-writer");
+            drainer.setDaemon(true);
+        }
+        drainer.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        try {
+            // Let the drainer empty the queue before the Mongo client goes away
+            drainer.join(Duration.ofSeconds(30).toMillis());
+            if (drainer.isAlive()) {
+                log.warn("Trade history writer did not drain in time, {} records not written", queue.size());
+                drainer.interrupt();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    // Started before and stopped after the web server and Kafka listeners that feed the queue
+    @Override
+    public int getPhase() {
+        return Integer.MAX_VALUE - 4096;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("trade.history.queue.depth", queue, BlockingQueue::size)
+                .description("Trade history records waiting to be written")
+                .register(registry);
+        FunctionCounter.builder("trade.history.written", written, AtomicLong::get).register(registry);
+        FunctionCounter.builder("trade.history.failed", failed, AtomicLong::get).register(registry);
+        FunctionCounter.builder("trade.history.overflowed", overflowed, AtomicLong::get)
+                .description("Records written on the caller's thread because the queue was full")
+                .register(registry);
+        FunctionCounter.builder("trade.history.journaled", journaled, AtomicLong::get)
+                .description("Records spilled to the local journal because Mongo rejected them")
+                .register(registry);
+        FunctionCounter.builder("trade.history.replayed", replayed, AtomicLong::get).register(registry);
+        Gauge.builder("trade.history.journal.pending", journal, TradeHistoryJournal::getPending)
+                .description("Journaled trade history records not yet replayed")
+                .register(registry);
+        flushTimer = Timer.builder("trade.history.flush")
+                .description("Latency of trade history bulk inserts")
+                .register(registry);
+    }
+}
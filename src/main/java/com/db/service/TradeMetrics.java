@@ -0,0 +1,108 @@
+package com.db.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timers and counters along the trade lifecycle, from the REST or Kafka entry point through the database
+ * write and history record to the nightly expiry and archival. Rejected trades are counted by reason, so a burst of
+ * stale versions can be told apart from bad maturity dates or undecodable messages.
+ */
+@Component
+public class TradeMetrics {
+
+    public static final String STALE_VERSION = "stale_version";
+    public static final String MISSING_MATURITY_DATE = "missing_maturity_date";
+    public static final String PAST_MATURITY_DATE = "past_maturity_date";
+    public static final String UNDECODABLE = "undecodable";
+
+    private final MeterRegistry registry;
+    private final Timer save;
+    private final Timer saveBatch;
+    private final Timer history;
+    private final Timer historyBatch;
+    private final Timer publish;
+    private final Timer consume;
+    private final Timer consumeBatch;
+    private final Timer expiry;
+    private final Counter expired;
+    private final Timer archive;
+    private final Counter archived;
+    private final Map<String, Counter> rejections = new ConcurrentHashMap<>();
+
+    public TradeMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.save = timer("trade.save", "Trade writes from entry to commit or rollback", "mode", "single");
+        this.saveBatch = timer("trade.save", "Trade writes from entry to commit or rollback", "mode", "batch");
+        this.history = timer("trade.history.save", "Building history records for the writer", "mode", "single");
+        this.historyBatch = timer("trade.history.save", "Building history records for the writer", "mode", "batch");
+        this.publish = timer("trade.publish", "Handing a trade to the Kafka producer, per attempt");
+        this.consume = timer("trade.consume", "Processing of one trade message or one poll", "mode", "record");
+        this.consumeBatch = timer("trade.consume", "Processing of one trade message or one poll", "mode", "batch");
+        this.expiry = timer("trade.expiry", "One run of the expiry job over a tradeId range");
+        this.expired = Counter.builder("trade.expired").description("Trades flagged as expired").register(registry);
+        this.archive = timer("trade.archive", "One run of the archive job");
+        this.archived = Counter.builder("trade.archived").description("Trades moved to the archive").register(registry);
+    }
+
+    private Timer timer(String name, String description, String... tags) {
+        return Timer.builder(name).tags(tags).description(description).register(registry);
+    }
+
+    public void recordSave(long nanos) {
+        save.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordSaveBatch(long nanos) {
+        saveBatch.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordHistory(long nanos) {
+        history.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordHistoryBatch(long nanos) {
+        historyBatch.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordPublish(long nanos) {
+        publish.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordConsume(long nanos) {
+        consume.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordConsumeBatch(long nanos) {
+        consumeBatch.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordExpiry(long nanos, int count) {
+        expiry.record(nanos, TimeUnit.NANOSECONDS);
+        expired.increment(count);
+    }
+
+    public void recordArchive(long nanos, int count) {
+        archive.record(nanos, TimeUnit.NANOSECONDS);
+        archived.increment(count);
+    }
+
+    public void rejected(String reason) {
+        rejections.computeIfAbsent(reason, r -> Counter.builder("trade.rejected")
+                        .tag("reason", r)
+                        .description("Trades rejected without being written")
+                        .register(registry))
+                .increment();
+    }
+
+    public double getRejected(String reason) {
+        Counter counter = rejections.get(reason);
+        return counter == null ? 0 : counter.count();
+    }
+}
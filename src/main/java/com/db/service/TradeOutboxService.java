@@ -0,0 +1,71 @@
+package com.db.service;
+
+import com.db.dto.TradeDto;
+import com.db.dto.TradeEvent;
+import com.db.model.Trade;
+import com.db.model.TradeOutbox;
+import com.db.repository.TradeOutboxRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Writes Kafka messages to the outbox table in the caller's transaction. They are only published by the
+ * relay once that transaction commits, so a message exists if and only if the change it describes does.
+ */
+@Service
+@RequiredArgsConstructor
+public class TradeOutboxService {
+
+    private final TradeOutboxRepository tradeOutboxRepository;
+    private final ObjectWriter tradeDtoWriter;
+    private final ObjectWriter tradeEventWriter;
+
+    @Value("${app.outbox.topic:trade-events}")
+    private String eventTopic;
+    @Value("${app.kafka.topic:trades}")
+    private String tradeTopic;
+
+    // Records a trade event for every trade written or expired, of type EXPIRED for the expired ones
+    public void recordTradeEvents(Collection<Trade> trades) {
+        if (trades.isEmpty()) return;
+        Instant now = Instant.now();
+        List<TradeOutbox> messages = new ArrayList<>(trades.size());
+        for (Trade trade : trades) {
+            messages.add(message(eventTopic, trade.getTradeId(), tradeEventWriter, toEvent(trade), now));
+        }
+        tradeOutboxRepository.append(messages);
+    }
+
+    // Parks a trade that could not be published to the ingest topic so the relay delivers it later
+    public void recordForPublish(TradeDto dto) {
+        tradeOutboxRepository.append(List.of(message(tradeTopic, dto.getTradeId(), tradeDtoWriter, dto, Instant.now())));
+    }
+
+    private TradeOutbox message(String topic, UUID tradeId, ObjectWriter writer, Object payload, Instant now) {
+        try {
+            return TradeOutbox.builder()
+                    .topic(topic)
+                    .messageKey(tradeId == null ? null : tradeId.toString())
+                    .payload(writer.writeValueAsString(payload))
+                    .createdAt(now)
+                    .build();
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize trade " + tradeId, e);
+        }
+    }
+
+    private TradeEvent toEvent(Trade trade) {
+        return new TradeEvent(trade.isExpired() ? TradeEvent.Type.EXPIRED : TradeEvent.Type.SAVED,
+                trade.getTradeId(), trade.getVersion(), trade.getCounterPartyId(), trade.getBookId(),
+                trade.getMaturityDate());
+    }
+}
@@ -0,0 +1,56 @@
+package com.db.service;
+
+import com.db.repository.TradeRepository;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the maturity-date partitions of the trades table ahead of incoming trades and detaches the old ones
+ * once {@link TradeArchiveService} has moved every trade out of them. Only PostgreSQL partitions the table;
+ * elsewhere this does nothing.
+ */
+@Service
+@RequiredArgsConstructor
+public class TradePartitionService {
+
+    private final TradeRepository tradeRepository;
+    private static final Logger log = LoggerFactory.getLogger(TradePartitionService.class);
+
+    // Monthly partitions kept created ahead of today, later maturities wait in trades_future
+    @Value("${app.partitions.months-ahead:24}")
+    private int monthsAhead = 24;
+    // Months a partition stays attached after its range has ended, so recently expired trades remain queryable
+    @Value("${app.partitions.detach-after-months:3}")
+    private int detachAfterMonths = 3;
+
+    /**
+     * Creates the partitions for the coming months and detaches those that ended detach-after-months ago and
+     * are empty. A partition still holding a trade, expired or not, stays attached until the archive job has
+     * moved it, since neither lookup would find the trade in a detached table. Returns the detached partitions.
+     */
+    public List<String> maintainPartitions() {
+        if (!tradeRepository.isPartitioned()) return List.of();
+
+        LocalDate today = LocalDate.now();
+        int created = tradeRepository.createPartitions(today.plusMonths(monthsAhead));
+        if (created > 0) {
+            log.info("Created {} trade partitions through {}", created, today.plusMonths(monthsAhead).withDayOfMonth(1));
+        }
+
+        List<String> detached = new ArrayList<>();
+        LocalDate before = today.withDayOfMonth(1).minusMonths(detachAfterMonths);
+        for (String partition : tradeRepository.findDetachablePartitions(before)) {
+            tradeRepository.detachPartition(partition);
+            detached.add(partition);
+            log.info("Detached expired trade partition {}", partition);
+        }
+        return detached;
+    }
+}
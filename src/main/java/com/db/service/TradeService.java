@@ -1,80 +1,305 @@
 package com.db.service;
 
 import com.db.dto.TradeDto;
+import com.db.dto.TradeResult;
+import com.db.dto.TradeView;
 import com.db.exception.InvalidTradeException;
 import com.db.model.Trade;
 import com.db.model.TradeHistory;
-import com.db.repository.TradeHistoryRepository;
+import com.db.repository.ArchivedTradeRepository;
 import com.db.repository.TradeRepository;
 import com.db.stream.TradeProducer;
+import io.github.resilience4j.bulkhead.annotation.Bulkhead;
 import io.github.resilience4j.retry.annotation.Retry;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import io.github.resilience4j.circuitbreaker.annotation.CircuitBreaker;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDate;
-import java.util.List;
-import java.util.Optional;
-import java.util.UUID;
+import java.util.*;
+import java.util.function.Consumer;
 
 @Service
 @RequiredArgsConstructor
 public class TradeService {
 
     private final TradeRepository tradeRepository;
-    private final TradeHistoryRepository tradeHistoryRepository;
+    private final ArchivedTradeRepository archivedTradeRepository;
+    private final TradeHistoryWriter tradeHistoryWriter;
+    private final TradeOutboxService tradeOutboxService;
+    private final TradeVersionCache tradeVersionCache;
+    private final TradeMetrics tradeMetrics;
+    private final TradeTracer tradeTracer;
     private final TradeProducer tradeProducer;
+    private final TransactionTemplate transactionTemplate;
     private static final Logger log = LoggerFactory.getLogger(TradeService.class);
+    private static final String STALE_VERSION = "Trade version is lower than existing version";
 
+    // Bounds of the tradeId keyset, both databases order UUIDs as unsigned 128-bit values
+    public static final UUID MIN_TRADE_ID = new UUID(0L, 0L);
+    public static final UUID MAX_TRADE_ID = new UUID(-1L, -1L);
+
+    @Value("${app.query.fetch-size:1000}")
+    private int fetchSize;
+    @Value("${app.expiry.chunk-size:1000}")
+    private int expiryChunkSize;
+
+    /**
+     * Inserts or amends the trade with one version-guarded upsert, so no read is needed and concurrent
+     * writers cannot overwrite a higher version. Versions below one recently committed are rejected from the
+     * version cache before reaching the database. The trade event is written to the outbox in the same
+     * transaction and published by the relay after commit.
+     */
+    @Bulkhead(name = "database")
     @Transactional
     public Trade saveTrade(TradeDto dto) {
-        if (dto.getMaturityDate().isBefore(LocalDate.now())) {
-            throw new InvalidTradeException("Trade maturity date cannot be in the past");
+        long start = System.nanoTime();
+        try {
+            validateMaturityDate(dto);
+            long stage = tradeTracer.start();
+            boolean stale = tradeVersionCache.isStale(dto.getTradeId(), dto.getVersion());
+            tradeTracer.stage(TradeTracer.Stage.VERSION_CHECK, stage);
+            if (stale) {
+                throw rejected(TradeMetrics.STALE_VERSION, STALE_VERSION);
+            }
+
+            Trade trade = toTrade(dto, LocalDate.now());
+            stage = tradeTracer.start();
+            Optional<LocalDate> createdDate = tradeRepository.upsert(trade);
+            tradeTracer.stage(TradeTracer.Stage.UPSERT, stage);
+            trade.setCreatedDate(createdDate.orElseThrow(() -> rejected(TradeMetrics.STALE_VERSION, STALE_VERSION)));
+
+            stage = tradeTracer.start();
+            tradeOutboxService.recordTradeEvents(List.of(trade));
+            tradeTracer.stage(TradeTracer.Stage.OUTBOX, stage);
+            tradeTracer.traceCommit();
+            afterCommit(() -> tradeVersionCache.put(trade));
+            saveTradeHistory(trade);
+            return trade;
+        } finally {
+            afterCompletion(() -> tradeMetrics.recordSave(System.nanoTime() - start));
+        }
+    }
+
+    /**
+     * Persists a batch of trades with one lookup for the trades missing from the version cache, one JDBC batch per statement type and one Mongo bulk insert.
+     * Trades failing validation are rejected individually and do not affect the rest of the batch.
+     * Results are returned in the same order as the input.
+     */
+    @Bulkhead(name = "database")
+    @Transactional
+    public List<TradeResult> saveTrades(List<TradeDto> dtos) {
+        long start = System.nanoTime();
+        try {
+            return applyTrades(dtos);
+        } finally {
+            afterCompletion(() -> tradeMetrics.recordSaveBatch(System.nanoTime() - start));
+        }
+    }
+
+    private List<TradeResult> applyTrades(List<TradeDto> dtos) {
+        List<TradeResult> results = new ArrayList<>(dtos.size());
+        if (dtos.isEmpty()) return results;
+
+        Set<UUID> ids = new HashSet<>();
+        for (TradeDto dto : dtos) {
+            if (dto.getTradeId() != null) ids.add(dto.getTradeId());
+        }
+
+        // Held until commit, so nobody else inserts one of these trades between the lookup and the batch insert
+        tradeRepository.lockTrades(ids);
+
+        // Latest known state per trade, updated as the batch is applied so repeated ids stay ordered
+        Map<UUID, TradeVersionCache.Entry> current = new HashMap<>();
+        Set<UUID> misses = new HashSet<>();
+        Map<UUID, Integer> archivedVersions = new HashMap<>();
+        for (UUID id : ids) {
+            TradeVersionCache.Entry cached = tradeVersionCache.get(id);
+            if (cached != null) {
+                current.put(id, cached);
+            } else {
+                misses.add(id);
+            }
+        }
+        if (!misses.isEmpty()) {
+            long stage = tradeTracer.start();
+            // Amendments mostly keep their maturity date, so the partitions of the incoming dates are read first
+            // and only the trades not found there, new ones or those changing maturity, in every partition
+            Set<LocalDate> maturityDates = new HashSet<>();
+            for (TradeDto dto : dtos) {
+                if (dto.getMaturityDate() != null && misses.contains(dto.getTradeId())) {
+                    maturityDates.add(dto.getMaturityDate());
+                }
+            }
+            List<Trade> stored = new ArrayList<>(maturityDates.isEmpty() ? List.of()
+                    : tradeRepository.findByTradeIdInAndMaturityDateIn(misses, maturityDates));
+            stored.forEach(trade -> misses.remove(trade.getTradeId()));
+            if (!misses.isEmpty()) {
+                stored.addAll(tradeRepository.findAllById(misses));
+            }
+            stored.forEach(trade -> {
+                misses.remove(trade.getTradeId());
+                current.put(trade.getTradeId(), new TradeVersionCache.Entry(trade.getVersion(), trade.getCreatedDate()));
+            });
+            // Trades removed by the archive job only keep their version in the archive
+            if (!misses.isEmpty()) {
+                archivedTradeRepository.findAllById(misses).forEach(archived ->
+                        archivedVersions.put(archived.getTradeId(), archived.getVersion()));
+            }
+            tradeTracer.stage(TradeTracer.Stage.LOOKUP, stage);
         }
 
-        Optional<Trade> existing = tradeRepository.findById(dto.getTradeId());
-        Trade tradeToSave;
+        Map<UUID, Trade> inserts = new LinkedHashMap<>();
+        Map<UUID, Trade> updates = new LinkedHashMap<>();
+        List<Trade> accepted = new ArrayList<>(dtos.size());
+
+        for (TradeDto dto : dtos) {
+            try {
+                validateMaturityDate(dto);
+                TradeVersionCache.Entry existing = dto.getTradeId() == null ? null : current.get(dto.getTradeId());
+                int storedVersion = existing != null ? existing.version()
+                        : archivedVersions.getOrDefault(dto.getTradeId(), Integer.MIN_VALUE);
+                if (dto.getVersion() < storedVersion) {
+                    throw rejected(TradeMetrics.STALE_VERSION, STALE_VERSION);
+                }
+
+                Trade trade = toTrade(dto, existing == null ? LocalDate.now() : existing.createdDate());
+                current.put(trade.getTradeId(), new TradeVersionCache.Entry(trade.getVersion(), trade.getCreatedDate()));
+                if (existing == null || inserts.containsKey(trade.getTradeId())) {
+                    inserts.put(trade.getTradeId(), trade);
+                } else {
+                    updates.put(trade.getTradeId(), trade);
+                }
+                accepted.add(trade);
+                results.add(TradeResult.accepted(trade.getTradeId(), trade.getVersion()));
+            } catch (InvalidTradeException e) {
+                results.add(TradeResult.rejected(dto.getTradeId(), dto.getVersion(), e.getMessage()));
+            }
+        }
 
-        if (existing.isPresent()) {
-            Trade oldTrade = existing.get();
+        long stage = tradeTracer.start();
+        tradeRepository.batchInsert(inserts.values());
+        int[] counts = tradeRepository.batchUpdate(updates.values());
+        tradeTracer.stage(TradeTracer.Stage.UPSERT, stage);
 
-            if (dto.getVersion() < oldTrade.getVersion()) {
-                throw new InvalidTradeException("Trade version is lower than existing version");
+        // A concurrent writer stored a higher version after our lookup or cached entry, the guarded update left it alone
+        Set<UUID> stale = new HashSet<>();
+        int i = 0;
+        for (Trade trade : updates.values()) {
+            if (i < counts.length && counts[i++] == 0) stale.add(trade.getTradeId());
+        }
+        if (!stale.isEmpty()) {
+            for (int j = 0; j < results.size(); j++) {
+                TradeResult result = results.get(j);
+                if (result.isAccepted() && stale.contains(result.getTradeId())) {
+                    tradeMetrics.rejected(TradeMetrics.STALE_VERSION);
+                    results.set(j, TradeResult.rejected(result.getTradeId(), result.getVersion(), STALE_VERSION));
+                }
             }
+            accepted.removeIf(trade -> stale.contains(trade.getTradeId()));
+        }
+
+        stage = tradeTracer.start();
+        tradeOutboxService.recordTradeEvents(accepted);
+        tradeTracer.stage(TradeTracer.Stage.OUTBOX, stage);
+        tradeTracer.traceCommit();
+        afterCommit(() -> tradeVersionCache.putAll(accepted));
+        saveTradeHistories(accepted);
+        return results;
+    }
 
-            // If same version, update existing
-            tradeToSave = oldTrade;
-            tradeToSave.setVersion(dto.getVersion());
-            tradeToSave.setBookId(dto.getBookId());
-            tradeToSave.setCounterPartyId(dto.getCounterPartyId());
-            tradeToSave.setMaturityDate(dto.getMaturityDate());
-            tradeToSave.setExpired(false);
-        } else {
-            // new trade
-            tradeToSave = new Trade();
-            tradeToSave.setTradeId(dto.getTradeId() == null ? UUID.randomUUID() : dto.getTradeId());
-            tradeToSave.setVersion(dto.getVersion());
-            tradeToSave.setBookId(dto.getBookId());
-            tradeToSave.setCounterPartyId(dto.getCounterPartyId());
-            tradeToSave.setMaturityDate(dto.getMaturityDate());
-            tradeToSave.setCreatedDate(LocalDate.now());
-            tradeToSave.setExpired(false);
-        }
-
-        Trade savedTrade = tradeRepository.save(tradeToSave);
-        saveTradeHistory(savedTrade);
-
-        return savedTrade;
-    }
-
-    // Circuit breaker for MongoDB operations
-    @CircuitBreaker(name = "mongodb", fallbackMethod = "saveHistoryFallback")
+    // Hands the history record to the asynchronous writer once the trade is committed,
+    // Mongo latency stays off the ingest path
     public void saveTradeHistory(Trade trade) {
-        // Save history to MongoDB
-        TradeHistory history = TradeHistory.builder()
+        long start = System.nanoTime();
+        TradeHistory history = toHistory(trade);
+        afterCommit(() -> {
+            long stage = tradeTracer.start();
+            tradeHistoryWriter.write(history);
+            tradeTracer.stage(TradeTracer.Stage.HISTORY, stage);
+        });
+        tradeMetrics.recordHistory(System.nanoTime() - start);
+    }
+
+    public void saveTradeHistories(List<Trade> trades) {
+        if (trades.isEmpty()) return;
+        long start = System.nanoTime();
+        List<TradeHistory> histories = new ArrayList<>(trades.size());
+        for (Trade trade : trades) {
+            histories.add(toHistory(trade));
+        }
+        afterCommit(() -> {
+            long stage = tradeTracer.start();
+            tradeHistoryWriter.writeAll(histories);
+            tradeTracer.stage(TradeTracer.Stage.HISTORY, stage);
+        });
+        tradeMetrics.recordHistoryBatch(System.nanoTime() - start);
+    }
+
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    // Runs once the surrounding transaction committed or rolled back, or right away outside one
+    private void afterCompletion(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                action.run();
+            }
+        });
+    }
+
+    private void validateMaturityDate(TradeDto dto) {
+        if (dto.getMaturityDate() == null) {
+            throw rejected(TradeMetrics.MISSING_MATURITY_DATE, "Trade maturity date is required");
+        }
+        if (dto.getMaturityDate().isBefore(LocalDate.now())) {
+            throw rejected(TradeMetrics.PAST_MATURITY_DATE, "Trade maturity date cannot be in the past");
+        }
+    }
+
+    private InvalidTradeException rejected(String reason, String message) {
+        tradeMetrics.rejected(reason);
+        return new InvalidTradeException(message);
+    }
+
+    // Builds a detached trade, never mutating entities loaded into the persistence context
+    private Trade toTrade(TradeDto dto, LocalDate createdDate) {
+        return Trade.builder()
+                .tradeId(dto.getTradeId() == null ? UUID.randomUUID() : dto.getTradeId())
+                .version(dto.getVersion())
+                .bookId(dto.getBookId())
+                .counterPartyId(dto.getCounterPartyId())
+                .maturityDate(dto.getMaturityDate())
+                .createdDate(createdDate)
+                .expired(false)
+                .build();
+    }
+
+    private TradeHistory toHistory(Trade trade) {
+        return TradeHistory.builder()
                 .id(UUID.randomUUID())
                 .tradeId(trade.getTradeId())
                 .version(trade.getVersion())
@@ -85,39 +310,129 @@ public class TradeService {
                 .expired(trade.isExpired())
                 .recordedDate(LocalDate.now())
                 .build();
+    }
 
-        tradeHistoryRepository.save(history);
+    public List<Trade> getAllTrades() {
+        return tradeRepository.findAll();
     }
 
-    public void saveHistoryFallback(Trade trade, Exception ex) {
-        log.error("Failed to save trade history for {}", trade.getTradeId(), ex);
-        // Could save to retry queue or alternative storage
+    /**
+     * Returns up to {@code limit} trades ordered by tradeId, starting after the given cursor.
+     * Pass the last tradeId of a page as {@code after} to fetch the next one.
+     */
+    @Bulkhead(name = "database")
+    @Transactional(readOnly = true)
+    public List<Trade> getTrades(UUID after, int limit) {
+        return after == null
+                ? tradeRepository.findByOrderByTradeIdAsc(Limit.of(limit))
+                : tradeRepository.findByTradeIdGreaterThanOrderByTradeIdAsc(after, Limit.of(limit));
     }
 
-    public List<Trade> getAllTrades() {
-        return tradeRepository.findAll();
+    // Falls back to the archive for trades moved out of the trades table by TradeArchiveService
+    @Bulkhead(name = "database")
+    @Transactional(readOnly = true)
+    public Optional<TradeView> getTrade(UUID tradeId) {
+        return tradeRepository.findViewById(tradeId).or(() -> archivedTradeRepository.findViewById(tradeId));
     }
 
-    @Transactional
-    public void markExpiredTrades() {
-        List<Trade> expiredTrades = tradeRepository.findByExpiredFalseAndMaturityDateBefore(LocalDate.now());
-        if(expiredTrades == null || expiredTrades.isEmpty()) return;
-        expiredTrades.forEach(trade -> trade.setExpired(true));
-        tradeRepository.saveAll(expiredTrades);
+    // Trades of one book and counterparty ordered by tradeId, starting after the given cursor
+    @Bulkhead(name = "database")
+    @Transactional(readOnly = true)
+    public List<TradeView> findTrades(String bookId, String counterPartyId, UUID after, int limit) {
+        return tradeRepository.findViewsByBookAndCounterParty(bookId, counterPartyId,
+                after == null ? MIN_TRADE_ID : after, Limit.of(limit));
+    }
+
+    /**
+     * Returns up to {@code limit} unexpired trades maturing between {@code from} and {@code to} inclusive,
+     * ordered by maturity date then tradeId. Pass the maturity date and tradeId of the last trade of a page as
+     * {@code afterMaturity} and {@code after} to fetch the next one.
+     */
+    @Bulkhead(name = "database")
+    @Transactional(readOnly = true)
+    public List<TradeView> findMaturingTrades(LocalDate from, LocalDate to, LocalDate afterMaturity, UUID after,
+                                              int limit) {
+        if (afterMaturity == null || after == null) {
+            return tradeRepository.findLiveViewsByMaturity(from, to, from, MIN_TRADE_ID, Limit.of(limit));
+        }
+        return tradeRepository.findLiveViewsByMaturity(from, to, afterMaturity, after, Limit.of(limit));
+    }
+
+    // Hands every trade to the consumer as it is read, without materialising the table. A stream holds its
+    // connection for as long as the consumer keeps up, so it gets its own small bulkhead instead of taking one
+    // of the database permits the ingest path relies on
+    @Bulkhead(name = "stream")
+    @Transactional(readOnly = true)
+    public void streamTrades(Consumer<Trade> consumer) {
+        tradeRepository.streamAll(fetchSize, consumer);
+    }
+
+    /**
+     * Flags matured trades as expired in bounded chunks, each locked and updated with one statement in its own
+     * short transaction, which also records an expired trade event per trade in the outbox. The predicate only
+     * matches trades still to expire, so an interrupted run simply resumes on the next invocation. Returns the
+     * number of trades expired.
+     */
+    public int markExpiredTrades() {
+        return markExpiredTrades(MIN_TRADE_ID, MAX_TRADE_ID);
+    }
+
+    // Expires only trades whose tradeId falls in (after, upTo], letting nodes work on disjoint ranges
+    public int markExpiredTrades(UUID after, UUID upTo) {
+        long runStart = System.nanoTime();
+        LocalDate today = LocalDate.now();
+        UUID next = after;
+        int total = 0;
+
+        while (true) {
+            long start = System.nanoTime();
+            UUID cursor = next;
+            List<Trade> chunk = transactionTemplate.execute(status -> expireChunk(today, cursor, upTo));
+            if (chunk == null || chunk.isEmpty()) break;
+
+            saveTradeHistories(chunk);
+            total += chunk.size();
+            next = chunk.get(chunk.size() - 1).getTradeId();
+            log.info("Expired chunk of {} trades in {} ms", chunk.size(), (System.nanoTime() - start) / 1_000_000);
+
+            if (chunk.size() < expiryChunkSize) break;
+        }
+
+        tradeMetrics.recordExpiry(System.nanoTime() - runStart, total);
+        log.info("Expired {} trades matured before {} in range ({}, {}]", total, today, after, upTo);
+        return total;
+    }
+
+    private List<Trade> expireChunk(LocalDate today, UUID after, UUID upTo) {
+        List<Trade> chunk = tradeRepository.findExpiryChunk(today, after, upTo, Limit.of(expiryChunkSize));
+        if (chunk.isEmpty()) return chunk;
+
+        List<UUID> ids = new ArrayList<>(chunk.size());
+        chunk.forEach(trade -> ids.add(trade.getTradeId()));
+        tradeRepository.markExpired(ids, today);
+
+        // The bulk update cleared the persistence context, so these are detached copies used for history and events
+        chunk.forEach(trade -> trade.setExpired(true));
+        tradeOutboxService.recordTradeEvents(chunk);
+        return chunk;
     }
 
     // Circuit breaker for Kafka publishing
     @CircuitBreaker(name = "kafka", fallbackMethod = "publishTradeFallback")
     @Retry(name = "kafka")
     public void publishTradeEvent(TradeDto dto) {
-        tradeProducer.publishTrade(dto);
+        long start = System.nanoTime();
+        try {
+            tradeProducer.publishTrade(dto);
+        } finally {
+            tradeMetrics.recordPublish(System.nanoTime() - start);
+        }
     }
 
-    // Fallback method
+    // Fallback method, parks the trade in the outbox so the relay publishes it once Kafka is back
     public void publishTradeFallback(TradeDto dto, Exception ex) {
-
-        log.error("Failed to publish trade {} to Kafka, storing for retry", dto.getTradeId(), ex);
-        // Store in retry queue or dead letter table
+        log.warn("Failed to publish trade {} to Kafka, storing in outbox for retry: {}", dto.getTradeId(), ex.toString());
+        tradeOutboxService.recordForPublish(dto);
     }
 
 }
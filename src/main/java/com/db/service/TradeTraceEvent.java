@@ -0,0 +1,74 @@
+package com.db.service;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * One trade, or one Kafka poll in batch mode, from the REST or Kafka entry point to the end of its handling,
+ * with the time spent in each stage. Only trades slower than the threshold are recorded unless a recording
+ * lowers it, e.g. {@code jfr configure +com.db.TradeTrace#threshold=5ms}.
+ */
+@Name("com.db.TradeTrace")
+@Label("Trade Trace")
+@Category({"Trade Store", "Ingest"})
+@Description("A trade written through REST or Kafka, broken down by stage")
+@StackTrace(false)
+@Threshold("20 ms")
+class TradeTraceEvent extends Event {
+
+    @Label("Entry Point")
+    String entry;
+
+    @Label("Trade Id")
+    String tradeId;
+
+    @Label("Version")
+    int version;
+
+    @Label("Trades")
+    int trades;
+
+    @Label("Accepted")
+    int accepted;
+
+    @Label("Binding")
+    @Description("Reading and decoding the JSON request body")
+    @Timespan
+    long bind;
+
+    @Label("Version Check")
+    @Description("Looking up the latest committed version in the cache")
+    @Timespan
+    long versionCheck;
+
+    @Label("Lookup")
+    @Description("Reading the current versions of a batch missing from the cache")
+    @Timespan
+    long lookup;
+
+    @Label("Upsert")
+    @Description("Version-guarded insert or update of the trades table")
+    @Timespan
+    long upsert;
+
+    @Label("Outbox")
+    @Description("Writing the trade events to the outbox")
+    @Timespan
+    long outbox;
+
+    @Label("Commit")
+    @Description("Committing the database transaction")
+    @Timespan
+    long commit;
+
+    @Label("History")
+    @Description("Handing the history records to the MongoDB writer, including any write on the caller's thread")
+    @Timespan
+    long history;
+}
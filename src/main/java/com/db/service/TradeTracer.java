@@ -0,0 +1,147 @@
+package com.db.service;
+
+import com.db.dto.TradeDto;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Breaks the handling of a trade down by stage, from the REST or Kafka entry point to the Postgres commit and
+ * the hand-off to the MongoDB writer. A trace lives on the thread that handles the trade; the entry point
+ * begins and ends it and the stages in between are timed with {@link #start()} and {@link #stage}.
+ *
+ * <p>A sampled share of traces, app.tracing.sample-rate, is recorded into the trade.stage histograms, and every
+ * trace becomes a {@link TradeTraceEvent} while a JFR recording has it enabled. With neither, a trace is never
+ * started and each call costs a thread-local lookup.
+ */
+@Component
+public class TradeTracer {
+
+    public static final String REST = "rest";
+    public static final String KAFKA = "kafka";
+    public static final String KAFKA_BATCH = "kafka-batch";
+
+    public enum Stage {
+        BIND, VERSION_CHECK, LOOKUP, UPSERT, OUTBOX, COMMIT, HISTORY
+    }
+
+    private final double sampleRate;
+    private final Timer[] timers = new Timer[Stage.values().length];
+    private final ThreadLocal<Trace> traces = ThreadLocal.withInitial(Trace::new);
+
+    public TradeTracer(MeterRegistry registry, @Value("${app.tracing.sample-rate:0}") double sampleRate) {
+        this.sampleRate = sampleRate;
+        for (Stage stage : Stage.values()) {
+            timers[stage.ordinal()] = Timer.builder("trade.stage")
+                    .tag("stage", stage.name().toLowerCase(Locale.ROOT))
+                    .description("Time a sampled trade spent in each stage of its write")
+                    .register(registry);
+        }
+    }
+
+    /**
+     * Begins a trace of the given number of trades on this thread if it is sampled or JFR is recording trade
+     * traces, replacing any trace an earlier request left unfinished.
+     */
+    public void begin(String entry, int trades) {
+        Trace trace = traces.get();
+        TradeTraceEvent event = new TradeTraceEvent();
+        trace.sampled = sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate;
+        if (!trace.sampled && !event.isEnabled()) {
+            trace.event = null;
+            return;
+        }
+        event.entry = entry;
+        event.trades = trades;
+        event.begin();
+        trace.event = event;
+        trace.began = System.nanoTime();
+    }
+
+    public void identify(TradeDto dto) {
+        TradeTraceEvent event = traces.get().event;
+        if (event == null || dto == null) return;
+        event.tradeId = dto.getTradeId() == null ? null : dto.getTradeId().toString();
+        event.version = dto.getVersion();
+    }
+
+    // When the current trace began, or 0 without one
+    public long began() {
+        Trace trace = traces.get();
+        return trace.event == null ? 0 : trace.began;
+    }
+
+    // Start of a stage, or 0 when this thread is not tracing
+    public long start() {
+        return traces.get().event == null ? 0 : System.nanoTime();
+    }
+
+    public void stage(Stage stage, long start) {
+        if (start == 0) return;
+        Trace trace = traces.get();
+        if (trace.event == null) return;
+        long nanos = System.nanoTime() - start;
+        switch (stage) {
+            case BIND -> trace.event.bind += nanos;
+            case VERSION_CHECK -> trace.event.versionCheck += nanos;
+            case LOOKUP -> trace.event.lookup += nanos;
+            case UPSERT -> trace.event.upsert += nanos;
+            case OUTBOX -> trace.event.outbox += nanos;
+            case COMMIT -> trace.event.commit += nanos;
+            case HISTORY -> trace.event.history += nanos;
+        }
+        if (trace.sampled) {
+            timers[stage.ordinal()].record(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Times the commit of the surrounding transaction, from just before it until the first after-commit
+     * callback, so the history hand-off registered earlier is not counted as commit time.
+     */
+    public void traceCommit() {
+        if (traces.get().event == null || !TransactionSynchronizationManager.isSynchronizationActive()) return;
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            private long start;
+
+            @Override
+            public int getOrder() {
+                return Ordered.HIGHEST_PRECEDENCE;
+            }
+
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                start = start();
+            }
+
+            @Override
+            public void afterCommit() {
+                stage(Stage.COMMIT, start);
+            }
+        });
+    }
+
+    // Ends the trace on this thread, committing its JFR event if the recording's threshold lets it through
+    public void end(int accepted) {
+        Trace trace = traces.get();
+        TradeTraceEvent event = trace.event;
+        if (event == null) return;
+        trace.event = null;
+        event.accepted = accepted;
+        event.commit();
+    }
+
+    private static class Trace {
+        TradeTraceEvent event;
+        boolean sampled;
+        long began;
+    }
+}
@@ -0,0 +1,79 @@
+package com.db.service;
+
+import com.db.model.Trade;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.UUID;
+
+/**
+ * Local, bounded view of the latest committed version of recently written trades, so stale amendments are
+ * rejected and batch writes skip their lookup without a round-trip to the database. Entries are only added
+ * after the writing transaction commits and a version never goes down in the trades table, so an entry is a
+ * lower bound of the stored version on every node: rejecting a version below it is always right, even when
+ * another node has since stored a higher one. Writes that pass the cache still go through the version-guarded
+ * statements, which catch anything newer than the entry.
+ */
+@Component
+public class TradeVersionCache implements MeterBinder {
+
+    public record Entry(int version, LocalDate createdDate) {
+    }
+
+    private final boolean enabled;
+    private final Cache<UUID, Entry> cache;
+
+    public TradeVersionCache(@Value("${app.cache.version.enabled:true}") boolean enabled,
+                             @Value("${app.cache.version.maximum-size:100000}") long maximumSize,
+                             @Value("${app.cache.version.ttl:10m}") Duration ttl) {
+        this.enabled = enabled;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+    }
+
+    // Null when the trade was not written recently by this node
+    public Entry get(UUID tradeId) {
+        return enabled && tradeId != null ? cache.getIfPresent(tradeId) : null;
+    }
+
+    public boolean isStale(UUID tradeId, int version) {
+        Entry entry = get(tradeId);
+        return entry != null && version < entry.version();
+    }
+
+    // Call once the trade is committed; a slower writer finishing later never lowers the cached version
+    public void put(Trade trade) {
+        if (!enabled) return;
+        Entry entry = new Entry(trade.getVersion(), trade.getCreatedDate());
+        cache.asMap().merge(trade.getTradeId(), entry,
+                (cached, committed) -> committed.version() >= cached.version() ? committed : cached);
+    }
+
+    public void putAll(Collection<Trade> trades) {
+        trades.forEach(this::put);
+    }
+
+    public void invalidate(UUID tradeId) {
+        cache.invalidate(tradeId);
+    }
+
+    public void invalidateAll(Collection<UUID> tradeIds) {
+        cache.invalidateAll(tradeIds);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, "trade.version");
+    }
+}
@@ -0,0 +1,69 @@
+package com.db.stream;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs tasks concurrently while keeping tasks that share a key strictly in submission order.
+ * Each key is pinned to one single-threaded lane, so different keys proceed in parallel.
+ */
+@Slf4j
+public class KeyOrderedExecutor implements DisposableBean {
+
+    private final ExecutorService[] lanes;
+
+    public KeyOrderedExecutor(int parallelism) {
+        this(parallelism, platformThreads());
+    }
+
+    // Lanes run on threads from the given factory, e.g. virtual threads
+    public KeyOrderedExecutor(int parallelism, ThreadFactory threadFactory) {
+        int size = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.lanes = new ExecutorService[size];
+        for (int i = 0; i < size; i++) {
+            lanes[i] = Executors.newSingleThreadExecutor(threadFactory);
+        }
+    }
+
+    private static ThreadFactory platformThreads() {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, "trade-lane-" + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    public CompletableFuture<Void> submit(Object key, Runnable task) {
+        return CompletableFuture.runAsync(task, laneFor(key));
+    }
+
+    public int getParallelism() {
+        return lanes.length;
+    }
+
+    private ExecutorService laneFor(Object key) {
+        int hash = key == null ? 0 : key.hashCode();
+        return lanes[Math.floorMod(hash ^ (hash >>> 16), lanes.length)];
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        for (ExecutorService lane : lanes) {
+            lane.shutdown();
+        }
+        for (ExecutorService lane : lanes) {
+            if (!lane.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.warn("Trade lane did not drain in time, forcing shutdown");
+                lane.shutdownNow();
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.db.stream;
+
+import com.db.dto.TradeDto;
+import org.apache.kafka.common.errors.SerializationException;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.UUID;
+
+/**
+ * Fixed layout binary encoding of {@link TradeDto}, big-endian:
+ * <pre>
+ * magic (1) | schema version (1) | presence flags (1)
+ * tradeId msb (8) | tradeId lsb (8) | version (4) | maturityDate epoch day (4)
+ * counterPartyId length (2) + UTF-8 | bookId length (2) + UTF-8
+ * </pre>
+ * Absent fields are flagged and take no space. Later schema versions may only append fields, flagged by
+ * new presence bits, so a reader of any version decodes the fields it knows and ignores the rest of the
+ * record; consumers can therefore be upgraded after producers. Removing or reordering a field needs a new
+ * magic byte instead. The magic byte can never start a JSON document, which lets consumers tell the two
+ * formats apart without a header.
+ */
+public final class TradeBinaryCodec {
+
+    public static final byte MAGIC = (byte) 0xB7;
+    public static final byte SCHEMA_VERSION = 1;
+
+    private static final int HAS_TRADE_ID = 1;
+    private static final int HAS_MATURITY_DATE = 1 << 1;
+    private static final int HAS_COUNTER_PARTY_ID = 1 << 2;
+    private static final int HAS_BOOK_ID = 1 << 3;
+    private static final int HEADER_BYTES = 3;
+
+    private TradeBinaryCodec() {
+    }
+
+    public static byte[] encode(TradeDto dto) {
+        byte[] counterPartyId = utf8(dto.getCounterPartyId());
+        byte[] bookId = utf8(dto.getBookId());
+        int flags = (dto.getTradeId() != null ? HAS_TRADE_ID : 0)
+                | (dto.getMaturityDate() != null ? HAS_MATURITY_DATE : 0)
+                | (counterPartyId != null ? HAS_COUNTER_PARTY_ID : 0)
+                | (bookId != null ? HAS_BOOK_ID : 0);
+
+        int size = HEADER_BYTES + Integer.BYTES
+                + (dto.getTradeId() != null ? 2 * Long.BYTES : 0)
+                + (dto.getMaturityDate() != null ? Integer.BYTES : 0)
+                + (counterPartyId != null ? Short.BYTES + counterPartyId.length : 0)
+                + (bookId != null ? Short.BYTES + bookId.length : 0);
+
+        ByteBuffer buffer = ByteBuffer.allocate(size)
+                .put(MAGIC)
+                .put(SCHEMA_VERSION)
+                .put((byte) flags);
+        if (dto.getTradeId() != null) {
+            buffer.putLong(dto.getTradeId().getMostSignificantBits()).putLong(dto.getTradeId().getLeastSignificantBits());
+        }
+        buffer.putInt(dto.getVersion());
+        if (dto.getMaturityDate() != null) {
+            buffer.putInt(Math.toIntExact(dto.getMaturityDate().toEpochDay()));
+        }
+        putString(buffer, counterPartyId);
+        putString(buffer, bookId);
+        return buffer.array();
+    }
+
+    public static TradeDto decode(byte[] data) {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        try {
+            if (buffer.get() != MAGIC) {
+                throw new SerializationException("Not a binary trade record");
+            }
+            byte schemaVersion = buffer.get();
+            // A later version only appended fields, which are left unread
+            if (schemaVersion < 1) {
+                throw new SerializationException("Unsupported trade schema version " + schemaVersion);
+            }
+            int flags = buffer.get();
+
+            TradeDto dto = new TradeDto();
+            if ((flags & HAS_TRADE_ID) != 0) {
+                dto.setTradeId(new UUID(buffer.getLong(), buffer.getLong()));
+            }
+            dto.setVersion(buffer.getInt());
+            if ((flags & HAS_MATURITY_DATE) != 0) {
+                dto.setMaturityDate(LocalDate.ofEpochDay(buffer.getInt()));
+            }
+            if ((flags & HAS_COUNTER_PARTY_ID) != 0) {
+                dto.setCounterPartyId(getString(buffer));
+            }
+            if ((flags & HAS_BOOK_ID) != 0) {
+                dto.setBookId(getString(buffer));
+            }
+            return dto;
+        } catch (BufferUnderflowException e) {
+            throw new SerializationException("Truncated binary trade record of " + data.length + " bytes", e);
+        }
+    }
+
+    public static boolean isBinary(byte[] data) {
+        return data != null && data.length > 0 && data[0] == MAGIC;
+    }
+
+    private static byte[] utf8(String value) {
+        if (value == null) return null;
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new SerializationException("String field of " + bytes.length + " bytes is too long");
+        }
+        return bytes;
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) return;
+        buffer.putShort((short) bytes.length).put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = Short.toUnsignedInt(buffer.getShort());
+        String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+}
@@ -1,29 +1,184 @@
 package com.db.stream;
 
 import com.db.dto.TradeDto;
+import com.db.dto.TradeResult;
+import com.db.exception.InvalidTradeException;
+import com.db.service.TradeMetrics;
 import com.db.service.TradeService;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.db.service.TradeTracer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.kafka.annotation.DltHandler;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.annotation.RetryableTopic;
+import org.springframework.kafka.retrytopic.DltStrategy;
+import org.springframework.kafka.retrytopic.TopicSuffixingStrategy;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.kafka.support.serializer.DeserializationException;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.retry.annotation.Backoff;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class TradeConsumer {
 
+    public static final String LISTENER_ID = "tradeConsumer";
+    public static final String BATCH_LISTENER_ID = "tradeBatchConsumer";
+    public static final String PARALLEL_LISTENER_ID = "tradeParallelConsumer";
+    // The listeners writing trades from the trade topic, whichever app.kafka.consumer.mode started
+    public static final List<String> INGEST_LISTENER_IDS = List.of(LISTENER_ID, BATCH_LISTENER_ID, PARALLEL_LISTENER_ID);
+
     private final TradeService tradeService;
-    private final ObjectMapper objectMapper;
+    private final KeyOrderedExecutor keyOrderedExecutor;
+    private final TradeDeduplicator tradeDeduplicator;
+    private final TradeRetryPublisher tradeRetryPublisher;
+    private final TradeConsumerBackpressure tradeConsumerBackpressure;
+    private final TradeMetrics tradeMetrics;
+    private final TradeTracer tradeTracer;
 
-    @KafkaListener(topics = "${app.kafka.topic:trades}", groupId = "trade-group")
-    public void consumeTrade(String message) {
+    /**
+     * Failures are retried from delayed retry topics (trades-retry-0, -1, ...) so the partition keeps moving.
+     * Invalid trades and undecodable messages are not retried and go straight to trades-dlt, as does anything
+     * still failing after the last attempt.
+     */
+    @RetryableTopic(attempts = "${app.kafka.retry.attempts:4}",
+            backoff = @Backoff(delayExpression = "${app.kafka.retry.delay:1000}",
+                    multiplierExpression = "${app.kafka.retry.multiplier:5}",
+                    maxDelayExpression = "${app.kafka.retry.max-delay:60000}"),
+            exclude = InvalidTradeException.class,
+            kafkaTemplate = "tradeRetryKafkaTemplate",
+            numPartitions = "${app.kafka.partitions:3}",
+            topicSuffixingStrategy = TopicSuffixingStrategy.SUFFIX_WITH_INDEX_VALUE,
+            dltStrategy = DltStrategy.FAIL_ON_ERROR)
+    @KafkaListener(id = LISTENER_ID, topics = "${app.kafka.topic:trades}", groupId = "trade-group",
+            concurrency = "${app.kafka.consumer.concurrency:1}",
+            autoStartup = "#{'${app.kafka.consumer.mode:record}' == 'record'}")
+    public void consumeTrade(ConsumerRecord<String, TradeDto> record) {
+        TradeDto dto = record.value();
+        if (tradeDeduplicator.isDuplicate(record)) {
+            log.debug("Skipping already applied trade {} version {}", dto.getTradeId(), dto.getVersion());
+            return;
+        }
+        long start = System.nanoTime();
+        tradeTracer.begin(TradeTracer.KAFKA, 1);
+        tradeTracer.identify(dto);
+        int accepted = 0;
         try {
-            TradeDto dto = objectMapper.readValue(message, TradeDto.class);
             tradeService.saveTrade(dto);
-            log.info("Consumed trade: {}", dto.getTradeId());
+            accepted = 1;
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            tradeConsumerBackpressure.recordLatency(elapsed);
+            tradeMetrics.recordConsume(elapsed);
+            tradeTracer.end(accepted);
+        }
+        tradeDeduplicator.recordApplied(record);
+        log.debug("Consumed trade: {}", dto.getTradeId());
+    }
+
+    // Failure metadata travels in the kafka_exception-* and kafka_original-* headers,
+    // POST /api/trades/dlt/replay sends the records back
+    @DltHandler
+    public void handleDeadLetter(ConsumerRecord<String, TradeDto> record,
+                                 @Header(name = KafkaHeaders.EXCEPTION_CAUSE_FQCN, required = false) String cause,
+                                 @Header(name = KafkaHeaders.EXCEPTION_MESSAGE, required = false) String reason) {
+        log.error("Dead-lettered trade {} at {}-{}@{}: {} {}", record.key(), record.topic(), record.partition(),
+                record.offset(), cause, reason);
+    }
+
+    @KafkaListener(id = BATCH_LISTENER_ID, topics = "${app.kafka.topic:trades}", groupId = "trade-group",
+            containerFactory = "batchKafkaListenerContainerFactory",
+            concurrency = "${app.kafka.consumer.concurrency:1}",
+            autoStartup = "#{'${app.kafka.consumer.mode:record}' == 'batch'}")
+    public void consumeTrades(List<ConsumerRecord<String, TradeDto>> records) {
+        long received = System.nanoTime();
+        List<ConsumerRecord<String, TradeDto>> fresh = new ArrayList<>(records.size());
+        List<TradeDto> dtos = new ArrayList<>(records.size());
+        for (ConsumerRecord<String, TradeDto> record : records) {
+            TradeDto dto = record.value();
+            if (dto == null) {
+                forwardUndecodable(record);
+            } else if (tradeDeduplicator.isDuplicate(record)) {
+                log.debug("Skipping already applied trade {} version {}", dto.getTradeId(), dto.getVersion());
+            } else {
+                fresh.add(record);
+                dtos.add(dto);
+            }
+        }
+
+        try {
+            // Results come back in input order, so they line up with the records they came from
+            long start = System.nanoTime();
+            tradeTracer.begin(TradeTracer.KAFKA_BATCH, dtos.size());
+            List<TradeResult> results = null;
+            try {
+                results = tradeService.saveTrades(dtos);
+            } finally {
+                tradeTracer.end(results == null ? 0 : (int) results.stream().filter(TradeResult::isAccepted).count());
+            }
+            tradeConsumerBackpressure.recordLatency(System.nanoTime() - start);
+            for (int i = 0; i < results.size(); i++) {
+                TradeResult result = results.get(i);
+                if (result.isAccepted()) {
+                    tradeDeduplicator.recordApplied(fresh.get(i));
+                } else {
+                    log.debug("Rejected trade {} version {}: {}", result.getTradeId(), result.getVersion(), result.getMessage());
+                    tradeRetryPublisher.publish(fresh.get(i), new InvalidTradeException(result.getMessage()));
+                }
+            }
+            log.debug("Consumed {} trades", dtos.size());
         } catch (Exception e) {
-            log.error("Failed to process trade message: {}", message, e);
+            // Bulk write failed as a whole, isolate the offending records by replaying them one at a time
+            log.error("Failed to persist batch of {} trades, retrying individually", dtos.size(), e);
+            fresh.forEach(this::consumeOrForward);
+        } finally {
+            tradeMetrics.recordConsumeBatch(System.nanoTime() - received);
         }
     }
+
+    /**
+     * Processes a poll concurrently, one lane per record key, so versions of the same trade are applied in order.
+     * The listener only returns once every record is done, keeping offset commits at-least-once.
+     */
+    @KafkaListener(id = PARALLEL_LISTENER_ID, topics = "${app.kafka.topic:trades}", groupId = "trade-group",
+            containerFactory = "batchKafkaListenerContainerFactory",
+            concurrency = "${app.kafka.consumer.concurrency:1}",
+            autoStartup = "#{'${app.kafka.consumer.mode:record}' == 'parallel'}")
+    public void consumeTradesInParallel(List<ConsumerRecord<String, TradeDto>> records) {
+        List<CompletableFuture<Void>> pending = new ArrayList<>(records.size());
+        for (ConsumerRecord<String, TradeDto> record : records) {
+            if (record.value() == null) {
+                forwardUndecodable(record);
+                continue;
+            }
+            // Unkeyed records fall back to their partition so they keep partition order
+            Object key = record.key() != null ? record.key() : record.partition();
+            pending.add(keyOrderedExecutor.submit(key, () -> consumeOrForward(record)));
+        }
+        CompletableFuture.allOf(pending.toArray(new CompletableFuture[0])).join();
+    }
+
+    // A record failing on its own is handed to the retry topics, the rest of the poll carries on
+    private void consumeOrForward(ConsumerRecord<String, TradeDto> record) {
+        try {
+            consumeTrade(record);
+        } catch (Exception e) {
+            log.warn("Failed to process trade {}, forwarding for retry: {}", record.value().getTradeId(), e.toString());
+            tradeRetryPublisher.publish(record, e);
+        }
+    }
+
+    // The raw bytes are taken from the deserializer's exception header and dead-lettered as they arrived
+    private void forwardUndecodable(ConsumerRecord<String, TradeDto> record) {
+        tradeMetrics.rejected(TradeMetrics.UNDECODABLE);
+        log.error("Dead-lettering undecodable trade message at {}-{}@{}", record.topic(), record.partition(), record.offset());
+        tradeRetryPublisher.publish(record, new DeserializationException("Undecodable trade message", null, false, null));
+    }
 }
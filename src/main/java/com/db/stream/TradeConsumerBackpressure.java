@@ -0,0 +1,211 @@
+package com.db.stream;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.listener.ListenerContainerRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pauses the trade ingest listener containers while the database is struggling, so consumers stop opening new
+ * transactions and leave connections to the REST path, and resumes them once it recovers. Other listeners,
+ * such as the retry topics and the exposure feed, keep running, and only containers paused here are resumed. The database is
+ * considered overloaded when the average persistence call of the last check interval took longer than
+ * pause-latency, when the connection pool is saturated or has waiting threads, or when one of the configured
+ * circuit breakers is open. Resuming needs the latency to drop below resume-latency as well, after at least
+ * min-pause. After max-pause the containers are resumed regardless, so the breakers see traffic again and
+ * the state is re-evaluated from fresh measurements.
+ */
+@Slf4j
+@Component
+public class TradeConsumerBackpressure implements MeterBinder {
+
+    private final ListenerContainerRegistry containerRegistry;
+    private final HikariDataSource pool;
+    private final List<CircuitBreaker> breakers = new ArrayList<>();
+    private final boolean enabled;
+    private final long pauseLatencyNanos;
+    private final long resumeLatencyNanos;
+    private final double poolSaturation;
+    private final long minPauseNanos;
+    private final long maxPauseNanos;
+
+    private final LongAdder latencySum = new LongAdder();
+    private final LongAdder latencyCount = new LongAdder();
+    private final AtomicLong pauses = new AtomicLong();
+    // Only touched from the scheduled evaluate()
+    private final List<MessageListenerContainer> pausedContainers = new ArrayList<>();
+    private volatile double lastLatencyMillis;
+    private volatile boolean paused;
+    private volatile long pausedAt;
+
+    public TradeConsumerBackpressure(ListenerContainerRegistry containerRegistry,
+                                     DataSource dataSource,
+                                     CircuitBreakerRegistry circuitBreakerRegistry,
+                                     @Value("${app.kafka.backpressure.enabled:true}") boolean enabled,
+                                     @Value("${app.kafka.backpressure.pause-latency:500ms}") Duration pauseLatency,
+                                     @Value("${app.kafka.backpressure.resume-latency:200ms}") Duration resumeLatency,
+                                     @Value("${app.kafka.backpressure.pool-saturation:0.9}") double poolSaturation,
+                                     @Value("${app.kafka.backpressure.min-pause:2s}") Duration minPause,
+                                     @Value("${app.kafka.backpressure.max-pause:30s}") Duration maxPause,
+                                     @Value("${app.kafka.backpressure.breakers:mongodb}") List<String> breakerNames) {
+        this.containerRegistry = containerRegistry;
+        this.pool = unwrapHikari(dataSource);
+        this.enabled = enabled;
+        this.pauseLatencyNanos = pauseLatency.toNanos();
+        this.resumeLatencyNanos = resumeLatency.toNanos();
+        this.poolSaturation = poolSaturation;
+        this.minPauseNanos = minPause.toNanos();
+        this.maxPauseNanos = maxPause.toNanos();
+        for (String name : breakerNames) {
+            if (!name.isBlank()) breakers.add(circuitBreakerRegistry.circuitBreaker(name.trim()));
+        }
+    }
+
+    // Called by the listeners with the duration of each saveTrade or saveTrades call
+    public void recordLatency(long nanos) {
+        latencySum.add(nanos);
+        latencyCount.increment();
+    }
+
+    @Scheduled(fixedDelayString = "${app.kafka.backpressure.check-interval:500ms}")
+    public void evaluate() {
+        if (!enabled) return;
+        long count = latencyCount.sumThenReset();
+        long sum = latencySum.sumThenReset();
+        // No calls in the interval, either idle or paused, says nothing against the database
+        long latency = count == 0 ? 0 : sum / count;
+        lastLatencyMillis = latency / 1_000_000.0;
+
+        String overload = overloadReason(latency);
+        long now = System.nanoTime();
+        if (!paused) {
+            if (overload != null) pause(overload, now);
+        } else {
+            long pausedFor = now - pausedAt;
+            boolean recovered = overload == null && latency <= resumeLatencyNanos && pausedFor >= minPauseNanos;
+            if (recovered || pausedFor >= maxPauseNanos) resume(pausedFor, overload);
+        }
+    }
+
+    private String overloadReason(long latency) {
+        if (latency > pauseLatencyNanos) {
+            return String.format("persistence latency %.0f ms", latency / 1_000_000.0);
+        }
+        HikariPoolMXBean poolBean = pool == null ? null : pool.getHikariPoolMXBean();
+        if (poolBean != null) {
+            if (poolBean.getThreadsAwaitingConnection() > 0) {
+                return poolBean.getThreadsAwaitingConnection() + " threads waiting for a connection";
+            }
+            if (poolBean.getActiveConnections() >= pool.getMaximumPoolSize() * poolSaturation) {
+                return poolBean.getActiveConnections() + " of " + pool.getMaximumPoolSize() + " connections in use";
+            }
+        }
+        for (CircuitBreaker breaker : breakers) {
+            if (breaker.getState() == CircuitBreaker.State.OPEN) {
+                return "circuit breaker " + breaker.getName() + " open";
+            }
+        }
+        return null;
+    }
+
+    private void pause(String reason, long now) {
+        log.warn("Pausing trade consumers: {}", reason);
+        for (MessageListenerContainer container : ingestContainers()) {
+            // A container paused by someone else is left for them to resume
+            if (container.isRunning() && !container.isPauseRequested()) {
+                container.pause();
+                pausedContainers.add(container);
+            }
+        }
+        paused = true;
+        pausedAt = now;
+        pauses.incrementAndGet();
+    }
+
+    private void resume(long pausedFor, String overload) {
+        if (overload == null) {
+            log.info("Resuming trade consumers after {} ms", pausedFor / 1_000_000);
+        } else {
+            log.warn("Resuming trade consumers after {} ms to probe, still {}", pausedFor / 1_000_000, overload);
+        }
+        for (MessageListenerContainer container : pausedContainers) {
+            if (container.isPauseRequested()) container.resume();
+        }
+        pausedContainers.clear();
+        paused = false;
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    // Sum of the records-lag of every partition assigned to a trade ingest listener on this node
+    public double getLag() {
+        double lag = 0;
+        for (MessageListenerContainer container : ingestContainers()) {
+            if (!container.isRunning()) continue;
+            for (Map<MetricName, ? extends Metric> metrics : container.metrics().values()) {
+                for (Map.Entry<MetricName, ? extends Metric> metric : metrics.entrySet()) {
+                    MetricName name = metric.getKey();
+                    if (!"records-lag".equals(name.name()) || !name.tags().containsKey("partition")) continue;
+                    Object value = metric.getValue().metricValue();
+                    if (value instanceof Double partitionLag && !partitionLag.isNaN()) lag += partitionLag;
+                }
+            }
+        }
+        return lag;
+    }
+
+    private List<MessageListenerContainer> ingestContainers() {
+        List<MessageListenerContainer> containers = new ArrayList<>();
+        for (String id : TradeConsumer.INGEST_LISTENER_IDS) {
+            MessageListenerContainer container = containerRegistry.getListenerContainer(id);
+            if (container != null) containers.add(container);
+        }
+        return containers;
+    }
+
+    private static HikariDataSource unwrapHikari(DataSource dataSource) {
+        try {
+            return dataSource.isWrapperFor(HikariDataSource.class) ? dataSource.unwrap(HikariDataSource.class) : null;
+        } catch (SQLException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("trade.consumer.paused", this, backpressure -> backpressure.isPaused() ? 1 : 0)
+                .description("1 while the trade listeners are paused for database backpressure")
+                .register(registry);
+        FunctionCounter.builder("trade.consumer.pauses", pauses, AtomicLong::get).register(registry);
+        Gauge.builder("trade.consumer.lag", this, TradeConsumerBackpressure::getLag)
+                .description("Records behind the end of the trade partitions assigned on this node")
+                .register(registry);
+        Gauge.builder("trade.consumer.persist.latency", this, backpressure -> backpressure.lastLatencyMillis)
+                .description("Average persistence call latency in ms over the last check interval")
+                .baseUnit("milliseconds")
+                .register(registry);
+    }
+}
@@ -0,0 +1,309 @@
+package com.db.stream;
+
+import com.db.dto.TradeDto;
+import com.db.service.TradeService;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.utils.Utils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Skips trade events this node already applied, so records redelivered after a rebalance or a failed commit
+ * do not cost another upsert and history write. Each owned partition keeps a Bloom filter over every
+ * (tradeId, version) seen and an exact LRU set of the most recent ones. An event is only skipped when the
+ * exact set confirms it; a Bloom hit that the exact set cannot confirm is processed normally, so a false
+ * positive never drops an event. Filters are seeded from the trades table when a partition is assigned and
+ * dropped when it is revoked, since another node may apply newer versions meanwhile. Seeding scans the whole
+ * table, so it runs on a thread of its own rather than the consumer's, where it could outlast
+ * max.poll.interval.ms; until it is done the partition's events all go through to the version-guarded write.
+ * Partitions assigned while a scan runs are seeded together by the next one.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TradeDeduplicator implements ConsumerAwareRebalanceListener, MeterBinder {
+
+    private final TradeService tradeService;
+
+    @Value("${app.kafka.topic:trades}")
+    private String tradeTopic = "trades";
+    @Value("${app.kafka.dedup.enabled:true}")
+    private boolean enabled = true;
+    // Per partition sizing, the Bloom filter is rebuilt from the exact set once it holds this many entries
+    @Value("${app.kafka.dedup.expected-insertions:1000000}")
+    private int expectedInsertions = 1_000_000;
+    @Value("${app.kafka.dedup.false-positive-rate:0.01}")
+    private double falsePositiveRate = 0.01;
+    @Value("${app.kafka.dedup.recent-capacity:100000}")
+    private int recentCapacity = 100_000;
+
+    private final Map<Integer, PartitionFilter> filters = new ConcurrentHashMap<>();
+    private final Set<Integer> unseeded = ConcurrentHashMap.newKeySet();
+    // One scan at a time, however many consumer threads get partitions assigned
+    private Executor seedExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "dedup-seed");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong unconfirmed = new AtomicLong();
+
+    // Records from the retry topics are never filtered, their partitions do not follow the trade topic's
+    public boolean isDuplicate(ConsumerRecord<?, TradeDto> record) {
+        TradeDto dto = record.value();
+        return record.topic().equals(tradeTopic) && isDuplicate(record.partition(), dto.getTradeId(), dto.getVersion());
+    }
+
+    public void recordApplied(ConsumerRecord<?, TradeDto> record) {
+        TradeDto dto = record.value();
+        if (record.topic().equals(tradeTopic)) recordApplied(record.partition(), dto.getTradeId(), dto.getVersion());
+    }
+
+    // True only when this exact (tradeId, version) was applied from the partition before
+    public boolean isDuplicate(int partition, UUID tradeId, int version) {
+        if (tradeId == null) return false;
+        PartitionFilter filter = filters.get(partition);
+        if (filter == null || !filter.isSeeded()) return false;
+
+        switch (filter.check(tradeId, version)) {
+            case SEEN -> {
+                hits.incrementAndGet();
+                return true;
+            }
+            case MAYBE -> unconfirmed.incrementAndGet();
+            case NEW -> misses.incrementAndGet();
+        }
+        return false;
+    }
+
+    public void recordApplied(int partition, UUID tradeId, int version) {
+        if (tradeId == null) return;
+        PartitionFilter filter = filters.get(partition);
+        if (filter != null) filter.add(tradeId, version);
+    }
+
+    @Override
+    public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        if (!enabled) return;
+        boolean assigned = false;
+        for (TopicPartition partition : partitions) {
+            if (partition.topic().equals(tradeTopic) && filters.putIfAbsent(partition.partition(), newFilter()) == null) {
+                unseeded.add(partition.partition());
+                assigned = true;
+            }
+        }
+        if (!assigned) return;
+        int partitionCount = consumer.partitionsFor(tradeTopic).size();
+        seedExecutor.execute(() -> seed(partitionCount));
+    }
+
+    @Override
+    public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        drop(partitions);
+    }
+
+    @Override
+    public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        drop(partitions);
+    }
+
+    // One pass over the table fills every partition still unseeded, routing trades the way the producer keys them
+    private void seed(int partitionCount) {
+        long start = System.nanoTime();
+        Map<Integer, PartitionFilter> seeding = new HashMap<>();
+        for (Integer partition : unseeded) {
+            unseeded.remove(partition);
+            PartitionFilter filter = filters.get(partition);
+            if (filter != null) seeding.put(partition, filter);
+        }
+        if (seeding.isEmpty()) return;
+        try {
+            tradeService.streamTrades(trade -> {
+                PartitionFilter filter = seeding.get(partitionFor(trade.getTradeId(), partitionCount));
+                if (filter != null) filter.add(trade.getTradeId(), trade.getVersion());
+            });
+        } catch (BulkheadFullException e) {
+            // Every stream permit is taken, the partitions are left unfiltered until they are assigned again
+            log.warn("Skipped seeding dedup filters for partitions {}: {}", seeding.keySet(), e.getMessage());
+            return;
+        } catch (RuntimeException e) {
+            log.warn("Failed to seed dedup filters for partitions {}, left unfiltered until they are assigned again",
+                    seeding.keySet(), e);
+            return;
+        }
+        // Events applied while the scan ran were recorded in the same filters, none is missed
+        seeding.values().forEach(PartitionFilter::markSeeded);
+        log.info("Seeded dedup filters for partitions {} in {} ms", seeding.keySet(),
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private void drop(Collection<TopicPartition> partitions) {
+        for (TopicPartition partition : partitions) {
+            if (partition.topic().equals(tradeTopic)) {
+                filters.remove(partition.partition());
+                unseeded.remove(partition.partition());
+            }
+        }
+    }
+
+    // Same as the Kafka default partitioner applied to the String tradeId key
+    static int partitionFor(UUID tradeId, int partitionCount) {
+        byte[] key = tradeId.toString().getBytes(StandardCharsets.UTF_8);
+        return Utils.toPositive(Utils.murmur2(key)) % partitionCount;
+    }
+
+    private PartitionFilter newFilter() {
+        return new PartitionFilter(expectedInsertions, falsePositiveRate, recentCapacity);
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getUnconfirmed() {
+        return unconfirmed.get();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("trade.dedup.hits", hits, AtomicLong::get)
+                .description("Redelivered trade events skipped as already applied")
+                .register(registry);
+        FunctionCounter.builder("trade.dedup.misses", misses, AtomicLong::get)
+                .description("Trade events the Bloom filter has never seen")
+                .register(registry);
+        FunctionCounter.builder("trade.dedup.unconfirmed", unconfirmed, AtomicLong::get)
+                .description("Bloom filter hits the exact set could not confirm, processed normally")
+                .register(registry);
+        Gauge.builder("trade.dedup.partitions", filters, Map::size).register(registry);
+    }
+
+    private enum Verdict { NEW, MAYBE, SEEN }
+
+    private static final class PartitionFilter {
+
+        private final int expectedInsertions;
+        private final double falsePositiveRate;
+        private final LinkedHashMap<Key, Boolean> recent;
+        private BloomFilter bloom;
+        private int inserted;
+        private volatile boolean seeded;
+
+        PartitionFilter(int expectedInsertions, double falsePositiveRate, int recentCapacity) {
+            this.expectedInsertions = expectedInsertions;
+            this.falsePositiveRate = falsePositiveRate;
+            this.bloom = new BloomFilter(expectedInsertions, falsePositiveRate);
+            this.recent = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key, Boolean> eldest) {
+                    return size() > recentCapacity;
+                }
+            };
+        }
+
+        boolean isSeeded() {
+            return seeded;
+        }
+
+        void markSeeded() {
+            seeded = true;
+        }
+
+        synchronized Verdict check(UUID tradeId, int version) {
+            Key key = new Key(tradeId, version);
+            if (!bloom.mightContain(key)) return Verdict.NEW;
+            return recent.get(key) != null ? Verdict.SEEN : Verdict.MAYBE;
+        }
+
+        synchronized void add(UUID tradeId, int version) {
+            Key key = new Key(tradeId, version);
+            if (recent.put(key, Boolean.TRUE) != null) return;
+            // A saturated Bloom filter answers maybe to everything, start over from what the exact set still holds
+            if (++inserted > expectedInsertions) {
+                bloom = new BloomFilter(expectedInsertions, falsePositiveRate);
+                recent.keySet().forEach(bloom::put);
+                inserted = recent.size();
+                return;
+            }
+            bloom.put(key);
+        }
+    }
+
+    private record Key(UUID tradeId, int version) {
+    }
+
+    // Double hashing over a 128-bit mix of the key, see Kirsch and Mitzenmacher
+    private static final class BloomFilter {
+
+        private final long[] bits;
+        private final int bitCount;
+        private final int hashCount;
+
+        BloomFilter(int expectedInsertions, double falsePositiveRate) {
+            long m = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            this.bitCount = (int) Math.max(64, Math.min(m, Integer.MAX_VALUE - 63));
+            this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedInsertions * Math.log(2)));
+            this.bits = new long[(bitCount + 63) >>> 6];
+        }
+
+        void put(Key key) {
+            long h1 = h1(key);
+            long h2 = h2(key);
+            for (int i = 0; i < hashCount; i++) {
+                int bit = index(h1 + i * h2);
+                bits[bit >>> 6] |= 1L << bit;
+            }
+        }
+
+        boolean mightContain(Key key) {
+            long h1 = h1(key);
+            long h2 = h2(key);
+            for (int i = 0; i < hashCount; i++) {
+                int bit = index(h1 + i * h2);
+                if ((bits[bit >>> 6] & (1L << bit)) == 0) return false;
+            }
+            return true;
+        }
+
+        private int index(long hash) {
+            return (int) Long.remainderUnsigned(hash, bitCount);
+        }
+
+        private static long h1(Key key) {
+            return mix(key.tradeId().getMostSignificantBits() ^ (key.version() * 0x9E3779B97F4A7C15L));
+        }
+
+        private static long h2(Key key) {
+            return mix(key.tradeId().getLeastSignificantBits() + key.version()) | 1L;
+        }
+
+        // Stafford variant 13 of the MurmurHash3 finaliser
+        private static long mix(long z) {
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            return z ^ (z >>> 31);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.db.stream;
+
+import com.db.dto.TradeDto;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Deserializer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reads trades in either wire format. The format header decides when present; records from producers that
+ * predate it, or from the String outbox relay, are recognised by the binary magic byte and otherwise read as JSON.
+ */
+public class TradeDeserializer implements Deserializer<TradeDto> {
+
+    private static final byte[] BINARY = TradeWireFormat.BINARY.name().getBytes(StandardCharsets.US_ASCII);
+
+    private final ObjectReader reader;
+
+    public TradeDeserializer(ObjectReader reader) {
+        this.reader = reader;
+    }
+
+    @Override
+    public TradeDto deserialize(String topic, Headers headers, byte[] data) {
+        if (data == null) return null;
+        Header format = headers.lastHeader(TradeWireFormat.HEADER);
+        if (format != null) {
+            return Arrays.equals(format.value(), BINARY) ? TradeBinaryCodec.decode(data) : readJson(data);
+        }
+        return deserialize(topic, data);
+    }
+
+    @Override
+    public TradeDto deserialize(String topic, byte[] data) {
+        if (data == null) return null;
+        return TradeBinaryCodec.isBinary(data) ? TradeBinaryCodec.decode(data) : readJson(data);
+    }
+
+    // Parses the record bytes in place, no intermediate String is built
+    private TradeDto readJson(byte[] data) {
+        try {
+            return reader.readValue(data);
+        } catch (IOException e) {
+            throw new SerializationException("Failed to deserialize trade JSON", e);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.db.stream;
+
+import com.db.dto.TradeDto;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Sends dead-lettered trades back to the trade topic, for use once the cause was fixed. Progress is kept as
+ * committed offsets of a dedicated consumer group, so each dead letter is replayed once; offsets are only
+ * committed after every resend was acknowledged. Messages that still cannot be decoded are skipped. A replay
+ * reads until it reaches the end offsets it started from or replay-timeout is up, whatever the first polls of
+ * a fresh group return.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TradeDltReplayer {
+
+    private final ConsumerFactory<String, TradeDto> consumerFactory;
+    private final KafkaTemplate<String, TradeDto> tradeKafkaTemplate;
+
+    @Value("${app.kafka.topic:trades}")
+    private String tradeTopic = "trades";
+    @Value("${app.kafka.retry.replay-group:trade-dlt-replay}")
+    private String replayGroup = "trade-dlt-replay";
+    @Value("${app.kafka.retry.replay-timeout:30s}")
+    private Duration replayTimeout = Duration.ofSeconds(30);
+    @Value("${app.outbox.send-timeout:10s}")
+    private Duration sendTimeout = Duration.ofSeconds(10);
+
+    private static final long POLL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    public record Result(int replayed, int skipped) {
+    }
+
+    // Replays at most limit dead letters, oldest first within each partition
+    public synchronized Result replay(int limit) throws ExecutionException, InterruptedException, TimeoutException {
+        if (limit <= 0) return new Result(0, 0);
+        String dltTopic = tradeTopic + "-dlt";
+        // Offsets are committed by hand once the resends are acknowledged, never by the client on its own
+        Properties overrides = new Properties();
+        overrides.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
+        overrides.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, String.valueOf(Math.min(limit, 500)));
+        try (Consumer<String, TradeDto> consumer = consumerFactory.createConsumer(replayGroup, null, null, overrides)) {
+            List<TopicPartition> partitions = new ArrayList<>();
+            for (PartitionInfo info : consumer.partitionsFor(dltTopic)) {
+                partitions.add(new TopicPartition(dltTopic, info.partition()));
+            }
+            consumer.assign(partitions);
+            // Records failing again while the replay runs land behind these offsets and wait for the next one
+            Map<TopicPartition, Long> endOffsets = consumer.endOffsets(partitions);
+
+            Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+            List<CompletableFuture<?>> sends = new ArrayList<>();
+            int replayed = 0;
+            int skipped = 0;
+            int remaining = limit;
+            long deadline = System.nanoTime() + replayTimeout.toNanos();
+            while (remaining > 0 && !caughtUp(consumer, endOffsets)) {
+                // An empty poll only means the group is still joining or fetching, the end offsets say what is left
+                long left = deadline - System.nanoTime();
+                if (left <= 0) {
+                    log.warn("Dead letter replay stopped after {}, the rest is left for the next replay", replayTimeout);
+                    break;
+                }
+                ConsumerRecords<String, TradeDto> records = consumer.poll(Duration.ofNanos(Math.min(left, POLL_NANOS)));
+                for (ConsumerRecord<String, TradeDto> record : records) {
+                    TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+                    if (remaining == 0 || record.offset() >= endOffsets.get(partition)) continue;
+                    if (record.value() == null) {
+                        skipped++;
+                    } else {
+                        sends.add(tradeKafkaTemplate.send(tradeTopic, record.key(), record.value()));
+                        replayed++;
+                    }
+                    remaining--;
+                    offsets.put(partition, new OffsetAndMetadata(record.offset() + 1));
+                }
+            }
+
+            CompletableFuture.allOf(sends.toArray(new CompletableFuture[0]))
+                    .get(sendTimeout.toMillis(), TimeUnit.MILLISECONDS);
+            if (!offsets.isEmpty()) consumer.commitSync(offsets);
+            log.info("Replayed {} dead-lettered trades to {}, skipped {} undecodable", replayed, tradeTopic, skipped);
+            return new Result(replayed, skipped);
+        }
+    }
+
+    private static boolean caughtUp(Consumer<?, ?> consumer, Map<TopicPartition, Long> endOffsets) {
+        for (Map.Entry<TopicPartition, Long> end : endOffsets.entrySet()) {
+            if (consumer.position(end.getKey()) < end.getValue()) return false;
+        }
+        return true;
+    }
+}
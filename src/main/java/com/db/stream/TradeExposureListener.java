@@ -0,0 +1,82 @@
+package com.db.stream;
+
+import com.db.dto.TradeEvent;
+import com.db.model.Trade;
+import com.db.service.TradeExposureStore;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Feeds {@link TradeExposureStore} from the trade-events topic, where the outbox relay publishes every write and
+ * every expiry committed on any node, keyed by tradeId so the events of one trade arrive in commit order. Each
+ * node reads every partition in a consumer group of its own, starting from the end of the topic.
+ *
+ * <p>The store is rebuilt from the database once the start offsets are known: a trade committed after that is
+ * published beyond them, one committed before is already in the database when the rebuild reads it.
+ */
+@Slf4j
+@Component
+public class TradeExposureListener implements ConsumerAwareRebalanceListener {
+
+    private final TradeExposureStore tradeExposureStore;
+    private final String groupId;
+    private final AtomicBoolean rebuildStarted = new AtomicBoolean();
+
+    public TradeExposureListener(TradeExposureStore tradeExposureStore,
+                                 @Value("${app.exposure.group-id-prefix:trade-exposure}") String groupIdPrefix) {
+        this.tradeExposureStore = tradeExposureStore;
+        // A group per process, so every node gets every event; groups of stopped nodes expire with their offsets
+        this.groupId = groupIdPrefix + "-" + UUID.randomUUID();
+    }
+
+    public String getGroupId() {
+        return groupId;
+    }
+
+    @KafkaListener(id = "tradeExposureListener", topics = "${app.outbox.topic:trade-events}",
+            groupId = "#{__listener.groupId}", containerFactory = "exposureListenerContainerFactory")
+    public void onTradeEvents(List<ConsumerRecord<String, TradeEvent>> records) {
+        for (ConsumerRecord<String, TradeEvent> record : records) {
+            TradeEvent event = record.value();
+            // Undecodable records arrive as null values
+            if (event == null || event.tradeId() == null || event.type() == null) continue;
+            Trade trade = Trade.builder()
+                    .tradeId(event.tradeId())
+                    .version(event.version())
+                    .counterPartyId(event.counterPartyId())
+                    .bookId(event.bookId())
+                    .maturityDate(event.maturityDate())
+                    .expired(event.type() == TradeEvent.Type.EXPIRED)
+                    .build();
+            if (trade.isExpired()) {
+                tradeExposureStore.expire(trade);
+            } else {
+                tradeExposureStore.apply(trade);
+            }
+        }
+    }
+
+    @Override
+    public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        // Resolves the start offsets now, before the rebuild reads, so no committed trade falls between the two
+        partitions.forEach(consumer::position);
+        if (!rebuildStarted.compareAndSet(false, true)) return;
+
+        // Off the consumer thread, which keeps applying events while the rebuild runs
+        Thread rebuild = new Thread(tradeExposureStore::rebuild, "exposure-rebuild");
+        rebuild.setDaemon(true);
+        rebuild.start();
+        log.info("Reading trade events for exposures from {} in group {}", partitions, groupId);
+    }
+}
@@ -0,0 +1,89 @@
+package com.db.stream;
+
+import com.db.model.TradeOutbox;
+import com.db.repository.TradeOutboxRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Publishes outbox messages to Kafka. Each batch is locked, sent keyed and in id order, and marked sent in
+ * one transaction once every send was acknowledged. A failed batch rolls back and is sent again on the next
+ * poll, so delivery is at-least-once and consumers must tolerate duplicates.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TradeOutboxRelay {
+
+    private final TradeOutboxRepository tradeOutboxRepository;
+    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${app.outbox.batch-size:500}")
+    private int batchSize = 500;
+    @Value("${app.outbox.send-timeout:10s}")
+    private Duration sendTimeout = Duration.ofSeconds(10);
+    @Value("${app.outbox.retention:1d}")
+    private Duration retention = Duration.ofDays(1);
+
+    @Scheduled(fixedDelayString = "${app.outbox.poll-interval:200ms}")
+    public void relay() {
+        try {
+            Integer sent;
+            do {
+                sent = transactionTemplate.execute(status -> relayBatch());
+            } while (sent != null && sent == batchSize);
+        } catch (Exception e) {
+            log.warn("Outbox relay failed, unsent messages are retried on the next poll: {}", e.toString());
+        }
+    }
+
+    // Returns the number of messages published
+    public int relayBatch() {
+        List<TradeOutbox> batch = tradeOutboxRepository.findUnsent(Limit.of(batchSize));
+        if (batch.isEmpty()) return 0;
+
+        // Sends are pipelined, the idempotent producer keeps them in order per partition
+        List<CompletableFuture<?>> sends = new ArrayList<>(batch.size());
+        List<Long> ids = new ArrayList<>(batch.size());
+        for (TradeOutbox message : batch) {
+            sends.add(kafkaTemplate.send(message.getTopic(), message.getMessageKey(), message.getPayload()));
+            ids.add(message.getId());
+        }
+        try {
+            CompletableFuture.allOf(sends.toArray(CompletableFuture[]::new))
+                    .get(sendTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while publishing outbox batch", e);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new IllegalStateException("Failed to publish outbox batch of " + batch.size(), e);
+        }
+
+        tradeOutboxRepository.markSent(ids, Instant.now());
+        log.debug("Relayed {} outbox messages up to id {}", batch.size(), ids.get(ids.size() - 1));
+        return batch.size();
+    }
+
+    @Scheduled(fixedDelayString = "${app.outbox.purge-interval:1h}")
+    public void purgeSent() {
+        Integer purged = transactionTemplate.execute(status ->
+                tradeOutboxRepository.deleteSentBefore(Instant.now().minus(retention)));
+        log.info("Purged {} sent outbox messages", purged);
+    }
+}
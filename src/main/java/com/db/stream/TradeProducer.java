@@ -1,8 +1,6 @@
 package com.db.stream;
 
 import com.db.dto.TradeDto;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -14,20 +12,17 @@ import org.springframework.stereotype.Component;
 @RequiredArgsConstructor
 public class TradeProducer {
 
-    private final KafkaTemplate<String, String> kafkaTemplate;
-    private final ObjectMapper objectMapper;
+    // Serialises with TradeSerializer in the configured wire format
+    private final KafkaTemplate<String, TradeDto> tradeKafkaTemplate;
 
     @Value("${app.kafka.topic:trades}")
     private String tradeTopic;
 
     public void publishTrade(TradeDto dto, String topicName) {
-        try {
-            String json = objectMapper.writeValueAsString(dto);
-            kafkaTemplate.send(topicName, json);
-            log.info("Published trade: {} for topic {}", dto.getTradeId(),tradeTopic);
-        } catch (JsonProcessingException e) {
-            log.error("Failed to serialize trade for Kafka", e);
-        }
+        // Keyed by tradeId so every version of a trade lands on the same partition in order
+        String key = dto.getTradeId() == null ? null : dto.getTradeId().toString();
+        tradeKafkaTemplate.send(topicName, key, dto);
+        log.debug("Published trade: {} for topic {}", dto.getTradeId(), topicName);
     }
 
     public void publishTrade(TradeDto dto) {
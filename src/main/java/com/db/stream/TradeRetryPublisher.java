@@ -0,0 +1,28 @@
+package com.db.stream;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.retrytopic.DeadLetterPublishingRecovererFactory;
+import org.springframework.kafka.retrytopic.DestinationTopicResolver;
+import org.springframework.stereotype.Component;
+
+/**
+ * Forwards records the batch and parallel listeners failed on into the retry topics of the record listener,
+ * so they get the same delayed attempts, or go straight to the dead-letter topic when the failure is not
+ * retryable, without holding up the rest of the poll. Failure metadata is added as headers on the way.
+ */
+@Component
+public class TradeRetryPublisher {
+
+    private final DeadLetterPublishingRecoverer recoverer;
+
+    public TradeRetryPublisher(DestinationTopicResolver destinationTopicResolver) {
+        this.recoverer = new DeadLetterPublishingRecovererFactory(destinationTopicResolver)
+                .create(TradeConsumer.LISTENER_ID);
+    }
+
+    // Blocks until the forwarded record is acknowledged, throws if it could not be sent
+    public void publish(ConsumerRecord<?, ?> record, Exception cause) {
+        recoverer.accept(record, cause);
+    }
+}
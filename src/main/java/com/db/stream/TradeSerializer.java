@@ -0,0 +1,45 @@
+package com.db.stream;
+
+import com.db.dto.TradeDto;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.nio.charset.StandardCharsets;
+
+// Writes trades in the configured wire format and names it in the record header
+public class TradeSerializer implements Serializer<TradeDto> {
+
+    private final ObjectWriter writer;
+    private final TradeWireFormat format;
+    private final byte[] formatHeader;
+
+    public TradeSerializer(ObjectWriter writer, TradeWireFormat format) {
+        this.writer = writer;
+        this.format = format;
+        this.formatHeader = format.name().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    public byte[] serialize(String topic, Headers headers, TradeDto data) {
+        if (data == null) return null;
+        headers.remove(TradeWireFormat.HEADER);
+        headers.add(TradeWireFormat.HEADER, formatHeader);
+        return serialize(topic, data);
+    }
+
+    @Override
+    public byte[] serialize(String topic, TradeDto data) {
+        if (data == null) return null;
+        if (format == TradeWireFormat.BINARY) {
+            return TradeBinaryCodec.encode(data);
+        }
+        try {
+            return writer.writeValueAsBytes(data);
+        } catch (JsonProcessingException e) {
+            throw new SerializationException("Failed to serialize trade " + data.getTradeId(), e);
+        }
+    }
+}
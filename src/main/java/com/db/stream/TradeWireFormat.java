@@ -0,0 +1,13 @@
+package com.db.stream;
+
+/**
+ * Encodings a {@link com.db.dto.TradeDto} can travel in on Kafka. Producers pick one through
+ * {@code app.kafka.wire-format} and name it in the {@link #HEADER} record header; consumers accept both,
+ * so consumers are upgraded first and producers switched afterwards.
+ */
+public enum TradeWireFormat {
+    JSON,
+    BINARY;
+
+    public static final String HEADER = "trade-format";
+}
@@ -0,0 +1,28 @@
+-- Schema as ddl-auto: update left it, existing databases are baselined at this version instead of running it
+CREATE TABLE IF NOT EXISTS trades (
+    trade_id         UUID         NOT NULL PRIMARY KEY,
+    version          INTEGER      NOT NULL,
+    counter_party_id VARCHAR(255),
+    book_id          VARCHAR(255),
+    maturity_date    DATE,
+    created_date     DATE,
+    expired          BOOLEAN      NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS trade_outbox (
+    id          BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    topic       VARCHAR(255),
+    message_key VARCHAR(255),
+    payload     VARCHAR(4000),
+    created_at  TIMESTAMP(6) WITH TIME ZONE,
+    sent_at     TIMESTAMP(6) WITH TIME ZONE
+);
+
+CREATE INDEX IF NOT EXISTS idx_trade_outbox_unsent ON trade_outbox (sent_at, id);
+
+CREATE TABLE IF NOT EXISTS job_leases (
+    name         VARCHAR(255) NOT NULL PRIMARY KEY,
+    owner        VARCHAR(255),
+    locked_at    TIMESTAMP(6) WITH TIME ZONE,
+    locked_until TIMESTAMP(6) WITH TIME ZONE
+);
@@ -0,0 +1,14 @@
+-- Built concurrently so trade writes carry on meanwhile, which is why this script runs outside a transaction
+
+-- Lookups by book and counterparty, paged by tradeId. The remaining columns are carried in the index so the
+-- query API is answered by index-only scans.
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_trades_book_counterparty
+    ON trades (book_id, counter_party_id, trade_id)
+    INCLUDE (version, maturity_date, created_date, expired);
+
+-- Live trades by maturity date, paged by (maturity_date, trade_id). Expired trades are never asked for by
+-- date and are left out, which keeps the index to the open book.
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_trades_live_maturity
+    ON trades (maturity_date, trade_id)
+    INCLUDE (version, counter_party_id, book_id, created_date, expired)
+    WHERE NOT expired;
@@ -0,0 +1,115 @@
+-- trades becomes range partitioned by maturity date: one partition per month from the current one, trades_past
+-- below it and trades_future above the last month created. Every row is copied over while the table is locked,
+-- so run this migration in a quiet period.
+
+ALTER TABLE trades RENAME TO trades_unpartitioned;
+ALTER TABLE trades_unpartitioned RENAME CONSTRAINT trades_pkey TO trades_unpartitioned_pkey;
+DROP INDEX IF EXISTS idx_trades_book_counterparty;
+DROP INDEX IF EXISTS idx_trades_live_maturity;
+
+-- A partitioned table can only enforce keys that contain the partition key, so tradeId on its own is kept
+-- unique by upsert_trade and the batch writers locking each tradeId before writing it
+CREATE TABLE trades (
+    trade_id         UUID         NOT NULL,
+    version          INTEGER      NOT NULL,
+    counter_party_id VARCHAR(255),
+    book_id          VARCHAR(255),
+    maturity_date    DATE         NOT NULL,
+    created_date     DATE,
+    expired          BOOLEAN      NOT NULL,
+    PRIMARY KEY (trade_id, maturity_date)
+) PARTITION BY RANGE (maturity_date);
+
+-- Creates the monthly partitions up to and including the month of through. Long-dated trades already in
+-- trades_future for those months are moved into them before trades_future is attached again above the last one.
+-- The ISO date style keeps the bound printed by pg_get_expr parseable whatever the session uses.
+CREATE OR REPLACE FUNCTION ensure_trade_partitions(through DATE) RETURNS INTEGER LANGUAGE plpgsql
+    SET datestyle = 'ISO, YMD' AS $$
+DECLARE
+    horizon DATE;
+    target  DATE := (date_trunc('month', through) + INTERVAL '1 month')::date;
+    created INTEGER := 0;
+BEGIN
+    SELECT substring(pg_get_expr(c.relpartbound, c.oid) FROM 'FROM \(''([0-9-]+)''\)')::date INTO horizon
+    FROM pg_class c WHERE c.oid = 'trades_future'::regclass;
+    IF horizon >= target THEN
+        RETURN 0;
+    END IF;
+
+    ALTER TABLE trades DETACH PARTITION trades_future;
+    WHILE horizon < target LOOP
+        EXECUTE format('CREATE TABLE %I PARTITION OF trades FOR VALUES FROM (%L) TO (%L)',
+                'trades_' || to_char(horizon, 'YYYY_MM'), horizon, (horizon + INTERVAL '1 month')::date);
+        horizon := (horizon + INTERVAL '1 month')::date;
+        created := created + 1;
+    END LOOP;
+
+    WITH moved AS (DELETE FROM trades_future WHERE maturity_date < target RETURNING *)
+    INSERT INTO trades SELECT * FROM moved;
+    -- Proves the new bound up front, so attaching does not scan trades_future again
+    EXECUTE format('ALTER TABLE trades_future ADD CONSTRAINT trades_future_bound CHECK (maturity_date >= %L)', target);
+    EXECUTE format('ALTER TABLE trades ATTACH PARTITION trades_future FOR VALUES FROM (%L) TO (MAXVALUE)', target);
+    ALTER TABLE trades_future DROP CONSTRAINT trades_future_bound;
+    RETURN created;
+END $$;
+
+DO $$
+DECLARE
+    this_month DATE := date_trunc('month', current_date)::date;
+BEGIN
+    EXECUTE format('CREATE TABLE trades_past PARTITION OF trades FOR VALUES FROM (MINVALUE) TO (%L)', this_month);
+    EXECUTE format('CREATE TABLE trades_future PARTITION OF trades FOR VALUES FROM (%L) TO (MAXVALUE)', this_month);
+    PERFORM ensure_trade_partitions((this_month + INTERVAL '24 months')::date);
+END $$;
+
+INSERT INTO trades (trade_id, version, counter_party_id, book_id, maturity_date, created_date, expired)
+SELECT trade_id, version, counter_party_id, book_id, maturity_date, created_date, expired FROM trades_unpartitioned;
+DROP TABLE trades_unpartitioned;
+
+-- Created on the parent, so every partition, present and future, gets its own copy
+CREATE INDEX idx_trades_book_counterparty
+    ON trades (book_id, counter_party_id, trade_id)
+    INCLUDE (version, maturity_date, created_date, expired);
+
+CREATE INDEX idx_trades_live_maturity
+    ON trades (maturity_date, trade_id)
+    INCLUDE (version, counter_party_id, book_id, created_date, expired)
+    WHERE NOT expired;
+
+-- Inserts the trade or amends the stored one if its version is not higher, moving the row to another partition
+-- when the maturity date changes. Returns the stored createdDate, or null when a higher version exists.
+CREATE OR REPLACE FUNCTION upsert_trade(p_trade_id UUID, p_version INTEGER, p_counter_party_id VARCHAR,
+                                        p_book_id VARCHAR, p_maturity_date DATE, p_created_date DATE)
+    RETURNS DATE LANGUAGE plpgsql AS $$
+DECLARE
+    stored DATE;
+BEGIN
+    PERFORM pg_advisory_xact_lock(hashtextextended(p_trade_id::text, 0));
+
+    UPDATE trades SET version = p_version, counter_party_id = p_counter_party_id, book_id = p_book_id,
+                      maturity_date = p_maturity_date, expired = false
+    WHERE trade_id = p_trade_id AND version <= p_version
+    RETURNING created_date INTO stored;
+    IF FOUND THEN
+        RETURN stored;
+    END IF;
+    IF EXISTS (SELECT 1 FROM trades WHERE trade_id = p_trade_id) THEN
+        RETURN NULL;
+    END IF;
+
+    INSERT INTO trades (trade_id, version, counter_party_id, book_id, maturity_date, created_date, expired)
+    VALUES (p_trade_id, p_version, p_counter_party_id, p_book_id, p_maturity_date, p_created_date, false);
+    RETURN p_created_date;
+END $$;
+
+-- Every partition of trades with the exclusive upper bound of its range, null for trades_future, and whether an
+-- interrupted DETACH ... CONCURRENTLY left it pending
+CREATE OR REPLACE FUNCTION trade_partitions()
+    RETURNS TABLE (partition_name TEXT, upper_bound DATE, detach_pending BOOLEAN) LANGUAGE sql STABLE
+    SET datestyle = 'ISO, YMD' AS $$
+    SELECT c.relname::text,
+           substring(pg_get_expr(c.relpartbound, c.oid) FROM 'TO \(''([0-9-]+)''\)')::date,
+           i.inhdetachpending
+    FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid
+    WHERE i.inhparent = 'trades'::regclass
+$$;
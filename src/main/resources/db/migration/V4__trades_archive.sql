@@ -0,0 +1,11 @@
+-- Cold store for trades expired longer than app.archive.retention, moved out of trades by the nightly archive job.
+-- Not partitioned: rows are only added in bulk and read back one tradeId at a time.
+CREATE TABLE trades_archive (
+    trade_id         UUID         NOT NULL PRIMARY KEY,
+    version          INTEGER      NOT NULL,
+    counter_party_id VARCHAR(255),
+    book_id          VARCHAR(255),
+    maturity_date    DATE,
+    created_date     DATE,
+    archived_date    DATE         NOT NULL
+);
@@ -0,0 +1,38 @@
+-- upsert_trade looked the trade up by tradeId alone, which probes the primary key of every partition, twice for
+-- a new trade. Most amendments keep their maturity date, so the stored row is first looked for in the partition
+-- of the incoming one; only a new trade or a changed maturity date probes every partition, once.
+CREATE OR REPLACE FUNCTION upsert_trade(p_trade_id UUID, p_version INTEGER, p_counter_party_id VARCHAR,
+                                        p_book_id VARCHAR, p_maturity_date DATE, p_created_date DATE)
+    RETURNS DATE LANGUAGE plpgsql AS $$
+DECLARE
+    stored          DATE;
+    stored_version  INTEGER;
+    stored_maturity DATE;
+BEGIN
+    PERFORM pg_advisory_xact_lock(hashtextextended(p_trade_id::text, 0));
+
+    UPDATE trades SET version = p_version, counter_party_id = p_counter_party_id, book_id = p_book_id,
+                      expired = false
+    WHERE trade_id = p_trade_id AND maturity_date = p_maturity_date AND version <= p_version
+    RETURNING created_date INTO stored;
+    IF FOUND THEN
+        RETURN stored;
+    END IF;
+
+    SELECT version, maturity_date INTO stored_version, stored_maturity FROM trades WHERE trade_id = p_trade_id;
+    IF NOT FOUND THEN
+        INSERT INTO trades (trade_id, version, counter_party_id, book_id, maturity_date, created_date, expired)
+        VALUES (p_trade_id, p_version, p_counter_party_id, p_book_id, p_maturity_date, p_created_date, false);
+        RETURN p_created_date;
+    END IF;
+    IF stored_version > p_version THEN
+        RETURN NULL;
+    END IF;
+
+    -- Moves the row to the partition of the new maturity date
+    UPDATE trades SET version = p_version, counter_party_id = p_counter_party_id, book_id = p_book_id,
+                      maturity_date = p_maturity_date, expired = false
+    WHERE trade_id = p_trade_id AND maturity_date = stored_maturity
+    RETURNING created_date INTO stored;
+    RETURN stored;
+END $$;
@@ -1,24 +1,106 @@
 package com.db.config;
 
+import com.db.service.JobLeaseService;
+import com.db.service.TradeArchiveService;
+import com.db.service.TradePartitionService;
 import com.db.service.TradeService;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
 
-import static org.mockito.Mockito.verify;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
 class TradeSchedulerTest {
     @Mock
     private TradeService tradeService;
+    @Mock
+    private JobLeaseService jobLeaseService;
+    @Mock
+    private TradePartitionService tradePartitionService;
+    @Mock
+    private TradeArchiveService tradeArchiveService;
     @InjectMocks
     private TradeScheduler tradeScheduler;
 
     @Test
     void shouldCallMarkExpiredTradesOnSchedule() {
+        when(jobLeaseService.tryAcquire(TradeScheduler.EXPIRY_JOB)).thenReturn(true);
+
+        tradeScheduler.checkExpiredTrades();
+
+        verify(tradeService).markExpiredTrades(TradeService.MIN_TRADE_ID, TradeService.MAX_TRADE_ID);
+        verify(jobLeaseService).release(TradeScheduler.EXPIRY_JOB);
+    }
+
+    @Test
+    void shouldSkipWhenLeaseIsHeldByAnotherNode() {
+        when(jobLeaseService.tryAcquire(TradeScheduler.EXPIRY_JOB)).thenReturn(false);
+
+        tradeScheduler.checkExpiredTrades();
+
+        verify(tradeService, never()).markExpiredTrades(any(), any());
+        verify(jobLeaseService, never()).release(anyString());
+    }
+
+    @Test
+    void shouldOnlyRunRangesLeasedByThisNode() {
+        ReflectionTestUtils.setField(tradeScheduler, "expiryRanges", 4);
+        when(jobLeaseService.tryAcquire(anyString())).thenReturn(true, false, true, false);
+
         tradeScheduler.checkExpiredTrades();
-        verify(tradeService).markExpiredTrades();
+
+        ArgumentCaptor<UUID> lower = ArgumentCaptor.forClass(UUID.class);
+        ArgumentCaptor<UUID> upper = ArgumentCaptor.forClass(UUID.class);
+        verify(tradeService, times(2)).markExpiredTrades(lower.capture(), upper.capture());
+        verify(jobLeaseService).release(TradeScheduler.EXPIRY_JOB + "-0");
+        verify(jobLeaseService).release(TradeScheduler.EXPIRY_JOB + "-2");
+
+        // Range 0 starts at the minimum, range 2 covers the third quarter of the tradeId space
+        assertThat(lower.getAllValues().get(0)).isEqualTo(TradeService.MIN_TRADE_ID);
+        assertThat(lower.getAllValues().get(1)).isEqualTo(new UUID(0x7fffffffffffffffL - 1, 0L));
+        assertThat(upper.getAllValues().get(1)).isEqualTo(new UUID(0xbffffffffffffffdL, 0L));
+    }
+
+    @Test
+    void shouldReleaseLeaseWhenExpiryFails() {
+        when(jobLeaseService.tryAcquire(TradeScheduler.EXPIRY_JOB)).thenReturn(true);
+        when(tradeService.markExpiredTrades(any(), any())).thenThrow(new RuntimeException("DB down"));
+
+        assertThatThrownBy(() -> tradeScheduler.checkExpiredTrades()).hasMessage("DB down");
+
+        verify(jobLeaseService).release(TradeScheduler.EXPIRY_JOB);
+    }
+
+    @Test
+    void shouldMaintainPartitionsUnderLease() {
+        when(jobLeaseService.tryAcquire(TradeScheduler.PARTITION_JOB)).thenReturn(true, false);
+
+        tradeScheduler.maintainPartitions();
+        tradeScheduler.maintainPartitions();
+
+        verify(tradePartitionService, times(1)).maintainPartitions();
+        verify(jobLeaseService, times(1)).release(TradeScheduler.PARTITION_JOB);
+    }
+
+    @Test
+    void shouldArchiveTradesUnderLease() {
+        when(jobLeaseService.tryAcquire(TradeScheduler.ARCHIVE_JOB)).thenReturn(true, false);
+
+        tradeScheduler.archiveTrades();
+        tradeScheduler.archiveTrades();
+
+        verify(tradeArchiveService, times(1)).archiveExpiredTrades();
+        verify(jobLeaseService, times(1)).release(TradeScheduler.ARCHIVE_JOB);
     }
 }
@@ -1,32 +1,58 @@
 package com.db.controller;
 
+import com.db.config.JacksonConfig;
 import com.db.dto.TradeDto;
+import com.db.dto.TradeExposure;
+import com.db.dto.TradeView;
 import com.db.exception.InvalidTradeException;
 import com.db.model.Trade;
+import com.db.service.TradeBatchService;
+import com.db.service.TradeExposureStore;
 import com.db.service.TradeService;
+import com.db.service.TradeTracer;
+import com.db.stream.TradeDltReplayer;
 import com.db.stream.TradeProducer;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
 import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Consumer;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 @WebMvcTest(TradeController.class)
+@Import(JacksonConfig.class)
 class TradeControllerTest {
 
     @Autowired
@@ -38,6 +64,18 @@ class TradeControllerTest {
     @MockitoBean
     private TradeProducer tradeProducer;
 
+    @MockitoBean
+    private TradeBatchService tradeBatchService;
+
+    @MockitoBean
+    private TradeDltReplayer tradeDltReplayer;
+
+    @MockitoBean
+    private TradeTracer tradeTracer;
+
+    @MockitoBean
+    private TradeExposureStore tradeExposureStore;
+
     @Autowired
     private ObjectMapper objectMapper;
 
@@ -77,6 +115,29 @@ class TradeControllerTest {
                 .andExpect(jsonPath("$.expired").value(false));
     }
 
+    @Test
+    void shouldTraceTradeFromBindingToResponse() throws Exception {
+        TradeDto tradeDto = TradeDto.builder()
+                .tradeId(UUID.randomUUID())
+                .version(1)
+                .maturityDate(LocalDate.now().plusDays(30))
+                .build();
+        given(tradeService.saveTrade(any(TradeDto.class)))
+                .willThrow(new InvalidTradeException("Trade version is lower than existing version"));
+
+        mockMvc.perform(post("/api/trades")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(tradeDto)))
+                .andExpect(status().isBadRequest());
+
+        InOrder order = inOrder(tradeTracer, tradeService);
+        order.verify(tradeTracer).begin(TradeTracer.REST, 1);
+        order.verify(tradeTracer).stage(eq(TradeTracer.Stage.BIND), any(Long.class));
+        order.verify(tradeTracer).identify(argThat(dto -> dto.getTradeId().equals(tradeDto.getTradeId())));
+        order.verify(tradeService).saveTrade(any(TradeDto.class));
+        order.verify(tradeTracer).end(0);
+    }
+
     @Test
     void shouldReturn400WhenValidationFails() throws Exception {
         // Given
@@ -145,6 +206,29 @@ class TradeControllerTest {
                 .andExpect(jsonPath("$.error").value("Internal Error"));
     }
 
+    @Test
+    void shouldReturn503WhenDatabaseBulkheadIsFull() throws Exception {
+        // Given
+        TradeDto tradeDto = TradeDto.builder()
+                .tradeId(UUID.randomUUID())
+                .version(1)
+                .bookId("B1")
+                .counterPartyId("CP1")
+                .maturityDate(LocalDate.now().plusDays(30))
+                .build();
+
+        given(tradeService.saveTrade(any(TradeDto.class)))
+                .willThrow(BulkheadFullException.createBulkheadFullException(Bulkhead.ofDefaults("database")));
+
+        // When & Then
+        mockMvc.perform(post("/api/trades")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(tradeDto)))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "1"))
+                .andExpect(jsonPath("$.error").value("Service Unavailable"));
+    }
+
     @Test
     void shouldReturnAllTradesSuccessfully() throws Exception {
         // Given
@@ -169,11 +253,12 @@ class TradeControllerTest {
                         .build()
         );
 
-        given(tradeService.getAllTrades()).willReturn(trades);
+        given(tradeService.getTrades(null, 100)).willReturn(trades);
 
         // When & Then
         mockMvc.perform(get("/api/trades"))
                 .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("X-Next-Cursor"))
                 .andExpect(jsonPath("$.length()").value(2))
                 .andExpect(jsonPath("$[0].bookId").value("B1"))
                 .andExpect(jsonPath("$[1].bookId").value("B2"))
@@ -184,7 +269,7 @@ class TradeControllerTest {
     @Test
     void shouldReturnEmptyListWhenNoTrades() throws Exception {
         // Given
-        given(tradeService.getAllTrades()).willReturn(Arrays.asList());
+        given(tradeService.getTrades(null, 100)).willReturn(Arrays.asList());
 
         // When & Then
         mockMvc.perform(get("/api/trades"))
@@ -251,4 +336,197 @@ class TradeControllerTest {
                         .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isBadRequest());
     }
-}
\ No newline at end of file
+
+    @Test
+    void shouldStreamBatchResultsForNdjson() throws Exception {
+        // Given - echo the request body back so the streamed response can be checked
+        doAnswer(invocation -> {
+            InputStream in = invocation.getArgument(0);
+            OutputStream out = invocation.getArgument(1);
+            in.transferTo(out);
+            return null;
+        }).when(tradeBatchService).ingest(any(InputStream.class), any(OutputStream.class), eq(true));
+
+        String body = "{\"tradeId\":\"" + UUID.randomUUID() + "\",\"version\":1}\n";
+
+        // When
+        MvcResult result = mockMvc.perform(post("/api/trades/batch")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content(body.getBytes(StandardCharsets.UTF_8)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // Then
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(content().string(body));
+    }
+
+    @Test
+    void shouldRejectBatchWithUnsupportedContentType() throws Exception {
+        mockMvc.perform(post("/api/trades/batch")
+                        .contentType(MediaType.TEXT_PLAIN)
+                        .content("trades"))
+                .andExpect(status().isUnsupportedMediaType());
+    }
+
+    @Test
+    void shouldReturnNextCursorWhenPageIsFull() throws Exception {
+        // Given
+        UUID after = UUID.randomUUID();
+        UUID last = UUID.randomUUID();
+        List<Trade> page = List.of(
+                Trade.builder().tradeId(UUID.randomUUID()).version(1).bookId("B1").build(),
+                Trade.builder().tradeId(last).version(1).bookId("B2").build());
+
+        given(tradeService.getTrades(after, 2)).willReturn(page);
+
+        // When & Then
+        mockMvc.perform(get("/api/trades")
+                        .param("after", after.toString())
+                        .param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Next-Cursor", last.toString()))
+                .andExpect(jsonPath("$.length()").value(2));
+    }
+
+    @Test
+    void shouldReturnTradeById() throws Exception {
+        // Given
+        UUID tradeId = UUID.randomUUID();
+        given(tradeService.getTrade(tradeId)).willReturn(Optional.of(
+                new TradeView(tradeId, 2, "CP1", "B1", LocalDate.now().plusDays(30), LocalDate.now(), false)));
+
+        // When & Then
+        mockMvc.perform(get("/api/trades/{tradeId}", tradeId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.tradeId").value(tradeId.toString()))
+                .andExpect(jsonPath("$.version").value(2))
+                .andExpect(jsonPath("$.bookId").value("B1"));
+    }
+
+    @Test
+    void shouldReturn404WhenTradeNotFound() throws Exception {
+        // Given
+        UUID tradeId = UUID.randomUUID();
+        given(tradeService.getTrade(tradeId)).willReturn(Optional.empty());
+
+        // When & Then
+        mockMvc.perform(get("/api/trades/{tradeId}", tradeId))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void shouldSearchByBookAndCounterPartyWithCursor() throws Exception {
+        // Given
+        UUID last = UUID.randomUUID();
+        given(tradeService.findTrades("B1", "CP1", null, 1)).willReturn(List.of(
+                new TradeView(last, 1, "CP1", "B1", LocalDate.now().plusDays(30), LocalDate.now(), false)));
+
+        // When & Then
+        mockMvc.perform(get("/api/trades/search")
+                        .param("bookId", "B1")
+                        .param("counterPartyId", "CP1")
+                        .param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Next-Cursor", last.toString()))
+                .andExpect(jsonPath("$[0].tradeId").value(last.toString()));
+    }
+
+    @Test
+    void shouldReturnMaturityCursorWhenPageIsFull() throws Exception {
+        // Given
+        LocalDate from = LocalDate.now().plusDays(1);
+        LocalDate to = from.plusMonths(1);
+        LocalDate afterMaturity = from.plusDays(3);
+        UUID after = UUID.randomUUID();
+        UUID last = UUID.randomUUID();
+        LocalDate lastMaturity = from.plusDays(4);
+        given(tradeService.findMaturingTrades(from, to, afterMaturity, after, 1)).willReturn(List.of(
+                new TradeView(last, 1, "CP1", "B1", lastMaturity, LocalDate.now(), false)));
+
+        // When & Then
+        mockMvc.perform(get("/api/trades/maturing")
+                        .param("from", from.toString())
+                        .param("to", to.toString())
+                        .param("afterMaturity", afterMaturity.toString())
+                        .param("after", after.toString())
+                        .param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Next-Maturity", lastMaturity.toString()))
+                .andExpect(header().string("X-Next-Cursor", last.toString()));
+    }
+
+    @Test
+    void shouldServeExposureFromStore() throws Exception {
+        // Given
+        LocalDate maturingBy = LocalDate.now().plusDays(30);
+        given(tradeExposureStore.isReady()).willReturn(true);
+        given(tradeExposureStore.getExposure("B1", "CP-1"))
+                .willReturn(new TradeExposure("B1", "CP-1", 12, 3, maturingBy));
+
+        // When & Then
+        mockMvc.perform(get("/api/trades/exposure")
+                        .param("bookId", "B1")
+                        .param("counterPartyId", "CP-1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.activeTrades").value(12))
+                .andExpect(jsonPath("$.maturingTrades").value(3))
+                .andExpect(jsonPath("$.maturingBy").value(maturingBy.toString()));
+        verifyNoInteractions(tradeService);
+    }
+
+    @Test
+    void shouldReturn503WhileExposuresAreRebuilt() throws Exception {
+        // Given
+        given(tradeExposureStore.isReady()).willReturn(false);
+
+        // When & Then
+        mockMvc.perform(get("/api/trades/exposure")
+                        .param("bookId", "B1")
+                        .param("counterPartyId", "CP-1"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().exists("Retry-After"));
+        verify(tradeExposureStore, never()).getExposure(any(), any());
+    }
+
+    @Test
+    void shouldStreamAllTradesAsNdjson() throws Exception {
+        // Given
+        UUID tradeId1 = UUID.randomUUID();
+        UUID tradeId2 = UUID.randomUUID();
+        doAnswer(invocation -> {
+            Consumer<Trade> consumer = invocation.getArgument(0);
+            consumer.accept(Trade.builder().tradeId(tradeId1).version(1).bookId("B1").build());
+            consumer.accept(Trade.builder().tradeId(tradeId2).version(2).bookId("B2").build());
+            return null;
+        }).when(tradeService).streamTrades(any());
+
+        // When
+        MvcResult result = mockMvc.perform(get("/api/trades/stream"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // Then
+        String body = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andReturn().getResponse().getContentAsString();
+
+        String[] lines = body.split("\n");
+        assertThat(lines).hasSize(2);
+        assertThat(objectMapper.readValue(lines[0], Trade.class).getTradeId()).isEqualTo(tradeId1);
+        assertThat(objectMapper.readValue(lines[1], Trade.class).getTradeId()).isEqualTo(tradeId2);
+    }
+
+    @Test
+    void shouldReplayDeadLetters() throws Exception {
+        given(tradeDltReplayer.replay(50)).willReturn(new TradeDltReplayer.Result(48, 2));
+
+        mockMvc.perform(post("/api/trades/dlt/replay").param("limit", "50"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.replayed").value(48))
+                .andExpect(jsonPath("$.skipped").value(2));
+    }
+}
@@ -0,0 +1,49 @@
+package com.db.repository;
+
+import com.db.model.TradeOutbox;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@ActiveProfiles("test")
+class TradeOutboxRepositoryTest {
+
+    @Autowired
+    private TradeOutboxRepository tradeOutboxRepository;
+
+    @Test
+    void shouldReturnUnsentMessagesInInsertOrder() {
+        tradeOutboxRepository.append(List.of(message("a"), message("b"), message("c")));
+
+        List<TradeOutbox> first = tradeOutboxRepository.findUnsent(Limit.of(2));
+        assertThat(first).extracting(TradeOutbox::getMessageKey).containsExactly("a", "b");
+
+        tradeOutboxRepository.markSent(first.stream().map(TradeOutbox::getId).toList(), Instant.now());
+
+        assertThat(tradeOutboxRepository.findUnsent(Limit.of(2)))
+                .extracting(TradeOutbox::getMessageKey).containsExactly("c");
+    }
+
+    @Test
+    void shouldPurgeOnlyMessagesSentBeforeCutoff() {
+        tradeOutboxRepository.append(List.of(message("a"), message("b")));
+        List<TradeOutbox> unsent = tradeOutboxRepository.findUnsent(Limit.of(10));
+        tradeOutboxRepository.markSent(List.of(unsent.get(0).getId()), Instant.now().minus(2, ChronoUnit.DAYS));
+
+        assertThat(tradeOutboxRepository.deleteSentBefore(Instant.now().minus(1, ChronoUnit.DAYS))).isEqualTo(1);
+        assertThat(tradeOutboxRepository.findAll()).extracting(TradeOutbox::getMessageKey).containsExactly("b");
+    }
+
+    private TradeOutbox message(String key) {
+        return TradeOutbox.builder().topic("trade-events").messageKey(key).payload("{}").createdAt(Instant.now()).build();
+    }
+}
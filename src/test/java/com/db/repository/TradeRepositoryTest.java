@@ -1,14 +1,18 @@
 package com.db.repository;
 
+import com.db.dto.TradeView;
+import com.db.model.ArchivedTrade;
 import com.db.model.Trade;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.Limit;
 import org.springframework.test.context.ActiveProfiles;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -338,4 +342,306 @@ class TradeRepositoryTest {
                 .extracting(Trade::getTradeId)
                 .containsExactlyInAnyOrder(tradeId1, tradeId2);
     }
-}
\ No newline at end of file
+
+    @Test
+    void shouldBatchInsertAndUpdateTrades() {
+        // Given
+        Trade trade1 = Trade.builder()
+                .tradeId(tradeId1)
+                .version(1)
+                .bookId("BOOK1")
+                .counterPartyId("CP1")
+                .maturityDate(LocalDate.now().plusDays(30))
+                .createdDate(LocalDate.now().minusDays(1))
+                .expired(false)
+                .build();
+
+        Trade trade2 = Trade.builder()
+                .tradeId(tradeId2)
+                .version(1)
+                .bookId("BOOK2")
+                .counterPartyId("CP2")
+                .maturityDate(LocalDate.now().plusDays(60))
+                .createdDate(LocalDate.now())
+                .expired(false)
+                .build();
+
+        // When
+        tradeRepository.batchInsert(List.of(trade1, trade2));
+        trade1.setVersion(2);
+        trade1.setBookId("BOOK1_UPDATED");
+        trade1.setCreatedDate(LocalDate.now());
+        tradeRepository.batchUpdate(List.of(trade1));
+        entityManager.clear();
+
+        // Then
+        assertThat(tradeRepository.findAll()).hasSize(2);
+        Trade updated = tradeRepository.findById(tradeId1).orElseThrow();
+        assertThat(updated.getVersion()).isEqualTo(2);
+        assertThat(updated.getBookId()).isEqualTo("BOOK1_UPDATED");
+        // createdDate is only written on insert
+        assertThat(updated.getCreatedDate()).isEqualTo(LocalDate.now().minusDays(1));
+    }
+
+    @Test
+    void shouldUpsertOnlyWhenVersionIsNotLower() {
+        // Given
+        Trade trade = Trade.builder()
+                .tradeId(tradeId1)
+                .version(2)
+                .bookId("BOOK1")
+                .counterPartyId("CP1")
+                .maturityDate(LocalDate.now().plusDays(30))
+                .createdDate(LocalDate.now().minusDays(2))
+                .expired(false)
+                .build();
+
+        // When - insert, same version amendment, lower version and higher version
+        Optional<LocalDate> inserted = tradeRepository.upsert(trade);
+
+        trade.setBookId("BOOK1_SAME");
+        trade.setCreatedDate(LocalDate.now());
+        Optional<LocalDate> sameVersion = tradeRepository.upsert(trade);
+
+        trade.setVersion(1);
+        trade.setBookId("BOOK1_STALE");
+        Optional<LocalDate> lowerVersion = tradeRepository.upsert(trade);
+
+        trade.setVersion(3);
+        trade.setBookId("BOOK1_V3");
+        Optional<LocalDate> higherVersion = tradeRepository.upsert(trade);
+        entityManager.clear();
+
+        // Then
+        assertThat(inserted).contains(LocalDate.now().minusDays(2));
+        assertThat(sameVersion).contains(LocalDate.now().minusDays(2));
+        assertThat(lowerVersion).isEmpty();
+        assertThat(higherVersion).contains(LocalDate.now().minusDays(2));
+
+        Trade stored = tradeRepository.findById(tradeId1).orElseThrow();
+        assertThat(stored.getVersion()).isEqualTo(3);
+        assertThat(stored.getBookId()).isEqualTo("BOOK1_V3");
+        assertThat(stored.getCreatedDate()).isEqualTo(LocalDate.now().minusDays(2));
+    }
+
+    @Test
+    void shouldNotUpsertVersionBelowArchivedCopy() {
+        entityManager.persistAndFlush(ArchivedTrade.builder()
+                .tradeId(tradeId1)
+                .version(3)
+                .maturityDate(LocalDate.now().minusYears(1))
+                .archivedDate(LocalDate.now())
+                .build());
+        Trade trade = Trade.builder()
+                .tradeId(tradeId1)
+                .version(2)
+                .bookId("BOOK1")
+                .counterPartyId("CP1")
+                .maturityDate(LocalDate.now().plusDays(30))
+                .createdDate(LocalDate.now())
+                .build();
+
+        Optional<LocalDate> lowerVersion = tradeRepository.upsert(trade);
+        trade.setVersion(3);
+        Optional<LocalDate> archivedVersion = tradeRepository.upsert(trade);
+        entityManager.clear();
+
+        assertThat(lowerVersion).isEmpty();
+        assertThat(archivedVersion).contains(LocalDate.now());
+        assertThat(tradeRepository.findById(tradeId1)).get().extracting(Trade::getVersion).isEqualTo(3);
+    }
+
+    @Test
+    void shouldPageThroughTradesByTradeIdCursor() {
+        // Given
+        for (UUID id : List.of(tradeId1, tradeId2, tradeId3)) {
+            entityManager.persist(Trade.builder()
+                    .tradeId(id)
+                    .version(1)
+                    .bookId("BOOK1")
+                    .counterPartyId("CP1")
+                    .maturityDate(LocalDate.now().plusDays(30))
+                    .createdDate(LocalDate.now())
+                    .expired(false)
+                    .build());
+        }
+        entityManager.flush();
+
+        // When
+        List<Trade> firstPage = tradeRepository.findByOrderByTradeIdAsc(Limit.of(2));
+        List<Trade> secondPage = tradeRepository.findByTradeIdGreaterThanOrderByTradeIdAsc(
+                firstPage.get(1).getTradeId(), Limit.of(2));
+
+        // Then
+        assertThat(firstPage).hasSize(2);
+        assertThat(secondPage).hasSize(1);
+        List<UUID> seen = new ArrayList<>();
+        firstPage.forEach(trade -> seen.add(trade.getTradeId()));
+        secondPage.forEach(trade -> seen.add(trade.getTradeId()));
+        assertThat(seen).containsExactlyInAnyOrder(tradeId1, tradeId2, tradeId3);
+    }
+
+    @Test
+    void shouldStreamAllTradesInTradeIdOrder() {
+        // Given
+        for (UUID id : List.of(tradeId1, tradeId2, tradeId3)) {
+            entityManager.persist(Trade.builder()
+                    .tradeId(id)
+                    .version(1)
+                    .bookId("BOOK1")
+                    .counterPartyId("CP1")
+                    .maturityDate(LocalDate.now().plusDays(30))
+                    .createdDate(LocalDate.now())
+                    .expired(false)
+                    .build());
+        }
+        entityManager.flush();
+
+        // When
+        List<Trade> streamed = new ArrayList<>();
+        tradeRepository.streamAll(2, streamed::add);
+
+        // Then
+        assertThat(streamed)
+                .extracting(Trade::getTradeId)
+                .containsExactlyElementsOf(tradeRepository.findByOrderByTradeIdAsc(Limit.of(3))
+                        .stream().map(Trade::getTradeId).toList());
+        assertThat(streamed.get(0).getBookId()).isEqualTo("BOOK1");
+    }
+
+    @Test
+    void shouldSelectExpiryChunksAfterCursorAndMarkThemExpired() {
+        // Given
+        for (UUID id : List.of(tradeId1, tradeId2, tradeId3)) {
+            entityManager.persist(Trade.builder()
+                    .tradeId(id)
+                    .version(1)
+                    .bookId("BOOK1")
+                    .counterPartyId("CP1")
+                    .maturityDate(LocalDate.now().minusDays(1))
+                    .createdDate(LocalDate.now().minusDays(10))
+                    .expired(false)
+                    .build());
+        }
+        entityManager.flush();
+
+        // When
+        List<Trade> firstChunk = tradeRepository.findExpiryChunk(
+                LocalDate.now(), new UUID(0L, 0L), new UUID(-1L, -1L), Limit.of(2));
+        int updated = tradeRepository.markExpired(firstChunk.stream().map(Trade::getTradeId).toList(),
+                LocalDate.now());
+        List<Trade> secondChunk = tradeRepository.findExpiryChunk(
+                LocalDate.now(), firstChunk.get(1).getTradeId(), new UUID(-1L, -1L), Limit.of(2));
+
+        // Then
+        assertThat(firstChunk).hasSize(2);
+        assertThat(updated).isEqualTo(2);
+        assertThat(secondChunk).hasSize(1);
+        assertThat(tradeRepository.findByExpiredFalseAndMaturityDateBefore(LocalDate.now()))
+                .extracting(Trade::getTradeId)
+                .containsExactly(secondChunk.get(0).getTradeId());
+    }
+
+    @Test
+    void shouldLimitExpiryChunkToTradeIdRange() {
+        // Given
+        UUID low = new UUID(0x1000000000000000L, 0L);
+        UUID high = new UUID(0x7000000000000000L, 0L);
+        for (UUID id : List.of(low, high)) {
+            entityManager.persist(Trade.builder()
+                    .tradeId(id)
+                    .version(1)
+                    .bookId("BOOK1")
+                    .counterPartyId("CP1")
+                    .maturityDate(LocalDate.now().minusDays(1))
+                    .createdDate(LocalDate.now().minusDays(10))
+                    .expired(false)
+                    .build());
+        }
+        entityManager.flush();
+
+        // When
+        List<Trade> lowerRange = tradeRepository.findExpiryChunk(
+                LocalDate.now(), new UUID(0L, 0L), new UUID(0x4000000000000000L, 0L), Limit.of(10));
+        List<Trade> upperRange = tradeRepository.findExpiryChunk(
+                LocalDate.now(), new UUID(0x4000000000000000L, 0L), new UUID(-1L, -1L), Limit.of(10));
+
+        // Then
+        assertThat(lowerRange).extracting(Trade::getTradeId).containsExactly(low);
+        assertThat(upperRange).extracting(Trade::getTradeId).containsExactly(high);
+    }
+
+    @Test
+    void shouldProjectTradeById() {
+        // Given
+        entityManager.persistAndFlush(trade(tradeId1, "BOOK1", "CP1", LocalDate.now().plusDays(30), false));
+
+        // When
+        Optional<TradeView> found = tradeRepository.findViewById(tradeId1);
+        Optional<TradeView> missing = tradeRepository.findViewById(tradeId2);
+
+        // Then
+        assertThat(found).get().extracting(TradeView::bookId, TradeView::counterPartyId)
+                .containsExactly("BOOK1", "CP1");
+        assertThat(missing).isEmpty();
+    }
+
+    @Test
+    void shouldPageThroughBookAndCounterPartyByTradeId() {
+        // Given
+        UUID low = new UUID(0x1000000000000000L, 0L);
+        UUID mid = new UUID(0x2000000000000000L, 0L);
+        UUID high = new UUID(0x3000000000000000L, 0L);
+        entityManager.persist(trade(low, "BOOK1", "CP1", LocalDate.now().plusDays(30), false));
+        entityManager.persist(trade(mid, "BOOK1", "CP2", LocalDate.now().plusDays(30), false));
+        entityManager.persist(trade(high, "BOOK1", "CP1", LocalDate.now().plusDays(30), true));
+        entityManager.flush();
+
+        // When
+        List<TradeView> firstPage = tradeRepository.findViewsByBookAndCounterParty(
+                "BOOK1", "CP1", new UUID(0L, 0L), Limit.of(1));
+        List<TradeView> secondPage = tradeRepository.findViewsByBookAndCounterParty(
+                "BOOK1", "CP1", low, Limit.of(1));
+
+        // Then
+        assertThat(firstPage).extracting(TradeView::tradeId).containsExactly(low);
+        assertThat(secondPage).extracting(TradeView::tradeId).containsExactly(high);
+    }
+
+    @Test
+    void shouldPageThroughLiveTradesByMaturityThenTradeId() {
+        // Given
+        LocalDate from = LocalDate.now().plusDays(10);
+        UUID low = new UUID(0x1000000000000000L, 0L);
+        UUID high = new UUID(0x7000000000000000L, 0L);
+        entityManager.persist(trade(high, "BOOK1", "CP1", from, false));
+        entityManager.persist(trade(low, "BOOK1", "CP1", from.plusDays(1), false));
+        entityManager.persist(trade(tradeId1, "BOOK1", "CP1", from.plusDays(1), true));
+        entityManager.persist(trade(tradeId2, "BOOK1", "CP1", from.plusDays(5), false));
+        entityManager.flush();
+
+        // When
+        LocalDate to = from.plusDays(2);
+        List<TradeView> firstPage = tradeRepository.findLiveViewsByMaturity(
+                from, to, from, new UUID(0L, 0L), Limit.of(1));
+        TradeView last = firstPage.get(0);
+        List<TradeView> secondPage = tradeRepository.findLiveViewsByMaturity(
+                from, to, last.maturityDate(), last.tradeId(), Limit.of(10));
+
+        // Then
+        assertThat(firstPage).extracting(TradeView::tradeId).containsExactly(high);
+        assertThat(secondPage).extracting(TradeView::tradeId).containsExactly(low);
+    }
+
+    private Trade trade(UUID tradeId, String bookId, String counterPartyId, LocalDate maturityDate, boolean expired) {
+        return Trade.builder()
+                .tradeId(tradeId)
+                .version(1)
+                .bookId(bookId)
+                .counterPartyId(counterPartyId)
+                .maturityDate(maturityDate)
+                .createdDate(LocalDate.now())
+                .expired(expired)
+                .build();
+    }
+}
@@ -0,0 +1,90 @@
+package com.db.service;
+
+import com.db.model.JobLease;
+import com.db.repository.JobLeaseRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@ActiveProfiles("test")
+// Each lease operation commits on its own, as it does when called from the scheduler
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class JobLeaseServiceTest {
+
+    @Autowired
+    private JobLeaseRepository jobLeaseRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private JobLeaseService nodeA;
+    private JobLeaseService nodeB;
+    private String lease;
+
+    @BeforeEach
+    void setUp() {
+        nodeA = node("node-a", Duration.ofHours(1), Duration.ZERO);
+        nodeB = node("node-b", Duration.ofHours(1), Duration.ZERO);
+        lease = "job-" + UUID.randomUUID();
+    }
+
+    @Test
+    void shouldGrantLeaseToOneNodeOnly() {
+        assertThat(nodeA.tryAcquire(lease)).isTrue();
+        assertThat(nodeB.tryAcquire(lease)).isFalse();
+
+        JobLease stored = jobLeaseRepository.findById(lease).orElseThrow();
+        assertThat(stored.getOwner()).isEqualTo("node-a");
+    }
+
+    @Test
+    void shouldHandOverLeaseAfterRelease() {
+        assertThat(nodeA.tryAcquire(lease)).isTrue();
+        nodeA.release(lease);
+
+        assertThat(nodeB.tryAcquire(lease)).isTrue();
+        assertThat(jobLeaseRepository.findById(lease).orElseThrow().getOwner()).isEqualTo("node-b");
+    }
+
+    @Test
+    void shouldKeepLeaseForMinimumDurationAfterRelease() {
+        JobLeaseService holdingNode = node("node-c", Duration.ofHours(1), Duration.ofMinutes(5));
+
+        assertThat(holdingNode.tryAcquire(lease)).isTrue();
+        holdingNode.release(lease);
+
+        assertThat(nodeB.tryAcquire(lease)).isFalse();
+        assertThat(jobLeaseRepository.findById(lease).orElseThrow().getLockedUntil()).isAfter(Instant.now());
+    }
+
+    @Test
+    void shouldTakeOverLeaseOfDeadNodeOnceItRunsOut() {
+        JobLeaseService deadNode = node("node-dead", Duration.ofMillis(-1), Duration.ZERO);
+
+        assertThat(deadNode.tryAcquire(lease)).isTrue();
+        // never released
+        assertThat(nodeA.tryAcquire(lease)).isTrue();
+        assertThat(jobLeaseRepository.findById(lease).orElseThrow().getOwner()).isEqualTo("node-a");
+    }
+
+    private JobLeaseService node(String nodeId, Duration lockAtMostFor, Duration lockAtLeastFor) {
+        JobLeaseService service = new JobLeaseService(jobLeaseRepository, transactionTemplate);
+        ReflectionTestUtils.setField(service, "nodeId", nodeId);
+        ReflectionTestUtils.setField(service, "lockAtMostFor", lockAtMostFor);
+        ReflectionTestUtils.setField(service, "lockAtLeastFor", lockAtLeastFor);
+        return service;
+    }
+}
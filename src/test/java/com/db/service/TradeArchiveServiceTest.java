@@ -0,0 +1,114 @@
+package com.db.service;
+
+import com.db.dto.TradeView;
+import com.db.model.ArchivedTrade;
+import com.db.model.Trade;
+import com.db.repository.ArchivedTradeRepository;
+import com.db.repository.TradeRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@ActiveProfiles("test")
+@Import({TradeArchiveService.class, TradeArchiveServiceTest.Config.class})
+class TradeArchiveServiceTest {
+
+    @TestConfiguration
+    static class Config {
+        @Bean
+        TradeVersionCache tradeVersionCache() {
+            return new TradeVersionCache(true, 1000, Duration.ofMinutes(10));
+        }
+
+        @Bean
+        TradeMetrics tradeMetrics() {
+            return new TradeMetrics(new SimpleMeterRegistry());
+        }
+    }
+
+    @Autowired
+    private TradeArchiveService tradeArchiveService;
+    @Autowired
+    private TradeRepository tradeRepository;
+    @Autowired
+    private ArchivedTradeRepository archivedTradeRepository;
+    @Autowired
+    private TradeVersionCache tradeVersionCache;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(tradeArchiveService, "retention", Duration.ofDays(90));
+        ReflectionTestUtils.setField(tradeArchiveService, "pause", Duration.ZERO);
+    }
+
+    @Test
+    void shouldMoveTradesExpiredLongerThanRetentionToArchive() {
+        Trade old = tradeRepository.save(trade(LocalDate.now().minusDays(120), true));
+        Trade recent = tradeRepository.save(trade(LocalDate.now().minusDays(30), true));
+        Trade live = tradeRepository.save(trade(LocalDate.now().plusDays(30), false));
+        tradeVersionCache.put(old);
+
+        assertThat(tradeArchiveService.archiveExpiredTrades()).isEqualTo(1);
+
+        assertThat(tradeRepository.findAll()).extracting(Trade::getTradeId)
+                .containsExactlyInAnyOrder(recent.getTradeId(), live.getTradeId());
+        assertThat(archivedTradeRepository.findViewById(old.getTradeId())).get()
+                .extracting(TradeView::version, TradeView::maturityDate, TradeView::expired)
+                .containsExactly(old.getVersion(), old.getMaturityDate(), true);
+        assertThat(archivedTradeRepository.findById(old.getTradeId())).get()
+                .extracting(ArchivedTrade::getArchivedDate).isEqualTo(LocalDate.now());
+        assertThat(tradeVersionCache.get(old.getTradeId())).isNull();
+    }
+
+    @Test
+    void shouldArchiveInChunksAndReplaceEarlierCopies() {
+        ReflectionTestUtils.setField(tradeArchiveService, "chunkSize", 2);
+        for (int i = 0; i < 5; i++) {
+            tradeRepository.save(trade(LocalDate.now().minusYears(1), true));
+        }
+        // Archived once before, then written again and expired again
+        Trade revived = trade(LocalDate.now().minusYears(1), true);
+        revived.setVersion(4);
+        tradeRepository.save(revived);
+        archivedTradeRepository.save(ArchivedTrade.builder()
+                .tradeId(revived.getTradeId())
+                .version(2)
+                .maturityDate(LocalDate.now().minusYears(2))
+                .archivedDate(LocalDate.now().minusYears(1))
+                .build());
+
+        assertThat(tradeArchiveService.archiveExpiredTrades()).isEqualTo(6);
+
+        assertThat(tradeRepository.count()).isZero();
+        assertThat(archivedTradeRepository.count()).isEqualTo(6);
+        assertThat(archivedTradeRepository.findById(revived.getTradeId())).get()
+                .extracting(ArchivedTrade::getVersion, ArchivedTrade::getArchivedDate)
+                .containsExactly(4, LocalDate.now());
+    }
+
+    private static Trade trade(LocalDate maturityDate, boolean expired) {
+        return Trade.builder()
+                .tradeId(UUID.randomUUID())
+                .version(1)
+                .bookId("B1")
+                .counterPartyId("CP-1")
+                .maturityDate(maturityDate)
+                .createdDate(maturityDate.minusYears(1))
+                .expired(expired)
+                .build();
+    }
+}
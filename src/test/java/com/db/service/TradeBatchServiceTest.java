@@ -0,0 +1,119 @@
+package com.db.service;
+
+import com.db.config.JacksonConfig;
+import com.db.dto.TradeDto;
+import com.db.dto.TradeResult;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+class TradeBatchServiceTest {
+
+    @Mock
+    private TradeService tradeService;
+    @Captor
+    private ArgumentCaptor<List<TradeDto>> chunks;
+
+    private final ObjectMapper objectMapper = new JacksonConfig().objectMapper();
+
+    private TradeBatchService tradeBatchService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        tradeBatchService = new TradeBatchService(tradeService, objectMapper, new JacksonConfig().tradeDtoReader(objectMapper));
+        ReflectionTestUtils.setField(tradeBatchService, "chunkSize", 2);
+
+        // Accept everything that reaches the service
+        when(tradeService.saveTrades(anyList())).thenAnswer(i -> {
+            List<TradeDto> dtos = i.getArgument(0);
+            List<TradeResult> results = new ArrayList<>();
+            dtos.forEach(dto -> results.add(TradeResult.accepted(dto.getTradeId(), dto.getVersion())));
+            return results;
+        });
+    }
+
+    @Test
+    void shouldPersistJsonArrayInChunks() throws Exception {
+        List<TradeDto> trades = List.of(trade(1), trade(2), trade(3));
+
+        List<TradeResult> results = ingest(objectMapper.writeValueAsString(trades), false);
+
+        assertEquals(3, results.size());
+        assertTrue(results.stream().allMatch(TradeResult::isAccepted));
+        assertEquals(trades.get(2).getTradeId(), results.get(2).getTradeId());
+
+        verify(tradeService, times(2)).saveTrades(chunks.capture());
+    }
+
+    @Test
+    void shouldRejectMalformedItemsInPlace() throws Exception {
+        String ndjson = objectMapper.writeValueAsString(trade(1)) + "\n"
+                + "{\"tradeId\":\"not-a-uuid\",\"version\":2}\n"
+                + "42\n"
+                + objectMapper.writeValueAsString(trade(4)) + "\n";
+
+        List<TradeResult> results = ingest(ndjson, true);
+
+        assertEquals(4, results.size());
+        assertTrue(results.get(0).isAccepted());
+        assertFalse(results.get(1).isAccepted());
+        assertFalse(results.get(2).isAccepted());
+        assertTrue(results.get(3).isAccepted());
+        assertEquals(4, results.get(3).getVersion());
+    }
+
+    @Test
+    void shouldStopAtSyntaxErrorAndKeepEarlierResults() throws Exception {
+        String payload = "[" + objectMapper.writeValueAsString(trade(1)) + ", {\"tradeId\": ";
+
+        List<TradeResult> results = ingest(payload, false);
+
+        assertEquals(2, results.size());
+        assertTrue(results.get(0).isAccepted());
+        assertFalse(results.get(1).isAccepted());
+        assertTrue(results.get(1).getMessage().startsWith("Malformed JSON"));
+    }
+
+    private List<TradeResult> ingest(String payload, boolean ndjson) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        tradeBatchService.ingest(new ByteArrayInputStream(payload.getBytes(StandardCharsets.UTF_8)), out, ndjson);
+
+        if (!ndjson) {
+            return objectMapper.readValue(out.toByteArray(), new TypeReference<>() {});
+        }
+        List<TradeResult> results = new ArrayList<>();
+        for (String line : out.toString(StandardCharsets.UTF_8).split("\n")) {
+            results.add(objectMapper.readValue(line, TradeResult.class));
+        }
+        return results;
+    }
+
+    private TradeDto trade(int version) {
+        return TradeDto.builder()
+                .tradeId(UUID.randomUUID())
+                .version(version)
+                .bookId("B1")
+                .counterPartyId("CP-1")
+                .maturityDate(LocalDate.now().plusDays(5))
+                .build();
+    }
+}
@@ -0,0 +1,178 @@
+package com.db.service;
+
+import com.db.dto.TradeExposure;
+import com.db.dto.TradeView;
+import com.db.model.Trade;
+import com.db.repository.TradeRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Limit;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class TradeExposureStoreTest {
+
+    private final TradeRepository tradeRepository = mock(TradeRepository.class);
+    private final TradeExposureStore store = new TradeExposureStore(tradeRepository, Duration.ofDays(30), 2, 2);
+
+    @Test
+    void shouldCountLiveAndMaturingTradesPerBookAndCounterParty() {
+        store.apply(trade(UUID.randomUUID(), 1, "B1", "CP-1", LocalDate.now().plusDays(5)));
+        store.apply(trade(UUID.randomUUID(), 1, "B1", "CP-1", LocalDate.now().plusDays(30)));
+        store.apply(trade(UUID.randomUUID(), 1, "B1", "CP-1", LocalDate.now().plusDays(31)));
+        store.apply(trade(UUID.randomUUID(), 1, "B1", "CP-2", LocalDate.now().plusDays(5)));
+
+        TradeExposure exposure = store.getExposure("B1", "CP-1");
+
+        assertEquals(3, exposure.activeTrades());
+        assertEquals(2, exposure.maturingTrades());
+        assertEquals(LocalDate.now().plusDays(30), exposure.maturingBy());
+        assertEquals(1, store.getExposure("B1", "CP-2").activeTrades());
+        assertEquals(0, store.getExposure("B2", "CP-1").activeTrades());
+    }
+
+    @Test
+    void shouldMoveAmendedTradeAndIgnoreOlderVersions() {
+        UUID tradeId = UUID.randomUUID();
+        store.apply(trade(tradeId, 1, "B1", "CP-1", LocalDate.now().plusDays(5)));
+        store.apply(trade(tradeId, 3, "B2", "CP-1", LocalDate.now().plusDays(90)));
+        // Post-commit callback of an earlier write running late
+        store.apply(trade(tradeId, 2, "B1", "CP-1", LocalDate.now().plusDays(5)));
+
+        assertEquals(0, store.getExposure("B1", "CP-1").activeTrades());
+        assertEquals(1, store.getExposure("B2", "CP-1").activeTrades());
+        assertEquals(0, store.getExposure("B2", "CP-1").maturingTrades());
+    }
+
+    @Test
+    void shouldDropExpiredTradesUnlessAmendedSince() {
+        UUID expired = UUID.randomUUID();
+        UUID amended = UUID.randomUUID();
+        Trade matured = trade(expired, 1, "B1", "CP-1", LocalDate.now().minusDays(1));
+        Trade readForExpiry = trade(amended, 1, "B1", "CP-1", LocalDate.now().minusDays(1));
+        store.apply(matured);
+        store.apply(readForExpiry);
+        store.apply(trade(amended, 1, "B1", "CP-1", LocalDate.now().plusDays(10)));
+
+        store.expireAll(List.of(matured, readForExpiry));
+        store.expire(matured);
+
+        TradeExposure exposure = store.getExposure("B1", "CP-1");
+        assertEquals(1, exposure.activeTrades());
+        assertEquals(1, exposure.maturingTrades());
+    }
+
+    @Test
+    void shouldRebuildFromDatabaseInParallelRanges() {
+        UUID low1 = new UUID(1L, 1L);
+        UUID low2 = new UUID(1L, 2L);
+        UUID low3 = new UUID(1L, 3L);
+        UUID high = new UUID(-1L, 1L);
+        when(tradeRepository.findLiveViews(eq(TradeService.MIN_TRADE_ID), any(), any(Limit.class)))
+                .thenReturn(List.of(view(low1, "B1"), view(low2, "B1")));
+        when(tradeRepository.findLiveViews(eq(low2), any(), any(Limit.class)))
+                .thenReturn(List.of(view(low3, "B2")));
+        when(tradeRepository.findLiveViews(any(), eq(TradeService.MAX_TRADE_ID), any(Limit.class)))
+                .thenReturn(List.of(view(high, "B1")));
+
+        assertFalse(store.isReady());
+        store.rebuild();
+
+        assertTrue(store.isReady());
+        assertEquals(3, store.getExposure("B1", "CP-1").activeTrades());
+        assertEquals(1, store.getExposure("B2", "CP-1").activeTrades());
+        verify(tradeRepository, times(3)).findLiveViews(any(), any(), eq(Limit.of(2)));
+    }
+
+    @Test
+    void shouldKeepWritesAndExpiriesMadeDuringRebuild() {
+        UUID amended = UUID.randomUUID();
+        UUID expired = UUID.randomUUID();
+        Trade matured = trade(expired, 1, "B1", "CP-1", LocalDate.now().minusDays(1));
+        store.apply(trade(amended, 2, "B2", "CP-1", LocalDate.now().plusDays(10)));
+        store.apply(matured);
+        store.expire(matured);
+        // Both were read before the write and the expiry committed
+        when(tradeRepository.findLiveViews(eq(TradeService.MIN_TRADE_ID), any(), any(Limit.class)))
+                .thenReturn(List.of(view(amended, "B1"), view(expired, "B1")));
+
+        store.rebuild();
+
+        assertEquals(0, store.getExposure("B1", "CP-1").activeTrades());
+        assertEquals(1, store.getExposure("B2", "CP-1").activeTrades());
+    }
+
+    @Test
+    void shouldNotCountTradeExpiredBeforeRebuildLoadedIt() {
+        UUID expired = UUID.randomUUID();
+        // The expiry event arrives before the rebuild gets to a page read ahead of the expiry
+        store.expire(trade(expired, 1, "B1", "CP-1", LocalDate.now().plusDays(60)));
+        when(tradeRepository.findLiveViews(eq(TradeService.MIN_TRADE_ID), any(), any(Limit.class)))
+                .thenReturn(List.of(view(expired, "B1")));
+
+        store.rebuild();
+
+        assertEquals(0, store.getExposure("B1", "CP-1").activeTrades());
+    }
+
+    @Test
+    void shouldStayConsistentUnderConcurrentAmendments() throws Exception {
+        int threads = 8;
+        int trades = 500;
+        List<UUID> tradeIds = new ArrayList<>();
+        for (int i = 0; i < trades; i++) tradeIds.add(UUID.randomUUID());
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> writers = new ArrayList<>();
+        // Every thread writes every version of every trade, each version in its own book
+        for (int t = 0; t < threads; t++) {
+            writers.add(executor.submit(() -> {
+                start.await();
+                for (int version = 1; version <= 5; version++) {
+                    for (UUID tradeId : tradeIds) {
+                        store.apply(trade(tradeId, version, "B" + version, "CP-1", LocalDate.now().plusDays(version)));
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> writer : writers) writer.get();
+        executor.shutdown();
+
+        assertEquals(trades, store.getExposure("B5", "CP-1").activeTrades());
+        assertEquals(trades, store.getExposure("B5", "CP-1").maturingTrades());
+        for (int version = 1; version < 5; version++) {
+            assertEquals(0, store.getExposure("B" + version, "CP-1").activeTrades());
+            assertEquals(0, store.getExposure("B" + version, "CP-1").maturingTrades());
+        }
+    }
+
+    private static Trade trade(UUID tradeId, int version, String bookId, String counterPartyId,
+                               LocalDate maturityDate) {
+        return Trade.builder()
+                .tradeId(tradeId)
+                .version(version)
+                .bookId(bookId)
+                .counterPartyId(counterPartyId)
+                .maturityDate(maturityDate)
+                .createdDate(LocalDate.now())
+                .build();
+    }
+
+    private static TradeView view(UUID tradeId, String bookId) {
+        return new TradeView(tradeId, 1, "CP-1", bookId, LocalDate.now().plusDays(60), LocalDate.now(), false);
+    }
+}
@@ -0,0 +1,107 @@
+package com.db.service;
+
+import com.db.model.TradeHistory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TradeHistoryJournalTest {
+
+    @TempDir
+    private Path dir;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    @Test
+    void shouldReplayAppendedRecordsInBatchesAndDeleteSegments() throws IOException {
+        TradeHistoryJournal journal = journal();
+        List<TradeHistory> histories = histories(5);
+        journal.append(histories);
+        assertEquals(5, journal.getPending());
+
+        List<List<TradeHistory>> batches = new ArrayList<>();
+        assertEquals(5, journal.replay(2, batches::add));
+
+        assertEquals(List.of(2, 2, 1), batches.stream().map(List::size).toList());
+        assertEquals(histories.get(4).getId(), batches.get(2).get(0).getId());
+        assertEquals(histories.get(4).getMaturityDate(), batches.get(2).get(0).getMaturityDate());
+        assertEquals(0, journal.getPending());
+        assertEquals(0, segmentCount());
+    }
+
+    @Test
+    void shouldRecoverRecordsLeftByPreviousRun() throws IOException {
+        List<TradeHistory> histories = histories(3);
+        journal().append(histories);
+
+        // Reopen without closing, as after a crash
+        TradeHistoryJournal reopened = journal();
+        assertEquals(3, reopened.getPending());
+
+        List<TradeHistory> replayed = new ArrayList<>();
+        reopened.replay(100, replayed::addAll);
+        assertEquals(histories.stream().map(TradeHistory::getId).toList(),
+                replayed.stream().map(TradeHistory::getId).toList());
+    }
+
+    @Test
+    void shouldRollToNewSegmentWhenFull() throws IOException {
+        TradeHistoryJournal journal = new TradeHistoryJournal(objectMapper, dir, DataSize.ofBytes(1024), false);
+        journal.append(histories(20));
+        journal.destroy();
+
+        assertTrue(segmentCount() > 1);
+        assertEquals(20, journal.replay(100, batch -> { }));
+    }
+
+    @Test
+    void shouldKeepSegmentWhenSinkFails() throws IOException {
+        TradeHistoryJournal journal = journal();
+        journal.append(histories(2));
+
+        assertThrows(IllegalStateException.class, () -> journal.replay(10, batch -> {
+            throw new IllegalStateException("Mongo down");
+        }));
+
+        assertEquals(2, journal.getPending());
+        assertEquals(2, journal.replay(10, batch -> { }));
+    }
+
+    private TradeHistoryJournal journal() throws IOException {
+        return new TradeHistoryJournal(objectMapper, dir, DataSize.ofKilobytes(64), false);
+    }
+
+    private long segmentCount() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.count();
+        }
+    }
+
+    private List<TradeHistory> histories(int count) {
+        List<TradeHistory> histories = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            histories.add(TradeHistory.builder()
+                    .id(UUID.randomUUID())
+                    .tradeId(UUID.randomUUID())
+                    .version(i)
+                    .counterPartyId("CP-1")
+                    .bookId("B1")
+                    .maturityDate(LocalDate.now().plusDays(i))
+                    .recordedDate(LocalDate.now())
+                    .build());
+        }
+        return histories;
+    }
+}
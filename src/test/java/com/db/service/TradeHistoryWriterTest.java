@@ -0,0 +1,205 @@
+package com.db.service;
+
+import com.db.model.TradeHistory;
+import com.db.repository.TradeHistoryRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+class TradeHistoryWriterTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+    @Mock
+    private BulkOperations bulkOperations;
+    @Mock
+    private TradeHistoryRepository tradeHistoryRepository;
+    @Captor
+    private ArgumentCaptor<List<TradeHistory>> batches;
+    @TempDir
+    private Path journalDir;
+
+    private TradeHistoryWriter writer;
+    private TradeHistoryJournal journal;
+    private final CircuitBreakerRegistry circuitBreakerRegistry = CircuitBreakerRegistry.ofDefaults();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        MockitoAnnotations.openMocks(this);
+        journal = new TradeHistoryJournal(new ObjectMapper().findAndRegisterModules(), journalDir,
+                DataSize.ofKilobytes(64), false);
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, TradeHistory.class)).thenReturn(bulkOperations);
+        when(bulkOperations.insert(anyList())).thenReturn(bulkOperations);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (writer.isRunning()) writer.stop();
+        journal.destroy();
+    }
+
+    @Test
+    void shouldFlushWhenBatchSizeIsReached() {
+        writer = writer(100, 3, Duration.ofMinutes(1));
+        writer.start();
+
+        writer.writeAll(List.of(history(), history(), history()));
+
+        verify(bulkOperations, timeout(5000)).insert(argThat((List<TradeHistory> batch) -> batch.size() == 3));
+        verify(bulkOperations, timeout(5000)).execute();
+    }
+
+    @Test
+    void shouldFlushPartialBatchAfterInterval() {
+        writer = writer(100, 500, Duration.ofMillis(50));
+        writer.start();
+
+        writer.write(history());
+
+        verify(bulkOperations, timeout(5000)).insert(argThat((List<TradeHistory> batch) -> batch.size() == 1));
+        assertEquals(0, writer.getQueueDepth());
+    }
+
+    @Test
+    void shouldWriteOnCallerThreadWhenQueueIsFull() throws InterruptedException {
+        TradeHistory first = history();
+        TradeHistory queued = history();
+        TradeHistory overflow = history();
+        CountDownLatch drainerBlocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(bulkOperations.insert(argThat((List<TradeHistory> batch) -> batch.contains(first)))).thenAnswer(i -> {
+            drainerBlocked.countDown();
+            release.await();
+            return bulkOperations;
+        });
+        writer = writer(1, 1, Duration.ofMinutes(1));
+        writer.start();
+
+        writer.write(first);
+        assertTrue(drainerBlocked.await(5, TimeUnit.SECONDS));
+        writer.write(queued);
+        assertEquals(1, writer.getQueueDepth());
+
+        // The drainer is still stuck on the first batch, so only the caller can have written this one
+        writer.write(overflow);
+        verify(bulkOperations).insert(List.of(overflow));
+        assertEquals(1.0, meterRegistry.get("trade.history.overflowed").functionCounter().count());
+        assertEquals(1, writer.getQueueDepth());
+
+        release.countDown();
+        verify(bulkOperations, timeout(5000)).insert(List.of(queued));
+    }
+
+    @Test
+    void shouldDrainQueueOnStop() {
+        writer = writer(100, 1000, Duration.ofMinutes(1));
+        writer.start();
+
+        List<TradeHistory> histories = new ArrayList<>();
+        for (int i = 0; i < 10; i++) histories.add(history());
+        writer.writeAll(histories);
+        writer.stop();
+
+        verify(bulkOperations, atLeastOnce()).insert(batches.capture());
+        assertEquals(10, batches.getAllValues().stream().mapToInt(List::size).sum());
+        assertEquals(0, writer.getQueueDepth());
+        assertEquals(1, meterRegistry.get("trade.history.flush").timer().count(), 0);
+    }
+
+    @Test
+    void shouldCountFailedWritesWithoutThrowing() {
+        when(bulkOperations.execute()).thenThrow(new RuntimeException("Mongo down"));
+        writer = writer(100, 1, Duration.ofMillis(10));
+        writer.start();
+
+        writer.write(history());
+
+        verify(bulkOperations, timeout(5000)).execute();
+        writer.stop();
+        assertEquals(1.0, meterRegistry.get("trade.history.failed").functionCounter().count());
+    }
+
+    @Test
+    void shouldJournalWhileCircuitIsOpenAndReplayWhenItCloses() throws InterruptedException {
+        CircuitBreaker circuitBreaker = circuitBreakerRegistry.circuitBreaker("mongodb");
+        circuitBreaker.transitionToOpenState();
+        writer = writer(100, 2, Duration.ofMillis(10));
+        writer.start();
+
+        writer.writeAll(List.of(history(), history(), history()));
+
+        awaitPending(3);
+        verify(bulkOperations, never()).execute();
+        assertEquals(3.0, meterRegistry.get("trade.history.journaled").functionCounter().count(), 0);
+        assertEquals(3, journal.getPending());
+
+        circuitBreaker.transitionToClosedState();
+
+        verify(tradeHistoryRepository, timeout(5000).times(2)).upsertAll(batches.capture());
+        assertEquals(3, batches.getAllValues().stream().mapToInt(List::size).sum());
+        // The segment is deleted after the last batch went through
+        awaitPending(0);
+        assertEquals(0, journal.getPending());
+    }
+
+    @Test
+    void shouldKeepJournalWhenReplayFails() throws InterruptedException {
+        CircuitBreaker circuitBreaker = circuitBreakerRegistry.circuitBreaker("mongodb");
+        circuitBreaker.transitionToOpenState();
+        doThrow(new RuntimeException("Mongo down")).when(tradeHistoryRepository).upsertAll(anyList());
+        writer = writer(100, 10, Duration.ofMillis(10));
+        writer.start();
+
+        writer.write(history());
+        awaitPending(1);
+        circuitBreaker.transitionToClosedState();
+
+        verify(tradeHistoryRepository, timeout(5000)).upsertAll(anyList());
+        writer.stop();
+        assertEquals(1, journal.getPending());
+    }
+
+    private void awaitPending(long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (journal.getPending() != count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private TradeHistoryWriter writer(int capacity, int batchSize, Duration flushInterval) {
+        TradeHistoryWriter historyWriter = new TradeHistoryWriter(mongoTemplate, tradeHistoryRepository, journal,
+                circuitBreakerRegistry, capacity, batchSize, flushInterval, Duration.ofMillis(10), Duration.ofMinutes(1), false);
+        historyWriter.bindTo(meterRegistry);
+        return historyWriter;
+    }
+
+    private TradeHistory history() {
+        return TradeHistory.builder().id(UUID.randomUUID()).tradeId(UUID.randomUUID()).version(1).build();
+    }
+}
@@ -0,0 +1,199 @@
+package com.db.service;
+
+import com.db.model.Trade;
+import com.db.repository.ArchivedTradeRepository;
+import com.db.repository.TradeRepository;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+/**
+ * Runs the migrations and the partitioned trades table against a local PostgreSQL, in a schema of its own that
+ * is dropped afterwards. Enabled with {@code -Dtest.postgres.url=jdbc:postgresql://localhost:5432/trade_db} and
+ * optionally test.postgres.username and test.postgres.password.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(TradePartitionService.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@EnabledIfSystemProperty(named = "test.postgres.url", matches = ".+")
+class TradePartitionServiceTest {
+
+    private static final String SCHEMA = "trade_partition_test_" + Long.toHexString(System.nanoTime());
+    private static final DateTimeFormatter MONTH = DateTimeFormatter.ofPattern("yyyy_MM");
+
+    @Autowired
+    private TradeRepository tradeRepository;
+    @Autowired
+    private ArchivedTradeRepository archivedTradeRepository;
+    @Autowired
+    private TradePartitionService tradePartitionService;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @DynamicPropertySource
+    static void postgres(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", TradePartitionServiceTest::schemaUrl);
+        registry.add("spring.datasource.username", () -> System.getProperty("test.postgres.username", "postgres"));
+        registry.add("spring.datasource.password", () -> System.getProperty("test.postgres.password", ""));
+        registry.add("spring.flyway.schemas", () -> SCHEMA);
+    }
+
+    @AfterAll
+    static void dropSchema() throws Exception {
+        try (Connection connection = DriverManager.getConnection(System.getProperty("test.postgres.url"),
+                System.getProperty("test.postgres.username", "postgres"),
+                System.getProperty("test.postgres.password", ""));
+             Statement statement = connection.createStatement()) {
+            statement.execute("DROP SCHEMA IF EXISTS " + SCHEMA + " CASCADE");
+        }
+    }
+
+    @Test
+    void shouldKeepOneRowWhenAmendmentMovesTradeToAnotherPartition() {
+        UUID tradeId = UUID.randomUUID();
+        LocalDate created = LocalDate.now().minusDays(3);
+        LocalDate firstMaturity = LocalDate.now().plusMonths(1);
+        LocalDate amendedMaturity = LocalDate.now().plusMonths(5);
+
+        assertThat(tradeRepository.upsert(trade(tradeId, 1, firstMaturity, created))).contains(created);
+        assertThat(tradeRepository.upsert(trade(tradeId, 2, amendedMaturity, LocalDate.now()))).contains(created);
+        assertThat(tradeRepository.upsert(trade(tradeId, 1, firstMaturity, LocalDate.now()))).isEmpty();
+        assertThat(tradeRepository.upsert(trade(tradeId, 3, amendedMaturity, LocalDate.now()))).contains(created);
+        assertThat(tradeRepository.upsert(trade(tradeId, 2, amendedMaturity, LocalDate.now()))).isEmpty();
+
+        assertThat(partitionsOf(tradeId)).containsExactly(monthly(amendedMaturity));
+        assertThat(tradeRepository.findById(tradeId)).get().extracting(Trade::getVersion).isEqualTo(3);
+    }
+
+    @Test
+    void shouldNotReviveArchivedTradeWithLowerVersion() {
+        UUID tradeId = UUID.randomUUID();
+        jdbcTemplate.update("INSERT INTO trades_archive (trade_id, version, maturity_date, archived_date) " +
+                "VALUES (?, 3, ?, ?)", tradeId, LocalDate.now().minusYears(1), LocalDate.now());
+
+        assertThat(tradeRepository.upsert(trade(tradeId, 2, LocalDate.now().plusMonths(1), LocalDate.now()))).isEmpty();
+        assertThat(partitionsOf(tradeId)).isEmpty();
+        assertThat(tradeRepository.upsert(trade(tradeId, 3, LocalDate.now().plusMonths(1), LocalDate.now())))
+                .contains(LocalDate.now());
+    }
+
+    @Test
+    void shouldBatchUpdateInStoredPartitionAndMoveChangedMaturities() {
+        LocalDate maturity = LocalDate.now().plusMonths(1);
+        LocalDate amendedMaturity = LocalDate.now().plusMonths(5);
+        Trade kept = trade(UUID.randomUUID(), 1, maturity, LocalDate.now());
+        Trade moved = trade(UUID.randomUUID(), 1, maturity, LocalDate.now());
+        Trade newer = trade(UUID.randomUUID(), 3, maturity, LocalDate.now());
+        tradeRepository.batchInsert(List.of(kept, moved, newer));
+
+        int[] counts = tradeRepository.batchUpdate(List.of(
+                trade(kept.getTradeId(), 2, maturity, LocalDate.now()),
+                trade(moved.getTradeId(), 2, amendedMaturity, LocalDate.now()),
+                trade(newer.getTradeId(), 2, maturity, LocalDate.now())));
+
+        assertThat(counts).containsExactly(1, 1, 0);
+        assertThat(partitionsOf(kept.getTradeId())).containsExactly(monthly(maturity));
+        assertThat(partitionsOf(moved.getTradeId())).containsExactly(monthly(amendedMaturity));
+        assertThat(tradeRepository.findByTradeIdInAndMaturityDateIn(
+                List.of(kept.getTradeId(), moved.getTradeId(), newer.getTradeId()), List.of(maturity)))
+                .extracting(Trade::getTradeId, Trade::getVersion)
+                .containsExactlyInAnyOrder(tuple(kept.getTradeId(), 2), tuple(newer.getTradeId(), 3));
+    }
+
+    @Test
+    void shouldLockTradesForBatchWriters() {
+        List<UUID> tradeIds = List.of(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID());
+
+        transactionTemplate.executeWithoutResult(status -> tradeRepository.lockTrades(tradeIds));
+
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM pg_locks WHERE locktype = 'advisory'",
+                Integer.class)).isZero();
+    }
+
+    @Test
+    void shouldCreateMonthsAheadAndMoveLongDatedTradesIntoThem() {
+        UUID tradeId = UUID.randomUUID();
+        LocalDate maturity = LocalDate.now().plusMonths(30);
+        tradeRepository.upsert(trade(tradeId, 1, maturity, LocalDate.now()));
+        assertThat(partitionsOf(tradeId)).containsExactly("trades_future");
+
+        ReflectionTestUtils.setField(tradePartitionService, "monthsAhead", 31);
+        tradePartitionService.maintainPartitions();
+
+        assertThat(partitionsOf(tradeId)).containsExactly(monthly(maturity));
+        assertThat(tradeRepository.createPartitions(LocalDate.now().plusMonths(31))).isZero();
+    }
+
+    @Test
+    void shouldDetachPartitionOnceAllItsTradesAreArchived() {
+        UUID tradeId = UUID.randomUUID();
+        LocalDate maturity = LocalDate.now().minusYears(2);
+        jdbcTemplate.update("INSERT INTO trades (trade_id, version, counter_party_id, book_id, maturity_date, " +
+                "created_date, expired) VALUES (?, 1, 'CP-1', 'B1', ?, ?, false)", tradeId, maturity,
+                maturity.minusYears(1));
+        ReflectionTestUtils.setField(tradePartitionService, "detachAfterMonths", 0);
+
+        assertThat(tradePartitionService.maintainPartitions()).isEmpty();
+
+        transactionTemplate.executeWithoutResult(status ->
+                tradeRepository.markExpired(List.of(tradeId), LocalDate.now()));
+        assertThat(tradePartitionService.maintainPartitions()).isEmpty();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            archivedTradeRepository.archive(List.of(tradeId), LocalDate.now(), LocalDate.now());
+            tradeRepository.deleteArchived(List.of(tradeId), LocalDate.now());
+        });
+        assertThat(tradePartitionService.maintainPartitions()).containsExactly("trades_past");
+        assertThat(archivedTradeRepository.findViewById(tradeId)).isPresent();
+    }
+
+    private List<String> partitionsOf(UUID tradeId) {
+        return jdbcTemplate.queryForList("SELECT tableoid::regclass::text FROM trades WHERE trade_id = ?",
+                String.class, tradeId);
+    }
+
+    private static String monthly(LocalDate maturity) {
+        return "trades_" + maturity.format(MONTH);
+    }
+
+    private static Trade trade(UUID tradeId, int version, LocalDate maturityDate, LocalDate createdDate) {
+        return Trade.builder()
+                .tradeId(tradeId)
+                .version(version)
+                .bookId("B1")
+                .counterPartyId("CP-1")
+                .maturityDate(maturityDate)
+                .createdDate(createdDate)
+                .build();
+    }
+
+    private static String schemaUrl() {
+        String url = System.getProperty("test.postgres.url");
+        return url + (url.contains("?") ? "&" : "?") + "currentSchema=" + SCHEMA;
+    }
+}
@@ -1,16 +1,27 @@
 package com.db.service;
 
 import com.db.dto.TradeDto;
+import com.db.dto.TradeResult;
+import com.db.dto.TradeView;
 import com.db.exception.InvalidTradeException;
+import com.db.model.ArchivedTrade;
 import com.db.model.Trade;
 import com.db.model.TradeHistory;
-import com.db.repository.TradeHistoryRepository;
+import com.db.repository.ArchivedTradeRepository;
 import com.db.repository.TradeRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.*;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -22,7 +33,23 @@ class TradeServiceTest {
     @Mock
     private TradeRepository tradeRepository;
     @Mock
-    private TradeHistoryRepository tradeHistoryRepository;
+    private ArchivedTradeRepository archivedTradeRepository;
+    @Mock
+    private TradeHistoryWriter tradeHistoryWriter;
+    @Mock
+    private TradeOutboxService tradeOutboxService;
+    @Mock
+    private TransactionTemplate transactionTemplate;
+    @Captor
+    private ArgumentCaptor<Collection<Trade>> inserts;
+    @Captor
+    private ArgumentCaptor<Collection<Trade>> updates;
+    @Spy
+    private TradeVersionCache tradeVersionCache = new TradeVersionCache(true, 1000, Duration.ofMinutes(10));
+    @Spy
+    private TradeMetrics tradeMetrics = new TradeMetrics(new SimpleMeterRegistry());
+    @Spy
+    private TradeTracer tradeTracer = new TradeTracer(new SimpleMeterRegistry(), 0);
 
     @InjectMocks
     private TradeService tradeService;
@@ -30,6 +57,9 @@ class TradeServiceTest {
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(tradeService, "expiryChunkSize", 1000);
+        when(transactionTemplate.execute(any())).thenAnswer(i ->
+                ((TransactionCallback<?>) i.getArgument(0)).doInTransaction(null));
     }
 
     @Test
@@ -48,9 +78,9 @@ class TradeServiceTest {
     @Test
     void shouldRejectTradeWithLowerVersion() {
         UUID tradeId = UUID.randomUUID();
-        Trade existing = new Trade(tradeId, 5, "CP-1", "B1", LocalDate.now().plusDays(10), LocalDate.now(), false);
 
-        when(tradeRepository.findById(tradeId)).thenReturn(Optional.of(existing));
+        // The guarded upsert finds a higher stored version and leaves the row untouched
+        when(tradeRepository.upsert(any(Trade.class))).thenReturn(Optional.empty());
 
         TradeDto dto = TradeDto.builder()
                 .tradeId(tradeId)
@@ -60,7 +90,32 @@ class TradeServiceTest {
                 .maturityDate(LocalDate.now().plusDays(5))
                 .build();
 
-        assertThrows(InvalidTradeException.class, () -> tradeService.saveTrade(dto));
+        InvalidTradeException ex = assertThrows(InvalidTradeException.class, () -> tradeService.saveTrade(dto));
+        assertEquals("Trade version is lower than existing version", ex.getMessage());
+        verify(tradeHistoryWriter, never()).write(any(TradeHistory.class));
+        verify(tradeOutboxService, never()).recordTradeEvents(any());
+    }
+
+    @Test
+    void shouldCountRejectionsByReason() {
+        TradeDto matured = TradeDto.builder()
+                .tradeId(UUID.randomUUID()).version(1).bookId("B1").counterPartyId("CP-1")
+                .maturityDate(LocalDate.now().minusDays(1)).build();
+        TradeDto undated = TradeDto.builder()
+                .tradeId(UUID.randomUUID()).version(1).bookId("B1").counterPartyId("CP-1").build();
+        TradeDto stale = TradeDto.builder()
+                .tradeId(UUID.randomUUID()).version(2).bookId("B1").counterPartyId("CP-1")
+                .maturityDate(LocalDate.now().plusDays(5)).build();
+        when(tradeRepository.upsert(any(Trade.class))).thenReturn(Optional.empty());
+
+        assertThrows(InvalidTradeException.class, () -> tradeService.saveTrade(matured));
+        assertThrows(InvalidTradeException.class, () -> tradeService.saveTrade(undated));
+        assertThrows(InvalidTradeException.class, () -> tradeService.saveTrade(stale));
+        tradeService.saveTrades(List.of(matured));
+
+        assertEquals(2, tradeMetrics.getRejected(TradeMetrics.PAST_MATURITY_DATE));
+        assertEquals(1, tradeMetrics.getRejected(TradeMetrics.MISSING_MATURITY_DATE));
+        assertEquals(1, tradeMetrics.getRejected(TradeMetrics.STALE_VERSION));
     }
 
     @Test
@@ -73,21 +128,23 @@ class TradeServiceTest {
                 .maturityDate(LocalDate.now().plusDays(5))
                 .build();
 
-        when(tradeRepository.findById(dto.getTradeId())).thenReturn(Optional.empty());
-        when(tradeRepository.save(any(Trade.class))).thenAnswer(i -> i.getArgument(0));
+        when(tradeRepository.upsert(any(Trade.class))).thenReturn(Optional.of(LocalDate.now()));
 
         Trade result = tradeService.saveTrade(dto);
 
         assertNotNull(result);
         assertEquals(dto.getBookId(), result.getBookId());
-        verify(tradeRepository).save(any(Trade.class));
-        verify(tradeHistoryRepository).save(any(TradeHistory.class));
+        assertEquals(LocalDate.now(), result.getCreatedDate());
+        verify(tradeRepository).upsert(any(Trade.class));
+        verify(tradeRepository, never()).findById(any());
+        verify(tradeHistoryWriter).write(any(TradeHistory.class));
+        verify(tradeOutboxService).recordTradeEvents(argThat((Collection<Trade> trades) -> trades.size() == 1));
     }
 
     @Test
     void shouldUpdateExistingTradeWithSameVersion() {
         UUID tradeId = UUID.randomUUID();
-        Trade existing = new Trade(tradeId, 1, "B1", "CP-1", LocalDate.now().plusDays(5), LocalDate.now(), false);
+        LocalDate createdDate = LocalDate.now().minusDays(3);
 
         TradeDto dto = TradeDto.builder()
                 .tradeId(tradeId)
@@ -97,20 +154,20 @@ class TradeServiceTest {
                 .maturityDate(LocalDate.now().plusDays(10))
                 .build();
 
-        when(tradeRepository.findById(tradeId)).thenReturn(Optional.of(existing));
-        when(tradeRepository.save(any(Trade.class))).thenAnswer(i -> i.getArgument(0));
+        when(tradeRepository.upsert(any(Trade.class))).thenReturn(Optional.of(createdDate));
 
         Trade result = tradeService.saveTrade(dto);
 
         assertEquals("B2", result.getBookId());
         assertEquals("CP-2", result.getCounterPartyId());
-        verify(tradeHistoryRepository).save(any(TradeHistory.class));
+        // Amendments keep the original creation date reported by the upsert
+        assertEquals(createdDate, result.getCreatedDate());
+        verify(tradeHistoryWriter).write(any(TradeHistory.class));
     }
 
     @Test
     void shouldUpdateExistingTradeWithHigherVersion() {
         UUID tradeId = UUID.randomUUID();
-        Trade existing = new Trade(tradeId, 1, "B1", "CP-1", LocalDate.now().plusDays(5), LocalDate.now(), false);
 
         TradeDto dto = TradeDto.builder()
                 .tradeId(tradeId)
@@ -120,14 +177,13 @@ class TradeServiceTest {
                 .maturityDate(LocalDate.now().plusDays(10))
                 .build();
 
-        when(tradeRepository.findById(tradeId)).thenReturn(Optional.of(existing));
-        when(tradeRepository.save(any(Trade.class))).thenAnswer(i -> i.getArgument(0));
+        when(tradeRepository.upsert(any(Trade.class))).thenReturn(Optional.of(LocalDate.now()));
 
         Trade result = tradeService.saveTrade(dto);
 
         assertEquals(2, result.getVersion());
         assertEquals("B2", result.getBookId());
-        verify(tradeHistoryRepository).save(any(TradeHistory.class));
+        verify(tradeHistoryWriter).write(any(TradeHistory.class));
     }
 
     @Test
@@ -145,32 +201,264 @@ class TradeServiceTest {
     @Test
     void markExpiredTrades_shouldMarkAndSave() {
         Trade t1 = new Trade();
+        t1.setTradeId(UUID.randomUUID());
         t1.setMaturityDate(LocalDate.now().minusDays(1));
         t1.setExpired(false);
 
         Trade t2 = new Trade();
+        t2.setTradeId(UUID.randomUUID());
         t2.setMaturityDate(LocalDate.now().minusDays(2));
         t2.setExpired(false);
 
-        when(tradeRepository.findByExpiredFalseAndMaturityDateBefore(LocalDate.now()))
-                .thenReturn(Arrays.asList(t1, t2));
+        when(tradeRepository.findExpiryChunk(
+                eq(LocalDate.now()), any(UUID.class), any(UUID.class), any(Limit.class)))
+                .thenReturn(new ArrayList<>(Arrays.asList(t1, t2)));
 
-        tradeService.markExpiredTrades();
+        int expired = tradeService.markExpiredTrades();
 
+        assertEquals(2, expired);
         assertTrue(t1.isExpired());
         assertTrue(t2.isExpired());
-        verify(tradeRepository).saveAll(Arrays.asList(t1, t2));
+        verify(tradeRepository).markExpired(List.of(t1.getTradeId(), t2.getTradeId()), LocalDate.now());
+        verify(tradeRepository, never()).saveAll(any());
+        verify(tradeOutboxService).recordTradeEvents(List.of(t1, t2));
+        verify(tradeHistoryWriter).writeAll(anyList());
     }
 
     @Test
     void markExpiredTrades_shouldDoNothingIfNoExpiredTrades() {
-        LocalDate d = LocalDate.now();
-        doReturn(List.of())
-                .when(tradeRepository)
-                .findByExpiredFalseAndMaturityDateBefore(d);
+        when(tradeRepository.findExpiryChunk(
+                any(LocalDate.class), any(UUID.class), any(UUID.class), any(Limit.class)))
+                .thenReturn(List.of());
 
-        tradeService.markExpiredTrades();
+        assertEquals(0, tradeService.markExpiredTrades());
 
-        verify(tradeRepository, never()).saveAll(any());
+        verify(tradeRepository, never()).markExpired(any(), any());
+        verify(tradeHistoryWriter, never()).writeAll(anyList());
+    }
+
+    @Test
+    void markExpiredTrades_shouldProcessInChunksUsingKeysetCursor() {
+        ReflectionTestUtils.setField(tradeService, "expiryChunkSize", 2);
+        Trade t1 = Trade.builder().tradeId(UUID.randomUUID()).build();
+        Trade t2 = Trade.builder().tradeId(UUID.randomUUID()).build();
+        Trade t3 = Trade.builder().tradeId(UUID.randomUUID()).build();
+
+        when(tradeRepository.findExpiryChunk(
+                any(LocalDate.class), any(UUID.class), any(UUID.class), eq(Limit.of(2))))
+                .thenReturn(new ArrayList<>(List.of(t1, t2)))
+                .thenReturn(new ArrayList<>(List.of(t3)));
+
+        assertEquals(3, tradeService.markExpiredTrades());
+
+        // Each chunk runs in its own transaction and resumes after the last tradeId of the previous one
+        verify(transactionTemplate, times(2)).execute(any());
+        verify(tradeRepository).findExpiryChunk(
+                any(LocalDate.class), eq(t2.getTradeId()), eq(TradeService.MAX_TRADE_ID), eq(Limit.of(2)));
+        verify(tradeHistoryWriter, times(2)).writeAll(anyList());
+    }
+
+    @Test
+    void saveTrades_shouldRejectInvalidTradesIndividually() {
+        UUID existingId = UUID.randomUUID();
+        Trade existing = new Trade(existingId, 5, "CP-1", "B1", LocalDate.now().plusDays(10), LocalDate.now().minusDays(3), false);
+
+        TradeDto newTrade = TradeDto.builder()
+                .tradeId(UUID.randomUUID()).version(1).bookId("B1").counterPartyId("CP-1")
+                .maturityDate(LocalDate.now().plusDays(5)).build();
+        TradeDto staleTrade = TradeDto.builder()
+                .tradeId(existingId).version(3).bookId("B1").counterPartyId("CP-1")
+                .maturityDate(LocalDate.now().plusDays(5)).build();
+        TradeDto maturedTrade = TradeDto.builder()
+                .tradeId(UUID.randomUUID()).version(1).bookId("B1").counterPartyId("CP-1")
+                .maturityDate(LocalDate.now().minusDays(1)).build();
+        TradeDto amendment = TradeDto.builder()
+                .tradeId(existingId).version(6).bookId("B2").counterPartyId("CP-2")
+                .maturityDate(LocalDate.now().plusDays(20)).build();
+
+        when(tradeRepository.findAllById(any())).thenReturn(List.of(existing));
+        when(tradeRepository.batchUpdate(any())).thenReturn(new int[]{1});
+
+        List<TradeResult> results = tradeService.saveTrades(List.of(newTrade, staleTrade, maturedTrade, amendment));
+
+        assertEquals(4, results.size());
+        assertTrue(results.get(0).isAccepted());
+        assertFalse(results.get(1).isAccepted());
+        assertEquals("Trade version is lower than existing version", results.get(1).getMessage());
+        assertFalse(results.get(2).isAccepted());
+        assertTrue(results.get(3).isAccepted());
+
+        verify(tradeRepository).findAllById(any());
+        verify(tradeRepository).batchInsert(inserts.capture());
+        verify(tradeRepository).batchUpdate(updates.capture());
+        verify(tradeRepository, never()).findById(any());
+        verify(tradeHistoryWriter).writeAll(anyList());
+
+        assertEquals(1, inserts.getValue().size());
+        assertEquals(1, updates.getValue().size());
+        Trade updated = updates.getValue().iterator().next();
+        assertEquals(6, updated.getVersion());
+        assertEquals(existing.getCreatedDate(), updated.getCreatedDate());
+        // The managed entity must stay untouched so Hibernate does not flush a second update
+        assertEquals(5, existing.getVersion());
+    }
+
+    @Test
+    void saveTrades_shouldApplyRepeatedTradeIdsInOrder() {
+        UUID tradeId = UUID.randomUUID();
+        TradeDto v1 = TradeDto.builder()
+                .tradeId(tradeId).version(1).bookId("B1").counterPartyId("CP-1")
+                .maturityDate(LocalDate.now().plusDays(5)).build();
+        TradeDto v2 = TradeDto.builder()
+                .tradeId(tradeId).version(2).bookId("B2").counterPartyId("CP-1")
+                .maturityDate(LocalDate.now().plusDays(5)).build();
+        TradeDto staleV1 = TradeDto.builder()
+                .tradeId(tradeId).version(1).bookId("B3").counterPartyId("CP-1")
+                .maturityDate(LocalDate.now().plusDays(5)).build();
+
+        when(tradeRepository.findAllById(any())).thenReturn(List.of());
+        when(tradeRepository.batchUpdate(any())).thenReturn(new int[0]);
+
+        List<TradeResult> results = tradeService.saveTrades(List.of(v1, v2, staleV1));
+
+        assertTrue(results.get(0).isAccepted());
+        assertTrue(results.get(1).isAccepted());
+        assertFalse(results.get(2).isAccepted());
+
+        verify(tradeRepository).batchInsert(inserts.capture());
+        assertEquals(1, inserts.getValue().size());
+        assertEquals("B2", inserts.getValue().iterator().next().getBookId());
+    }
+
+    @Test
+    void shouldRejectStaleVersionFromCacheWithoutQuery() {
+        UUID tradeId = UUID.randomUUID();
+        when(tradeRepository.upsert(any(Trade.class))).thenReturn(Optional.of(LocalDate.now()));
+        TradeDto v2 = TradeDto.builder()
+                .tradeId(tradeId).version(2).bookId("B1").counterPartyId("CP-1")
+                .maturityDate(LocalDate.now().plusDays(5)).build();
+        TradeDto v1 = TradeDto.builder()
+                .tradeId(tradeId).version(1).bookId("B1").counterPartyId("CP-1")
+                .maturityDate(LocalDate.now().plusDays(5)).build();
+
+        tradeService.saveTrade(v2);
+        InvalidTradeException ex = assertThrows(InvalidTradeException.class, () -> tradeService.saveTrade(v1));
+
+        assertEquals("Trade version is lower than existing version", ex.getMessage());
+        verify(tradeRepository, times(1)).upsert(any(Trade.class));
+        assertEquals(2, tradeVersionCache.get(tradeId).version());
+    }
+
+    @Test
+    void saveTrades_shouldOnlyLookUpTradesMissingFromCache() {
+        LocalDate createdDate = LocalDate.now().minusDays(3);
+        Trade cached = new Trade(UUID.randomUUID(), 2, "CP-1", "B1", LocalDate.now().plusDays(10), createdDate, false);
+        tradeVersionCache.put(cached);
+        UUID newId = UUID.randomUUID();
+
+        TradeDto amendment = TradeDto.builder()
+                .tradeId(cached.getTradeId()).version(3).bookId("B2").counterPartyId("CP-1")
+                .maturityDate(LocalDate.now().plusDays(5)).build();
+        TradeDto stale = TradeDto.builder()
+                .tradeId(cached.getTradeId()).version(1).bookId("B3").counterPartyId("CP-1")
+                .maturityDate(LocalDate.now().plusDays(5)).build();
+        TradeDto newTrade = TradeDto.builder()
+                .tradeId(newId).version(1).bookId("B1").counterPartyId("CP-1")
+                .maturityDate(LocalDate.now().plusDays(5)).build();
+
+        when(tradeRepository.findAllById(any())).thenReturn(List.of());
+        when(tradeRepository.batchUpdate(any())).thenReturn(new int[]{1});
+
+        List<TradeResult> results = tradeService.saveTrades(List.of(amendment, stale, newTrade));
+
+        assertTrue(results.get(0).isAccepted());
+        assertFalse(results.get(1).isAccepted());
+        assertTrue(results.get(2).isAccepted());
+        verify(tradeRepository).findAllById(argThat((Iterable<UUID> ids) -> ids.iterator().next().equals(newId)
+                && ids.spliterator().getExactSizeIfKnown() == 1));
+
+        verify(tradeRepository).batchUpdate(updates.capture());
+        assertEquals(createdDate, updates.getValue().iterator().next().getCreatedDate());
+        assertEquals(3, tradeVersionCache.get(cached.getTradeId()).version());
+        assertEquals(1, tradeVersionCache.get(newId).version());
+    }
+
+    @Test
+    void saveTrades_shouldRejectUpdatesOvertakenByConcurrentWriter() {
+        UUID tradeId = UUID.randomUUID();
+        Trade existing = new Trade(tradeId, 1, "CP-1", "B1", LocalDate.now().plusDays(10), LocalDate.now(), false);
+        TradeDto amendment = TradeDto.builder()
+                .tradeId(tradeId).version(2).bookId("B2").counterPartyId("CP-1")
+                .maturityDate(LocalDate.now().plusDays(5)).build();
+
+        when(tradeRepository.findAllById(any())).thenReturn(List.of(existing));
+        when(tradeRepository.batchUpdate(any())).thenReturn(new int[]{0});
+
+        List<TradeResult> results = tradeService.saveTrades(List.of(amendment));
+
+        assertFalse(results.get(0).isAccepted());
+        verify(tradeHistoryWriter, never()).writeAll(anyList());
+        verify(tradeOutboxService).recordTradeEvents(argThat(Collection::isEmpty));
+    }
+
+    @Test
+    void saveTrades_shouldRejectVersionsBelowArchivedCopy() {
+        UUID tradeId = UUID.randomUUID();
+        ArchivedTrade archived = ArchivedTrade.builder()
+                .tradeId(tradeId).version(3).maturityDate(LocalDate.now().minusYears(1))
+                .archivedDate(LocalDate.now()).build();
+        TradeDto stale = TradeDto.builder()
+                .tradeId(tradeId).version(2).bookId("B1").counterPartyId("CP-1")
+                .maturityDate(LocalDate.now().plusDays(5)).build();
+        TradeDto revived = TradeDto.builder()
+                .tradeId(tradeId).version(3).bookId("B1").counterPartyId("CP-1")
+                .maturityDate(LocalDate.now().plusDays(5)).build();
+
+        when(tradeRepository.findAllById(any())).thenReturn(List.of());
+        when(archivedTradeRepository.findAllById(any())).thenReturn(List.of(archived));
+
+        List<TradeResult> results = tradeService.saveTrades(List.of(stale, revived));
+
+        assertFalse(results.get(0).isAccepted());
+        assertTrue(results.get(1).isAccepted());
+        verify(tradeRepository).batchInsert(inserts.capture());
+        assertEquals(3, inserts.getValue().iterator().next().getVersion());
+    }
+
+    @Test
+    void publishTradeFallback_shouldParkTradeInOutbox() {
+        TradeDto dto = TradeDto.builder().tradeId(UUID.randomUUID()).version(1).build();
+
+        tradeService.publishTradeFallback(dto, new RuntimeException("Kafka down"));
+
+        verify(tradeOutboxService).recordForPublish(dto);
+    }
+
+    @Test
+    void getTrades_shouldUseKeysetQueries() {
+        UUID after = UUID.randomUUID();
+        when(tradeRepository.findByOrderByTradeIdAsc(Limit.of(10))).thenReturn(List.of(new Trade()));
+        when(tradeRepository.findByTradeIdGreaterThanOrderByTradeIdAsc(after, Limit.of(10))).thenReturn(List.of());
+
+        assertEquals(1, tradeService.getTrades(null, 10).size());
+        assertTrue(tradeService.getTrades(after, 10).isEmpty());
+        verify(tradeRepository, never()).findAll();
+    }
+
+    @Test
+    void getTrade_shouldFallBackToArchive() {
+        UUID live = UUID.randomUUID();
+        UUID archived = UUID.randomUUID();
+        TradeView liveView = new TradeView(live, 2, "CP-1", "B1", LocalDate.now(), LocalDate.now(), false);
+        TradeView archivedView = new TradeView(archived, 1, "CP-1", "B1", LocalDate.now().minusYears(1),
+                LocalDate.now().minusYears(2), true);
+        when(tradeRepository.findViewById(live)).thenReturn(Optional.of(liveView));
+        when(tradeRepository.findViewById(archived)).thenReturn(Optional.empty());
+        when(archivedTradeRepository.findViewById(archived)).thenReturn(Optional.of(archivedView));
+
+        assertEquals(Optional.of(liveView), tradeService.getTrade(live));
+        assertEquals(Optional.of(archivedView), tradeService.getTrade(archived));
+        assertTrue(tradeService.getTrade(UUID.randomUUID()).isEmpty());
+        verify(archivedTradeRepository, never()).findViewById(live);
     }
 }
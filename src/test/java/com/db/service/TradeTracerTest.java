@@ -0,0 +1,124 @@
+package com.db.service;
+
+import com.db.dto.TradeDto;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TradeTracerTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void shouldRecordStagesOfSampledTrades() {
+        TradeTracer tracer = new TradeTracer(registry, 1.0);
+
+        tracer.begin(TradeTracer.KAFKA, 1);
+        tracer.stage(TradeTracer.Stage.UPSERT, tracer.start());
+        tracer.stage(TradeTracer.Stage.OUTBOX, tracer.start());
+        tracer.end(1);
+
+        assertEquals(1, registry.get("trade.stage").tag("stage", "upsert").timer().count());
+        assertEquals(1, registry.get("trade.stage").tag("stage", "outbox").timer().count());
+        assertEquals(0, registry.get("trade.stage").tag("stage", "history").timer().count());
+    }
+
+    @Test
+    void shouldNotTraceWhenSamplingIsOff() {
+        TradeTracer tracer = new TradeTracer(registry, 0);
+
+        tracer.begin(TradeTracer.REST, 1);
+        long start = tracer.start();
+        tracer.stage(TradeTracer.Stage.UPSERT, start);
+        tracer.end(1);
+
+        assertEquals(0, start);
+        assertEquals(0, registry.get("trade.stage").tag("stage", "upsert").timer().count());
+    }
+
+    @Test
+    void shouldIgnoreStagesOutsideTrace() {
+        TradeTracer tracer = new TradeTracer(registry, 1.0);
+
+        tracer.begin(TradeTracer.KAFKA, 1);
+        tracer.end(1);
+        tracer.stage(TradeTracer.Stage.UPSERT, System.nanoTime());
+
+        assertEquals(0, tracer.start());
+        assertEquals(0, registry.get("trade.stage").tag("stage", "upsert").timer().count());
+    }
+
+    @Test
+    void shouldTimeCommitBeforeOtherAfterCommitCallbacks() {
+        TradeTracer tracer = new TradeTracer(registry, 1.0);
+        TransactionSynchronizationManager.initSynchronization();
+
+        tracer.begin(TradeTracer.KAFKA, 1);
+        tracer.traceCommit();
+        List<?> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationUtils.triggerBeforeCommit(false);
+        TransactionSynchronizationUtils.invokeAfterCommit(TransactionSynchronizationManager.getSynchronizations());
+        tracer.end(1);
+
+        assertEquals(1, synchronizations.size());
+        assertEquals(1, registry.get("trade.stage").tag("stage", "commit").timer().count());
+    }
+
+    @Test
+    void shouldEmitJfrEventWithStageBreakdown() throws Exception {
+        TradeTracer tracer = new TradeTracer(registry, 0);
+        UUID tradeId = UUID.randomUUID();
+        Path file = Files.createTempFile("trade-trace", ".jfr");
+
+        try (Recording recording = new Recording()) {
+            recording.enable(TradeTraceEvent.class).withThreshold(Duration.ZERO);
+            recording.start();
+
+            tracer.begin(TradeTracer.REST, 1);
+            tracer.identify(TradeDto.builder().tradeId(tradeId).version(3).build());
+            long start = tracer.start();
+            Thread.sleep(2);
+            tracer.stage(TradeTracer.Stage.UPSERT, start);
+            tracer.end(1);
+
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file).stream()
+                .filter(event -> event.getEventType().getName().equals("com.db.TradeTrace"))
+                .toList();
+        Files.delete(file);
+
+        assertEquals(1, events.size());
+        RecordedEvent event = events.get(0);
+        assertEquals(TradeTracer.REST, event.getString("entry"));
+        assertEquals(tradeId.toString(), event.getString("tradeId"));
+        assertEquals(3, event.getInt("version"));
+        assertEquals(1, event.getInt("accepted"));
+        assertTrue(event.getDuration("upsert").toMillis() >= 2);
+        assertEquals(Duration.ZERO, event.getDuration("commit"));
+        // Not sampled, so only the recording saw it
+        assertEquals(0, registry.get("trade.stage").tag("stage", "upsert").timer().count());
+    }
+}
@@ -0,0 +1,52 @@
+package com.db.service;
+
+import com.db.model.Trade;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TradeVersionCacheTest {
+
+    private final TradeVersionCache cache = new TradeVersionCache(true, 1000, Duration.ofMinutes(10));
+
+    @Test
+    void shouldNeverLowerCachedVersion() {
+        UUID tradeId = UUID.randomUUID();
+        cache.put(trade(tradeId, 3));
+        // A slower writer committing an older version afterwards
+        cache.put(trade(tradeId, 2));
+
+        assertEquals(3, cache.get(tradeId).version());
+        assertTrue(cache.isStale(tradeId, 2));
+        assertFalse(cache.isStale(tradeId, 3));
+        assertFalse(cache.isStale(UUID.randomUUID(), 1));
+    }
+
+    @Test
+    void shouldForgetInvalidatedTrades() {
+        UUID tradeId = UUID.randomUUID();
+        cache.put(trade(tradeId, 1));
+
+        cache.invalidate(tradeId);
+
+        assertNull(cache.get(tradeId));
+    }
+
+    @Test
+    void shouldCacheNothingWhenDisabled() {
+        TradeVersionCache disabled = new TradeVersionCache(false, 1000, Duration.ofMinutes(10));
+        UUID tradeId = UUID.randomUUID();
+        disabled.put(trade(tradeId, 5));
+
+        assertNull(disabled.get(tradeId));
+        assertFalse(disabled.isStale(tradeId, 1));
+    }
+
+    private static Trade trade(UUID tradeId, int version) {
+        return Trade.builder().tradeId(tradeId).version(version).createdDate(LocalDate.now()).build();
+    }
+}
@@ -1,29 +1,38 @@
 package com.db.stream;
 
 import com.db.dto.TradeDto;
+import com.db.model.Trade;
+import com.db.service.TradeExposureStore;
+import com.db.service.TradeOutboxService;
 import com.db.service.TradeService;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
 import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
 import org.springframework.kafka.listener.ContainerProperties;
 import org.springframework.kafka.listener.KafkaMessageListenerContainer;
 import org.springframework.kafka.listener.MessageListener;
+import org.springframework.kafka.support.KafkaHeaders;
 import org.springframework.kafka.test.EmbeddedKafkaBroker;
 import org.springframework.kafka.test.context.EmbeddedKafka;
 import org.springframework.kafka.test.utils.ContainerTestUtils;
 import org.springframework.kafka.test.utils.KafkaTestUtils;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.BlockingQueue;
@@ -38,7 +47,7 @@ import static org.mockito.Mockito.verify;
 @SpringBootTest
 @EmbeddedKafka(
         partitions = 3,
-        topics = {"trades"},
+        topics = {"trades", "trades-dlt"},
         bootstrapServersProperty = "spring.kafka.bootstrap-servers"
 )
 @ActiveProfiles("test")
@@ -54,6 +63,21 @@ class KafkaIntegrationTest {
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Autowired
+    private TradeDltReplayer tradeDltReplayer;
+
+    @Autowired
+    private TradeOutboxService tradeOutboxService;
+
+    @Autowired
+    private TradeExposureStore tradeExposureStore;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private KafkaListenerEndpointRegistry kafkaListenerEndpointRegistry;
+
     @Mock
     private TradeService tradeService;
 
@@ -99,6 +123,7 @@ class KafkaIntegrationTest {
         ConsumerRecord<String, String> received = records.poll(10, TimeUnit.SECONDS);
         assertThat(received).isNotNull();
         assertThat(received.topic()).isEqualTo(tradeTopic);
+        assertThat(received.key()).isEqualTo(tradeId.toString());
 
         // Verify message content
         TradeDto receivedDto = objectMapper.readValue(received.value(), TradeDto.class);
@@ -213,7 +238,10 @@ class KafkaIntegrationTest {
         System.out.println("Raw received1 value: " + received1.value());
         System.out.println("Raw received2 value: " + received2.value());
 
-        // Both should have same trade ID but different versions
+        // Both should have same trade ID but different versions, keyed onto the same partition in order
+        assertThat(received1.partition()).isEqualTo(received2.partition());
+        assertThat(receivedDto1.getVersion()).isEqualTo(1);
+        assertThat(receivedDto2.getVersion()).isEqualTo(2);
         assertThat(receivedDto1.getTradeId()).isEqualTo(tradeId);
         assertThat(receivedDto2.getTradeId()).isEqualTo(tradeId);
         assertThat(receivedDto1.getVersion()).isNotEqualTo(receivedDto2.getVersion());
@@ -318,4 +346,85 @@ class KafkaIntegrationTest {
 
         container.stop();
     }
-}
\ No newline at end of file
+
+    @Test
+    void shouldDeadLetterInvalidTradeAndReplayIt() throws Exception {
+        BlockingQueue<ConsumerRecord<String, String>> records = new LinkedBlockingQueue<>();
+
+        Map<String, Object> consumerProps = KafkaTestUtils.consumerProps("testGroupDlt", "true", embeddedKafkaBroker);
+        consumerProps.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        ConsumerFactory<String, String> cf = new DefaultKafkaConsumerFactory<>(
+                consumerProps,
+                new StringDeserializer(),
+                new StringDeserializer()
+        );
+
+        KafkaMessageListenerContainer<String, String> container =
+                new KafkaMessageListenerContainer<>(cf, new ContainerProperties(tradeTopic + "-dlt"));
+        container.setupMessageListener((MessageListener<String, String>) records::add);
+        container.start();
+        ContainerTestUtils.waitForAssignment(container, embeddedKafkaBroker.getPartitionsPerTopic());
+
+        // A matured trade fails validation, it is not retried but dead-lettered with the reason
+        UUID tradeId = UUID.randomUUID();
+        tradeProducer.publishTrade(TradeDto.builder()
+                .tradeId(tradeId)
+                .version(1)
+                .bookId("DLT_TEST")
+                .counterPartyId("CP_DLT")
+                .maturityDate(LocalDate.now().minusDays(1))
+                .build());
+
+        ConsumerRecord<String, String> deadLetter = records.poll(30, TimeUnit.SECONDS);
+        assertThat(deadLetter).isNotNull();
+        assertThat(deadLetter.key()).isEqualTo(tradeId.toString());
+        assertThat(header(deadLetter, KafkaHeaders.EXCEPTION_CAUSE_FQCN))
+                .isEqualTo("com.db.exception.InvalidTradeException");
+        assertThat(header(deadLetter, KafkaHeaders.ORIGINAL_TOPIC)).isEqualTo(tradeTopic);
+
+        // Replaying sends it through the pipeline again, where it is still invalid
+        assertThat(tradeDltReplayer.replay(100).replayed()).isEqualTo(1);
+        assertThat(records.poll(30, TimeUnit.SECONDS)).isNotNull();
+        assertThat(tradeDltReplayer.replay(100).replayed()).isEqualTo(1);
+
+        container.stop();
+    }
+
+    @Test
+    void shouldCountTradeEventsRelayedFromAnyNodeInExposures() throws Exception {
+        // The listener starts from the end of the topic, events sent before it is assigned are not for it
+        ContainerTestUtils.waitForAssignment(kafkaListenerEndpointRegistry.getListenerContainer("tradeExposureListener"),
+                embeddedKafkaBroker.getPartitionsPerTopic());
+        // Recorded straight into the outbox, as by another node: only the relayed events reach this node's store
+        Trade trade = Trade.builder()
+                .tradeId(UUID.randomUUID())
+                .version(1)
+                .bookId("EXPOSURE_TEST")
+                .counterPartyId("CP_EXPOSURE")
+                .maturityDate(LocalDate.now().plusDays(10))
+                .createdDate(LocalDate.now())
+                .build();
+
+        transactionTemplate.executeWithoutResult(status -> tradeOutboxService.recordTradeEvents(List.of(trade)));
+        assertThat(awaitActiveTrades("EXPOSURE_TEST", "CP_EXPOSURE", 1)).isEqualTo(1);
+
+        trade.setExpired(true);
+        transactionTemplate.executeWithoutResult(status -> tradeOutboxService.recordTradeEvents(List.of(trade)));
+        assertThat(awaitActiveTrades("EXPOSURE_TEST", "CP_EXPOSURE", 0)).isZero();
+    }
+
+    private long awaitActiveTrades(String bookId, String counterPartyId, long expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        long active = tradeExposureStore.getExposure(bookId, counterPartyId).activeTrades();
+        while (active != expected && System.nanoTime() < deadline) {
+            Thread.sleep(100);
+            active = tradeExposureStore.getExposure(bookId, counterPartyId).activeTrades();
+        }
+        return active;
+    }
+
+    private static String header(ConsumerRecord<?, ?> record, String name) {
+        Header header = record.headers().lastHeader(name);
+        return header == null ? null : new String(header.value(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,55 @@
+package com.db.stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class KeyOrderedExecutorTest {
+
+    private final KeyOrderedExecutor executor = new KeyOrderedExecutor(4);
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        executor.destroy();
+    }
+
+    @Test
+    void shouldKeepTasksWithSameKeyInSubmissionOrder() {
+        Map<String, List<Integer>> seen = new ConcurrentHashMap<>();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+
+        for (int i = 0; i < 1000; i++) {
+            String key = "trade-" + (i % 10);
+            int sequence = i;
+            futures.add(executor.submit(key, () ->
+                    seen.computeIfAbsent(key, k -> new CopyOnWriteArrayList<>()).add(sequence)));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+
+        assertThat(seen).hasSize(10);
+        seen.values().forEach(sequences -> assertThat(sequences).isSorted().hasSize(100));
+    }
+
+    @Test
+    void shouldRunDifferentKeysOnSeveralThreads() {
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+
+        for (int i = 0; i < 100; i++) {
+            futures.add(executor.submit("trade-" + i, () -> threads.add(Thread.currentThread().getName())));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+
+        assertThat(executor.getParallelism()).isEqualTo(4);
+        assertThat(threads).hasSizeGreaterThan(1);
+    }
+}
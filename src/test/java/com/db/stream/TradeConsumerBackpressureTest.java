@@ -0,0 +1,132 @@
+package com.db.stream;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.kafka.listener.ListenerContainerRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class TradeConsumerBackpressureTest {
+
+    @Mock
+    private ListenerContainerRegistry containerRegistry;
+    @Mock
+    private MessageListenerContainer container;
+    @Mock
+    private MessageListenerContainer batchContainer;
+    @Mock
+    private DataSource dataSource;
+
+    private final CircuitBreakerRegistry circuitBreakerRegistry = CircuitBreakerRegistry.ofDefaults();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        MockitoAnnotations.openMocks(this);
+        when(dataSource.isWrapperFor(any())).thenReturn(false);
+        when(containerRegistry.getListenerContainer(TradeConsumer.LISTENER_ID)).thenReturn(container);
+        when(container.isRunning()).thenReturn(true);
+        doAnswer(i -> when(container.isPauseRequested()).thenReturn(true)).when(container).pause();
+    }
+
+    @Test
+    void shouldPauseOnSlowPersistenceAndResumeOnceRecovered() {
+        TradeConsumerBackpressure backpressure = backpressure(Duration.ZERO, Duration.ofMinutes(1));
+
+        backpressure.recordLatency(Duration.ofMillis(800).toNanos());
+        backpressure.evaluate();
+        assertTrue(backpressure.isPaused());
+        verify(container).pause();
+
+        // Still above the resume threshold, the pause holds
+        backpressure.recordLatency(Duration.ofMillis(300).toNanos());
+        backpressure.evaluate();
+        assertTrue(backpressure.isPaused());
+
+        backpressure.recordLatency(Duration.ofMillis(50).toNanos());
+        backpressure.evaluate();
+        assertFalse(backpressure.isPaused());
+        verify(container).resume();
+    }
+
+    @Test
+    void shouldPauseWhileCircuitBreakerIsOpen() {
+        TradeConsumerBackpressure backpressure = backpressure(Duration.ZERO, Duration.ofMinutes(1));
+        circuitBreakerRegistry.circuitBreaker("mongodb").transitionToOpenState();
+
+        backpressure.evaluate();
+        backpressure.evaluate();
+        assertTrue(backpressure.isPaused());
+
+        circuitBreakerRegistry.circuitBreaker("mongodb").transitionToClosedState();
+        backpressure.evaluate();
+        assertFalse(backpressure.isPaused());
+    }
+
+    @Test
+    void shouldResumeToProbeAfterMaxPause() {
+        TradeConsumerBackpressure backpressure = backpressure(Duration.ZERO, Duration.ZERO);
+        circuitBreakerRegistry.circuitBreaker("mongodb").transitionToOpenState();
+
+        backpressure.evaluate();
+        assertTrue(backpressure.isPaused());
+        backpressure.evaluate();
+        assertFalse(backpressure.isPaused());
+        verify(container).resume();
+    }
+
+    @Test
+    void shouldOnlyResumeIngestContainersItPaused() {
+        when(containerRegistry.getListenerContainer(TradeConsumer.BATCH_LISTENER_ID)).thenReturn(batchContainer);
+        when(batchContainer.isRunning()).thenReturn(true);
+        // Paused by someone else before the database got slow
+        when(batchContainer.isPauseRequested()).thenReturn(true);
+        TradeConsumerBackpressure backpressure = backpressure(Duration.ZERO, Duration.ZERO);
+        circuitBreakerRegistry.circuitBreaker("mongodb").transitionToOpenState();
+
+        backpressure.evaluate();
+        backpressure.evaluate();
+
+        verify(container).pause();
+        verify(container).resume();
+        verify(batchContainer, never()).pause();
+        verify(batchContainer, never()).resume();
+        verify(containerRegistry, never()).getListenerContainers();
+    }
+
+    @Test
+    void shouldSumPartitionLag() {
+        TradeConsumerBackpressure backpressure = backpressure(Duration.ZERO, Duration.ofMinutes(1));
+        Map<MetricName, Metric> metrics = Map.ofEntries(
+                lagMetric("records-lag", Map.of("topic", "trades", "partition", "0"), 40.0),
+                lagMetric("records-lag", Map.of("topic", "trades", "partition", "1"), Double.NaN),
+                lagMetric("records-lag-max", Map.of(), 40.0));
+        doReturn(Map.of("consumer-1", metrics)).when(container).metrics();
+
+        assertEquals(40.0, backpressure.getLag());
+    }
+
+    private TradeConsumerBackpressure backpressure(Duration minPause, Duration maxPause) {
+        return new TradeConsumerBackpressure(containerRegistry, dataSource, circuitBreakerRegistry, true,
+                Duration.ofMillis(500), Duration.ofMillis(200), 0.9, minPause, maxPause, List.of("mongodb"));
+    }
+
+    private static Map.Entry<MetricName, Metric> lagMetric(String name, Map<String, String> tags, double value) {
+        MetricName metricName = new MetricName(name, "consumer-fetch-manager-metrics", "", tags);
+        Metric metric = mock(Metric.class);
+        when(metric.metricValue()).thenReturn(value);
+        return Map.entry(metricName, metric);
+    }
+}
@@ -0,0 +1,158 @@
+package com.db.stream;
+
+import com.db.model.Trade;
+import com.db.service.TradeService;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class TradeDeduplicatorTest {
+
+    private static final String TOPIC = "trades";
+
+    @Mock
+    private TradeService tradeService;
+    @Mock
+    private Consumer<String, Object> consumer;
+
+    @InjectMocks
+    private TradeDeduplicator deduplicator;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(deduplicator, "expectedInsertions", 1000);
+        ReflectionTestUtils.setField(deduplicator, "recentCapacity", 100);
+        ReflectionTestUtils.setField(deduplicator, "seedExecutor", (Executor) Runnable::run);
+        List<PartitionInfo> partitions = new ArrayList<>();
+        for (int i = 0; i < 3; i++) partitions.add(new PartitionInfo(TOPIC, i, null, null, null));
+        when(consumer.partitionsFor(TOPIC)).thenReturn(partitions);
+    }
+
+    @Test
+    void shouldSkipOnlyEventsAlreadyApplied() {
+        deduplicator.onPartitionsAssigned(consumer, List.of(new TopicPartition(TOPIC, 0)));
+        UUID tradeId = UUID.randomUUID();
+
+        assertFalse(deduplicator.isDuplicate(0, tradeId, 1));
+        deduplicator.recordApplied(0, tradeId, 1);
+
+        assertTrue(deduplicator.isDuplicate(0, tradeId, 1));
+        assertFalse(deduplicator.isDuplicate(0, tradeId, 2));
+        assertEquals(1, deduplicator.getHits());
+    }
+
+    @Test
+    void shouldSeedOwnedPartitionsFromTradesTable() {
+        List<Trade> trades = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            trades.add(Trade.builder().tradeId(UUID.randomUUID()).version(2).build());
+        }
+        doAnswer(invocation -> {
+            java.util.function.Consumer<Trade> sink = invocation.getArgument(0);
+            trades.forEach(sink);
+            return null;
+        }).when(tradeService).streamTrades(any());
+
+        deduplicator.onPartitionsAssigned(consumer, List.of(new TopicPartition(TOPIC, 1)));
+
+        for (Trade trade : trades) {
+            int partition = TradeDeduplicator.partitionFor(trade.getTradeId(), 3);
+            // Only trades keyed onto the owned partition are known
+            assertEquals(partition == 1, deduplicator.isDuplicate(partition, trade.getTradeId(), 2));
+        }
+    }
+
+    @Test
+    void shouldSeedOffConsumerThreadAndFilterOnlyOnceSeeded() {
+        List<Runnable> seeding = new ArrayList<>();
+        ReflectionTestUtils.setField(deduplicator, "seedExecutor", (Executor) seeding::add);
+
+        deduplicator.onPartitionsAssigned(consumer, List.of(new TopicPartition(TOPIC, 0)));
+        deduplicator.onPartitionsAssigned(consumer, List.of(new TopicPartition(TOPIC, 1)));
+        UUID tradeId = UUID.randomUUID();
+        deduplicator.recordApplied(0, tradeId, 1);
+
+        // Nothing is skipped until the scan is done, events applied meanwhile are still remembered
+        verify(tradeService, never()).streamTrades(any());
+        assertFalse(deduplicator.isDuplicate(0, tradeId, 1));
+        seeding.forEach(Runnable::run);
+
+        // Both assignments are seeded by a single scan
+        verify(tradeService).streamTrades(any());
+        assertTrue(deduplicator.isDuplicate(0, tradeId, 1));
+    }
+
+    @Test
+    void shouldLeavePartitionsUnfilteredWhenStreamBulkheadIsFull() {
+        doThrow(BulkheadFullException.createBulkheadFullException(Bulkhead.ofDefaults("stream")))
+                .when(tradeService).streamTrades(any());
+
+        deduplicator.onPartitionsAssigned(consumer, List.of(new TopicPartition(TOPIC, 0)));
+        UUID tradeId = UUID.randomUUID();
+        deduplicator.recordApplied(0, tradeId, 1);
+
+        assertFalse(deduplicator.isDuplicate(0, tradeId, 1));
+    }
+
+    @Test
+    void shouldForgetRevokedPartitions() {
+        TopicPartition partition = new TopicPartition(TOPIC, 2);
+        deduplicator.onPartitionsAssigned(consumer, List.of(partition));
+        UUID tradeId = UUID.randomUUID();
+        deduplicator.recordApplied(2, tradeId, 1);
+
+        deduplicator.onPartitionsRevokedBeforeCommit(consumer, List.of(partition));
+
+        assertFalse(deduplicator.isDuplicate(2, tradeId, 1));
+    }
+
+    @Test
+    void shouldStayExactBeyondBloomCapacity() {
+        deduplicator.onPartitionsAssigned(consumer, List.of(new TopicPartition(TOPIC, 0)));
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            UUID tradeId = UUID.randomUUID();
+            ids.add(tradeId);
+            deduplicator.recordApplied(0, tradeId, 1);
+        }
+
+        // The most recent events are still confirmed exactly, everything else is processed again
+        Collections.reverse(ids);
+        for (UUID tradeId : ids.subList(0, 100)) {
+            assertTrue(deduplicator.isDuplicate(0, tradeId, 1));
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertFalse(deduplicator.isDuplicate(0, UUID.randomUUID(), 1));
+        }
+        assertEquals(100, deduplicator.getHits());
+    }
+
+    @Test
+    void shouldIgnoreOtherTopicsAndUnownedPartitions() {
+        deduplicator.onPartitionsAssigned(consumer, Set.of(new TopicPartition("trade-events", 0)));
+        deduplicator.recordApplied(0, UUID.randomUUID(), 1);
+
+        assertFalse(deduplicator.isDuplicate(0, UUID.randomUUID(), 1));
+        verify(tradeService, never()).streamTrades(any());
+    }
+}
@@ -0,0 +1,82 @@
+package com.db.stream;
+
+import com.db.dto.TradeDto;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class TradeDltReplayerTest {
+
+    private static final TopicPartition DLT = new TopicPartition("trades-dlt", 0);
+
+    @Mock
+    private ConsumerFactory<String, TradeDto> consumerFactory;
+    @Mock
+    private KafkaTemplate<String, TradeDto> kafkaTemplate;
+
+    // Left open by the replay so the committed offsets can still be read afterwards
+    private final MockConsumer<String, TradeDto> consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST) {
+        @Override
+        public synchronized void close(Duration timeout) {
+        }
+    };
+    private TradeDltReplayer replayer;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        replayer = new TradeDltReplayer(consumerFactory, kafkaTemplate);
+        when(consumerFactory.createConsumer(eq("trade-dlt-replay"), isNull(), isNull(), any())).thenReturn(consumer);
+        when(kafkaTemplate.send(anyString(), anyString(), any(TradeDto.class)))
+                .thenReturn(CompletableFuture.completedFuture(null));
+        consumer.updatePartitions(DLT.topic(), List.of(new PartitionInfo(DLT.topic(), 0, null, null, null)));
+        consumer.updateBeginningOffsets(Map.of(DLT, 0L));
+        consumer.updateEndOffsets(Map.of(DLT, 2L));
+    }
+
+    @Test
+    void shouldKeepPollingPastEmptyPollsUntilEndOffsets() throws Exception {
+        TradeDto trade = TradeDto.builder().tradeId(UUID.randomUUID()).version(1).build();
+        // A fresh group gets nothing back from its first polls while it is still fetching
+        consumer.schedulePollTask(() -> { });
+        consumer.schedulePollTask(() -> { });
+        consumer.schedulePollTask(() -> {
+            consumer.addRecord(new ConsumerRecord<>(DLT.topic(), 0, 0, trade.getTradeId().toString(), trade));
+            consumer.addRecord(new ConsumerRecord<>(DLT.topic(), 0, 1, "undecodable", null));
+        });
+
+        TradeDltReplayer.Result result = replayer.replay(100);
+
+        assertEquals(new TradeDltReplayer.Result(1, 1), result);
+        verify(kafkaTemplate).send("trades", trade.getTradeId().toString(), trade);
+        assertEquals(2, consumer.committed(Set.of(DLT)).get(DLT).offset());
+    }
+
+    @Test
+    void shouldGiveUpAfterReplayTimeout() throws Exception {
+        ReflectionTestUtils.setField(replayer, "replayTimeout", Duration.ofMillis(50));
+
+        assertEquals(new TradeDltReplayer.Result(0, 0), replayer.replay(100));
+        verify(kafkaTemplate, never()).send(anyString(), anyString(), any(TradeDto.class));
+    }
+}
@@ -0,0 +1,71 @@
+package com.db.stream;
+
+import com.db.dto.TradeEvent;
+import com.db.model.Trade;
+import com.db.service.TradeExposureStore;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class TradeExposureListenerTest {
+
+    private static final String TOPIC = "trade-events";
+
+    private final TradeExposureStore store = mock(TradeExposureStore.class);
+    private final TradeExposureListener listener = new TradeExposureListener(store, "trade-exposure");
+
+    @Test
+    void shouldApplyWritesAndExpireExpiredEvents() {
+        TradeEvent written = event(UUID.randomUUID(), TradeEvent.Type.SAVED);
+        TradeEvent expired = event(UUID.randomUUID(), TradeEvent.Type.EXPIRED);
+
+        listener.onTradeEvents(List.of(record(0, written), record(1, null), record(2, expired)));
+
+        ArgumentCaptor<Trade> applied = ArgumentCaptor.forClass(Trade.class);
+        ArgumentCaptor<Trade> expiredTrade = ArgumentCaptor.forClass(Trade.class);
+        verify(store).apply(applied.capture());
+        verify(store).expire(expiredTrade.capture());
+        assertEquals(written.tradeId(), applied.getValue().getTradeId());
+        assertEquals(written.bookId(), applied.getValue().getBookId());
+        assertEquals(expired.tradeId(), expiredTrade.getValue().getTradeId());
+        assertEquals(expired.maturityDate(), expiredTrade.getValue().getMaturityDate());
+    }
+
+    @Test
+    void shouldRebuildOnceAfterStartOffsetsAreResolved() {
+        @SuppressWarnings("unchecked")
+        Consumer<String, Object> consumer = mock(Consumer.class);
+        List<TopicPartition> partitions = List.of(new TopicPartition(TOPIC, 0), new TopicPartition(TOPIC, 1));
+
+        listener.onPartitionsAssigned(consumer, partitions);
+        listener.onPartitionsAssigned(consumer, partitions);
+
+        verify(consumer, times(2)).position(partitions.get(0));
+        verify(consumer, times(2)).position(partitions.get(1));
+        verify(store, timeout(1000)).rebuild();
+        verify(store, after(100).times(1)).rebuild();
+    }
+
+    @Test
+    void shouldReadInAGroupOfItsOwn() {
+        assertTrue(listener.getGroupId().startsWith("trade-exposure-"));
+        assertNotEquals(listener.getGroupId(), new TradeExposureListener(store, "trade-exposure").getGroupId());
+    }
+
+    private static ConsumerRecord<String, TradeEvent> record(long offset, TradeEvent event) {
+        return new ConsumerRecord<>(TOPIC, 0, offset, event == null ? null : event.tradeId().toString(), event);
+    }
+
+    private static TradeEvent event(UUID tradeId, TradeEvent.Type type) {
+        return new TradeEvent(type, tradeId, 2, "CP-1", "B1", LocalDate.now().plusDays(10));
+    }
+}
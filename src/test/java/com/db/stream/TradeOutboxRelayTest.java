@@ -0,0 +1,82 @@
+package com.db.stream;
+
+import com.db.model.TradeOutbox;
+import com.db.repository.TradeOutboxRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.domain.Limit;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class TradeOutboxRelayTest {
+
+    @Mock
+    private TradeOutboxRepository tradeOutboxRepository;
+    @Mock
+    private KafkaTemplate<String, String> kafkaTemplate;
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @InjectMocks
+    private TradeOutboxRelay relay;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(transactionTemplate.execute(any())).thenAnswer(i ->
+                ((TransactionCallback<?>) i.getArgument(0)).doInTransaction(null));
+    }
+
+    @Test
+    void shouldSendBatchInOrderAndMarkItSent() {
+        when(tradeOutboxRepository.findUnsent(any(Limit.class)))
+                .thenReturn(List.of(message(1L, "t1"), message(2L, "t2")));
+        when(kafkaTemplate.send(anyString(), anyString(), anyString())).thenReturn(CompletableFuture.completedFuture(null));
+
+        assertEquals(2, relay.relayBatch());
+
+        InOrder inOrder = inOrder(kafkaTemplate, tradeOutboxRepository);
+        inOrder.verify(kafkaTemplate).send("trade-events", "t1", "{}");
+        inOrder.verify(kafkaTemplate).send("trade-events", "t2", "{}");
+        inOrder.verify(tradeOutboxRepository).markSent(eq(List.of(1L, 2L)), any(Instant.class));
+    }
+
+    @Test
+    void shouldLeaveBatchUnsentWhenKafkaFails() {
+        when(tradeOutboxRepository.findUnsent(any(Limit.class))).thenReturn(List.of(message(1L, "t1")));
+        when(kafkaTemplate.send(anyString(), anyString(), anyString()))
+                .thenReturn(CompletableFuture.failedFuture(new RuntimeException("Kafka down")));
+
+        assertThrows(IllegalStateException.class, () -> relay.relayBatch());
+        // The scheduled entry point swallows the failure so the next poll retries
+        relay.relay();
+
+        verify(tradeOutboxRepository, never()).markSent(any(), any());
+    }
+
+    @Test
+    void shouldNotSendWhenOutboxIsEmpty() {
+        when(tradeOutboxRepository.findUnsent(any(Limit.class))).thenReturn(List.of());
+
+        relay.relay();
+
+        verifyNoInteractions(kafkaTemplate);
+    }
+
+    private TradeOutbox message(Long id, String key) {
+        return TradeOutbox.builder().id(id).topic("trade-events").messageKey(key).payload("{}")
+                .createdAt(Instant.now()).build();
+    }
+}
@@ -0,0 +1,112 @@
+package com.db.stream;
+
+import com.db.dto.TradeDto;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TradeSerdeTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    private final TradeDeserializer deserializer = new TradeDeserializer(objectMapper.readerFor(TradeDto.class));
+
+    @Test
+    void shouldRoundTripBinaryEncoding() {
+        TradeDto dto = trade();
+
+        TradeDto decoded = TradeBinaryCodec.decode(TradeBinaryCodec.encode(dto));
+
+        assertTradeEquals(dto, decoded);
+    }
+
+    @Test
+    void shouldEncodeAbsentFieldsAsNull() {
+        TradeDto dto = TradeDto.builder().version(3).build();
+
+        TradeDto decoded = TradeBinaryCodec.decode(TradeBinaryCodec.encode(dto));
+
+        assertNull(decoded.getTradeId());
+        assertNull(decoded.getMaturityDate());
+        assertNull(decoded.getBookId());
+        assertNull(decoded.getCounterPartyId());
+        assertEquals(3, decoded.getVersion());
+    }
+
+    @Test
+    void shouldBeSmallerThanJson() throws Exception {
+        TradeDto dto = trade();
+
+        assertTrue(TradeBinaryCodec.encode(dto).length * 3 < objectMapper.writeValueAsBytes(dto).length);
+    }
+
+    @Test
+    void shouldReadEitherFormatAccordingToHeader() {
+        TradeDto dto = trade();
+        for (TradeWireFormat format : TradeWireFormat.values()) {
+            RecordHeaders headers = new RecordHeaders();
+            byte[] data = new TradeSerializer(objectMapper.writerFor(TradeDto.class), format).serialize("trades", headers, dto);
+
+            assertNotNull(headers.lastHeader(TradeWireFormat.HEADER));
+            assertTradeEquals(dto, deserializer.deserialize("trades", headers, data));
+        }
+    }
+
+    @Test
+    void shouldDetectFormatWithoutHeader() {
+        TradeDto dto = trade();
+        byte[] json = new TradeSerializer(objectMapper.writerFor(TradeDto.class), TradeWireFormat.JSON).serialize("trades", dto);
+        byte[] binary = new TradeSerializer(objectMapper.writerFor(TradeDto.class), TradeWireFormat.BINARY).serialize("trades", dto);
+
+        assertTradeEquals(dto, deserializer.deserialize("trades", new RecordHeaders(), json));
+        assertTradeEquals(dto, deserializer.deserialize("trades", new RecordHeaders(), binary));
+    }
+
+    @Test
+    void shouldReadKnownFieldsOfLaterSchemaVersion() {
+        TradeDto dto = trade();
+        byte[] data = TradeBinaryCodec.encode(dto);
+        // A later producer flags a new field and appends it after the known ones
+        byte[] future = Arrays.copyOf(data, data.length + 4);
+        future[1] = (byte) (TradeBinaryCodec.SCHEMA_VERSION + 1);
+        future[2] |= 1 << 4;
+
+        assertTradeEquals(dto, TradeBinaryCodec.decode(future));
+    }
+
+    @Test
+    void shouldRejectInvalidSchemaVersionAndTruncatedRecords() {
+        byte[] data = TradeBinaryCodec.encode(trade());
+        byte[] invalid = data.clone();
+        invalid[1] = 0;
+
+        assertThrows(SerializationException.class, () -> TradeBinaryCodec.decode(invalid));
+        assertThrows(SerializationException.class, () -> TradeBinaryCodec.decode(Arrays.copyOf(data, 10)));
+    }
+
+    private TradeDto trade() {
+        return TradeDto.builder()
+                .tradeId(UUID.randomUUID())
+                .version(7)
+                .bookId("B1")
+                .counterPartyId("CP-ü")
+                .maturityDate(LocalDate.now().plusDays(30))
+                .build();
+    }
+
+    private void assertTradeEquals(TradeDto expected, TradeDto actual) {
+        assertEquals(expected.getTradeId(), actual.getTradeId());
+        assertEquals(expected.getVersion(), actual.getVersion());
+        assertEquals(expected.getBookId(), actual.getBookId());
+        assertEquals(expected.getCounterPartyId(), actual.getCounterPartyId());
+        assertEquals(expected.getMaturityDate(), actual.getMaturityDate());
+    }
+}